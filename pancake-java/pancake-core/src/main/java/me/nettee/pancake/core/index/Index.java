@@ -467,7 +467,8 @@ public class Index {
     }
 
     private void touch(IndexNode indexNode) {
-        pagedFile.getPage(indexNode.getPageNum());
+        Page page = pagedFile.getPage(indexNode.getPageNum());
+        indexNode.setPage(page);
     }
 
     private void markDirty(IndexNode indexNode) {
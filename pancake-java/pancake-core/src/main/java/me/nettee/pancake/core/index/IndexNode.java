@@ -6,6 +6,7 @@ import me.nettee.pancake.core.page.Page;
 import java.io.*;
 import java.util.Arrays;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
 /**
@@ -71,17 +72,20 @@ public abstract class IndexNode {
 
     }
 
+    private final int pageNum;
     protected Page page;
     protected IndexHeader indexHeader;
     protected IndexNodeHeader indexNodeHeader;
 
     protected IndexNode(Page page, IndexHeader indexHeader) {
+        this.pageNum = page.getNum();
         this.page = page;
         this.indexHeader = indexHeader;
         indexNodeHeader = new IndexNodeHeader();
     }
 
     protected IndexNode(Page page, IndexHeader indexHeader, IndexNodeHeader indexNodeHeader) {
+        this.pageNum = page.getNum();
         this.page = page;
         this.indexHeader = indexHeader;
         this.indexNodeHeader = indexNodeHeader;
@@ -124,7 +128,13 @@ public abstract class IndexNode {
     }
 
     public int getPageNum() {
-        return page.getNum();
+        return pageNum;
+    }
+
+    // The page may have been read into another frame of the buffer pool.
+    void setPage(Page page) {
+        checkArgument(page.getNum() == pageNum);
+        this.page = page;
     }
 
     boolean isRoot() {
@@ -1,6 +1,7 @@
 package me.nettee.pancake.core.model;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -88,6 +89,25 @@ public class AttrType {
         return new AttrType(Type.fromInt(typeValue), length);
     }
 
+    /**
+     * The same as {@link #writeObject(DataOutputStream)}, in place on a
+     * buffer.
+     */
+    public void writeObject(ByteBuffer out) {
+        out.putInt(type.toInt());
+        out.putInt(length);
+    }
+
+    /**
+     * The same as {@link #readObject(DataInputStream)}, in place on a
+     * buffer.
+     */
+    public static AttrType readObject(ByteBuffer in) {
+        int typeValue = in.getInt();
+        int length = in.getInt();
+        return new AttrType(Type.fromInt(typeValue), length);
+    }
+
     /**
      * Check whether {@code attr} instance is the same with this type.
      * @param attr the {@code Attr} instance
@@ -123,6 +143,20 @@ public class AttrType {
         }
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof AttrType)) {
+            return false;
+        }
+        AttrType that = (AttrType) obj;
+        return this.type == that.type && this.length == that.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * type.hashCode() + length;
+    }
+
     @Override
     public String toString() {
         String typeString = type.name();
@@ -0,0 +1,32 @@
+package me.nettee.pancake.core.model;
+
+/**
+ * The comparison operators in a scan condition.
+ */
+public enum CompOp {
+    EQ,
+    LT,
+    GT,
+    LE,
+    GE,
+    NE,
+    ;
+
+    /**
+     * Check the result of a comparison against this operator.
+     * @param c the result of comparing the attribute value with the constant,
+     *          as returned by {@link Comparable#compareTo(Object)}
+     * @return whether the attribute value satisfies the operator
+     */
+    public boolean test(int c) {
+        switch (this) {
+            case EQ: return c == 0;
+            case LT: return c < 0;
+            case GT: return c > 0;
+            case LE: return c <= 0;
+            case GE: return c >= 0;
+            case NE: return c != 0;
+            default: throw new AssertionError();
+        }
+    }
+}
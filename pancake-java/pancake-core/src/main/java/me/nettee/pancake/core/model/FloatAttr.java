@@ -13,7 +13,7 @@ public class FloatAttr extends Attr {
     }
 
     public static FloatAttr fromBytes(byte[] data) {
-        throw new UnsupportedOperationException();
+        return new FloatAttr(ByteBuffer.wrap(data).getFloat());
     }
 
     @Override
@@ -13,7 +13,7 @@ public class IntAttr extends Attr {
     }
 
     public static IntAttr fromBytes(byte[] data) {
-        throw new UnsupportedOperationException();
+        return new IntAttr(ByteBuffer.wrap(data).getInt());
     }
 
     public byte[] toBytes() {
@@ -4,6 +4,7 @@ import me.nettee.pancake.core.index.IndexException;
 
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 public class Magic {
@@ -28,4 +29,12 @@ public class Magic {
             throw new IndexException("Magic not match");
         }
     }
+
+    public void check(ByteBuffer in) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!in.hasRemaining() || in.get() != (byte) text.charAt(i)) {
+                throw new IndexException("Magic not match");
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -3,6 +3,10 @@ package me.nettee.pancake.core.page;
 /**
  * The size of a page is 4096 bytes, The first 4 bytes represents page number (integer),
  * and the rest 4092 bytes stores data.
+ * <p>
+ * A <tt>Page</tt> object is a frame in the buffer pool. Frames are recycled
+ * by the buffer pool, so a <tt>Page</tt> object is only valid while it is
+ * pinned.
  */
 public class Page {
 
@@ -14,8 +18,14 @@ public class Page {
     boolean dirty = false;
     byte[] data;
 
-    Page(int num) {
-        this.num = num;
+    // Links in the unpinned list of buffer pool.
+    Page lruPrev, lruNext;
+
+    // An object attached by the client, dropped when the frame is recycled.
+    private Object attachment;
+
+    Page() {
+        this.num = -1;
         // Fill the page with default bytes for ease of debugging.
         this.data = Pages.makeDefaultBytes(DATA_SIZE);
     }
@@ -27,4 +37,18 @@ public class Page {
     public byte[] getData() {
         return data;
     }
+
+    /**
+     * Get the object attached to this frame, which is typically a decoded
+     * form of the page. The attachment is dropped when the page is removed
+     * from the buffer pool, so it never outlives the page in this frame.
+     * @return the attached object, or null if none
+     */
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
 }
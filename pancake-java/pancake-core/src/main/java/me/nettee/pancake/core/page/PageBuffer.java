@@ -4,63 +4,110 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
+/**
+ * The buffer pool of a paged file. The buffer holds at most
+ * <tt>BUFFER_SIZE</tt> frames (<tt>Page</tt> objects). Frames of removed pages
+ * are kept in a free-frame list and recycled for pages read in later, so that
+ * the page path allocates nothing once the buffer is warmed up.
+ * <p>
+ * NOTE: Since frames are recycled, a <tt>Page</tt> object may represent
+ * another page after it is unpinned. Clients should not hold a <tt>Page</tt>
+ * object after unpinning it.
+ */
 class PageBuffer {
 
     private static Logger logger = LoggerFactory.getLogger(PageBuffer.class);
     static final int BUFFER_SIZE = 40;
 
     private final PagedFile pagedFile;
-    private Map<Integer, Page> buf;
+    private final PageTable buf;
 
     /**
      * Invariant:
      * <ul>
-     * <li>The union of <tt>pinnedPages</tt> and <tt>unpinnedPages</tt>
-     * makes all buffered pages</li>
-     * <li>The intersection of <tt>pinnedPages</tt> and
-     * <tt>unpinnedPages</tt> is empty</li>
+     * <li>The pinned pages and the pages in the unpinned list makes all
+     * buffered pages</li>
+     * <li>A page is either pinned or in the unpinned list</li>
      * </ul>
+     * The unpinned list is ordered by the time of unpinning, from the least
+     * recently unpinned (<tt>lruHead</tt>) to the most recently unpinned
+     * (<tt>lruTail</tt>).
      */
-    private Set<Integer> pinnedPages, unpinnedPages;
+    private Page lruHead, lruTail;
+    private int numPinned;
+
+    private final Deque<Page> freeFrames;
 
     PageBuffer(PagedFile pagedFile) {
         this.pagedFile = pagedFile;
-        buf = new HashMap<>();
-        pinnedPages = new HashSet<>();
-        unpinnedPages = new LinkedHashSet<>(); // Record the insert order.
+        buf = new PageTable(BUFFER_SIZE);
+        freeFrames = new ArrayDeque<>(BUFFER_SIZE);
     }
 
     /**
-     * Put the <tt>page</tt> into buffer and pin it in buffer. A page is pinned
-     * when and only when it is put into buffer.
-     * @param page The page to be put and pinned.
+     * Obtain a frame for a page to be put into buffer. If the buffer is full,
+     * the least recently unpinned page is written back and removed, and its
+     * frame is reused. The returned frame should be put into buffer via
+     * <tt>putAndPin</tt>, or given back via <tt>releaseFrame</tt>.
+     * @return a frame not in buffer
+     * @throws FullBufferException if all the pages in buffer are pinned
      */
-    void putAndPin(Page page) {
+    Page obtainFrame() {
         if (isFull()) {
             if (hasUnpinnedPages()) {
-                int pageNum = getOneUnpinnedPage();
-                writeBackAndRemove(pageNum);
-                logger.info("Removed page[{}] from buffer to save space", pageNum);
+                Page page = lruHead;
+                writeBackAndRemove(page.num);
+                if (logger.isTraceEnabled()) {
+                    logger.trace("Removed page[{}] from buffer to save space", page.num);
+                }
             } else {
                 throw new FullBufferException("Buffer pool is already full");
             }
         }
+        Page frame = freeFrames.poll();
+        if (frame == null) {
+            frame = new Page();
+        }
+        frame.dirty = false;
+        return frame;
+    }
+
+    /**
+     * Give back a frame obtained via <tt>obtainFrame</tt> which is not put
+     * into buffer.
+     */
+    void releaseFrame(Page frame) {
+        checkState(!frame.pinned);
+        freeFrames.push(frame);
+    }
+
+    /**
+     * Put the <tt>page</tt> into buffer and pin it in buffer. A page is pinned
+     * when and only when it is put into buffer.
+     * @param page The page to be put and pinned, obtained via <tt>obtainFrame</tt>.
+     */
+    void putAndPin(Page page) {
         checkState(!isFull());
-        buf.put(page.num, page);
+        checkState(buf.get(page.num) == null);
+        buf.put(page);
         pin(page);
-        logger.info("Put and pinned page[{}] in buffer", page.num);
+        if (logger.isTraceEnabled()) {
+            logger.trace("Put and pinned page[{}] in buffer", page.num);
+        }
     }
 
     void pinAgainIfNot(Page page) {
-        checkState(buf.containsKey(page.num));
+        checkState(buf.get(page.num) == page);
         if (!page.pinned) {
-            checkState(unpinnedPages.contains(page.num));
             pinAgain(page);
-            logger.info("Pinned again page[{}] in buffer", page.num);
+            if (logger.isTraceEnabled()) {
+                logger.trace("Pinned again page[{}] in buffer", page.num);
+            }
         }
     }
 
@@ -75,46 +122,75 @@ class PageBuffer {
         checkState(!page.pinned);
         // Note: write back first, then remove
         pagedFile.writeBack(page);
-        remove0(pageNum);
+        remove0(page);
     }
 
     void removeWithoutWriteBack(int pageNum) {
         Page page = get(pageNum);
         checkNotNull(page);
         checkState(!page.pinned);
-        remove0(page.num);
+        remove0(page);
     }
 
-    private void remove0(int pageNum) {
-        checkState(buf.containsKey(pageNum));
-        checkState(!pinnedPages.contains(pageNum));
-        checkState(unpinnedPages.contains(pageNum));
-        buf.remove(pageNum);
-        unpinnedPages.remove(pageNum);
+    private void remove0(Page page) {
+        checkState(!page.pinned);
+        unlink(page);
+        buf.remove(page.num);
+        page.setAttachment(null);
+        freeFrames.push(page);
     }
 
-
     private void pin(Page page) {
         page.pinned = true;
-        pinnedPages.add(page.num);
-        checkState(!unpinnedPages.contains(page.num));
+        numPinned++;
     }
 
     private void pinAgain(Page page) {
+        unlink(page);
         page.pinned = true;
-        pinnedPages.add(page.num);
-        unpinnedPages.remove(page.num);
+        numPinned++;
     }
 
     // A page can be unpinned twice.
     private void unpin(Page page) {
+        if (!page.pinned) {
+            return;
+        }
         page.pinned = false;
-        pinnedPages.remove(page.num);
-        unpinnedPages.add(page.num);
+        numPinned--;
+        link(page);
+    }
+
+    // Append the page to the tail of unpinned list.
+    private void link(Page page) {
+        page.lruPrev = lruTail;
+        page.lruNext = null;
+        if (lruTail == null) {
+            lruHead = page;
+        } else {
+            lruTail.lruNext = page;
+        }
+        lruTail = page;
+    }
+
+    // Remove the page from unpinned list.
+    private void unlink(Page page) {
+        if (page.lruPrev == null) {
+            lruHead = page.lruNext;
+        } else {
+            page.lruPrev.lruNext = page.lruNext;
+        }
+        if (page.lruNext == null) {
+            lruTail = page.lruPrev;
+        } else {
+            page.lruNext.lruPrev = page.lruPrev;
+        }
+        page.lruPrev = null;
+        page.lruNext = null;
     }
 
     boolean contains(int pageNum) {
-        return buf.containsKey(pageNum);
+        return buf.get(pageNum) != null;
     }
 
     private boolean isFull() {
@@ -122,40 +198,123 @@ class PageBuffer {
     }
 
     boolean isPinned(int pageNum) {
-        return pinnedPages.contains(pageNum);
+        Page page = buf.get(pageNum);
+        return page != null && page.pinned;
     }
 
     boolean hasPinnedPages() {
-        return !pinnedPages.isEmpty();
+        return numPinned > 0;
     }
 
     private boolean hasUnpinnedPages() {
-        return !unpinnedPages.isEmpty();
-    }
-
-    // LRU buffer policy: the oldest unpinned pages will be removed first.
-    private int getOneUnpinnedPage() {
-        checkState(!unpinnedPages.isEmpty());
-        return unpinnedPages.iterator().next();
+        return lruHead != null;
     }
 
     // For test only
     Set<Integer> getPinnedPages() {
+        Set<Integer> pinnedPages = new TreeSet<>();
+        buf.forEach(page -> {
+            if (page.pinned) {
+                pinnedPages.add(page.num);
+            }
+        });
         return pinnedPages;
     }
 
+    // LRU order: the oldest unpinned pages come first.
     Set<Integer> getUnpinnedPages() {
+        Set<Integer> unpinnedPages = new LinkedHashSet<>();
+        for (Page page = lruHead; page != null; page = page.lruNext) {
+            unpinnedPages.add(page.num);
+        }
         return unpinnedPages;
     }
 
     Set<Integer> getAllPages() {
-        Set<Integer> allPages = new HashSet<>();
-        allPages.addAll(pinnedPages);
-        allPages.addAll(unpinnedPages);
+        Set<Integer> allPages = new TreeSet<>();
+        buf.forEach(page -> allPages.add(page.num));
         return allPages;
     }
 
     Page get(int pageNum) {
         return buf.get(pageNum);
     }
-}
\ No newline at end of file
+
+    /**
+     * A hash table from page numbers to buffered pages, using open addressing
+     * with linear probing. Unlike <tt>HashMap&lt;Integer, Page&gt;</tt>, it
+     * neither boxes page numbers nor allocates entries.
+     */
+    private static class PageTable {
+
+        private final Page[] slots;
+        private final int mask;
+        private final int shift;
+        private int size;
+
+        PageTable(int maxSize) {
+            // Keep the load factor below 1/2.
+            int capacity = Integer.highestOneBit(maxSize) << 2;
+            slots = new Page[capacity];
+            mask = capacity - 1;
+            shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        }
+
+        private int index(int pageNum) {
+            // Fibonacci hashing
+            return (pageNum * 0x9E3779B9) >>> shift;
+        }
+
+        int size() {
+            return size;
+        }
+
+        Page get(int pageNum) {
+            for (int i = index(pageNum); slots[i] != null; i = (i + 1) & mask) {
+                if (slots[i].num == pageNum) {
+                    return slots[i];
+                }
+            }
+            return null;
+        }
+
+        void put(Page page) {
+            int i = index(page.num);
+            while (slots[i] != null) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = page;
+            size++;
+        }
+
+        void remove(int pageNum) {
+            int i = index(pageNum);
+            while (slots[i] != null && slots[i].num != pageNum) {
+                i = (i + 1) & mask;
+            }
+            if (slots[i] == null) {
+                return;
+            }
+            slots[i] = null;
+            size--;
+            // Shift back the following pages in the probe sequence, so that
+            // no page becomes unreachable from its home slot.
+            for (int j = (i + 1) & mask; slots[j] != null; j = (j + 1) & mask) {
+                int home = index(slots[j].num);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    slots[i] = slots[j];
+                    slots[j] = null;
+                    i = j;
+                }
+            }
+        }
+
+        void forEach(Consumer<Page> action) {
+            for (Page page : slots) {
+                if (page != null) {
+                    action.accept(page);
+                }
+            }
+        }
+    }
+}
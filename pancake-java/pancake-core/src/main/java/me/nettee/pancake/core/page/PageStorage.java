@@ -0,0 +1,37 @@
+package me.nettee.pancake.core.page;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The on-disk storage behind a {@link PagedFile}. A storage maps page numbers
+ * to locations in one or more files. Each page occupies
+ * {@linkplain Page#PAGE_SIZE PAGE_SIZE} bytes.
+ */
+interface PageStorage {
+
+    /**
+     * @return the number of pages currently stored
+     */
+    int getNumOfPages() throws IOException;
+
+    /**
+     * Read <tt>dst.remaining()</tt> bytes from the beginning of the page
+     * specified by <tt>pageNum</tt>.
+     */
+    void read(int pageNum, ByteBuffer dst) throws IOException;
+
+    /**
+     * Write <tt>src.remaining()</tt> bytes to the beginning of the page
+     * specified by <tt>pageNum</tt>. The storage grows if necessary.
+     */
+    void write(int pageNum, ByteBuffer src) throws IOException;
+
+    /**
+     * Remove the pages from <tt>numPages</tt> on, so that the storage
+     * shrinks to <tt>numPages</tt> pages.
+     */
+    void truncate(int numPages) throws IOException;
+
+    void close() throws IOException;
+}
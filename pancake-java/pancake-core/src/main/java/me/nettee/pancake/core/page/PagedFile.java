@@ -5,18 +5,18 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.BitSet;
 import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Set;
 import java.util.function.Predicate;
 import java.util.function.UnaryOperator;
 
 import static com.google.common.base.Preconditions.*;
-import static java.nio.file.StandardOpenOption.*;
 
 /**
  * <b>Paged file</b> is the bottom component of pancake-core. This component
@@ -33,6 +33,11 @@ import static java.nio.file.StandardOpenOption.*;
  * reallocated) page. A brand new page is never allocated if a previously
  * allocated page is available.
  * <p>
+ * A paged file is normally stored in a single file on disk. It can also be
+ * split into fixed-size segment files striped across several directories (see
+ * {@link SegmentLayout}), so that a large paged file can span several disks.
+ * The segmented layout is transparent to the clients of a paged file.
+ * <p>
  *
  * @author nettee
  *
@@ -41,17 +46,33 @@ public class PagedFile {
 
 	private static Logger logger = LoggerFactory.getLogger(PagedFile.class);
 
-	private FileChannel file;
+	private PageStorage storage;
 	private int N; // Number of pages
 //	private Map<Integer, Integer> disposedPageIndexes = new HashMap<>();
 	private Deque<Integer> disposedPageNumsStack = new LinkedList<>();
+	// The same page numbers as in the stack, for fast membership test.
+	private BitSet disposedPageNums = new BitSet();
 
 	private PageBuffer buffer;
+	// Reused for every page read or written, to avoid allocation.
+	private final ByteBuffer ioBuffer = ByteBuffer.allocateDirect(Page.PAGE_SIZE);
 
-	private PagedFile(Path path) {
+	private PagedFile(PageStorage storage) {
 		buffer = new PageBuffer(this);
+		this.storage = storage;
+	}
+
+	private static PageStorage openSingleFileStorage(Path path) {
+		try {
+			return new SingleFileStorage(path);
+		} catch (IOException e) {
+			throw new PagedFileException(e);
+		}
+	}
+
+	private static PageStorage openSegmentedStorage(SegmentLayout layout) {
 		try {
-			this.file = FileChannel.open(path, CREATE, READ, WRITE);
+			return new SegmentedStorage(layout);
 		} catch (IOException e) {
 			throw new PagedFileException(e);
 		}
@@ -68,7 +89,30 @@ public class PagedFile {
 		checkNotNull(path);
 		checkArgument(Files.notExists(path), "file already exists: %s", path.toString());
 		logger.info("Creating PagedFile {}", path.toString());
-		PagedFile pagedFile = new PagedFile(path);
+		PagedFile pagedFile = new PagedFile(openSingleFileStorage(path));
+		pagedFile.initPages();
+		return pagedFile;
+	}
+
+	/**
+	 * Create a segmented paged file. None of the segment files should
+	 * already exist, and all the directories in <tt>layout</tt> should exist.
+	 *
+	 * @param layout
+	 *            the layout of segment files
+	 * @return created paged file
+	 */
+	public static PagedFile create(SegmentLayout layout) {
+		checkNotNull(layout);
+		for (Path directory : layout.getDirectories()) {
+			checkArgument(Files.isDirectory(directory),
+					"directory does not exist: %s", directory.toString());
+		}
+		Path firstSegment = layout.segmentPath(0);
+		checkArgument(Files.notExists(firstSegment),
+				"file already exists: %s", firstSegment.toString());
+		logger.info("Creating segmented PagedFile {}", layout.toString());
+		PagedFile pagedFile = new PagedFile(openSegmentedStorage(layout));
 		pagedFile.initPages();
 		return pagedFile;
 	}
@@ -86,7 +130,31 @@ public class PagedFile {
 		checkNotNull(path);
 		checkArgument(Files.exists(path), "file does not exist: %s", path.toString());
 		logger.info("Opening PagedFile {}", path.toString());
-		PagedFile pagedFile = new PagedFile(path);
+		PagedFile pagedFile = new PagedFile(openSingleFileStorage(path));
+		try {
+			pagedFile.loadPages();
+		} catch (IOException e) {
+			throw new PagedFileException(e);
+		}
+		return pagedFile;
+	}
+
+	/**
+	 * Open a segmented paged file. The file must already exist and have been
+	 * created using the <tt>create</tt> method with the same <tt>layout</tt>.
+	 *
+	 * @param layout
+	 *            the layout of segment files
+	 * @return opened paged file
+	 * @throws PagedFileException
+	 */
+	public static PagedFile open(SegmentLayout layout) {
+		checkNotNull(layout);
+		Path firstSegment = layout.segmentPath(0);
+		checkArgument(Files.exists(firstSegment),
+				"file does not exist: %s", firstSegment.toString());
+		logger.info("Opening segmented PagedFile {}", layout.toString());
+		PagedFile pagedFile = new PagedFile(openSegmentedStorage(layout));
 		try {
 			pagedFile.loadPages();
 		} catch (IOException e) {
@@ -100,10 +168,7 @@ public class PagedFile {
 	}
 
 	private void loadPages() throws IOException {
-		if (file.size() % Page.PAGE_SIZE != 0) {
-			logger.warn("file length is not dividable by {}", Page.PAGE_SIZE);
-		}
-		N = (int) (file.size() / Page.PAGE_SIZE);
+		N = storage.getNumOfPages();
 
 		// Restore the order of disposed pages. Their pageNums are pushed
 		// orderly into the stack.
@@ -112,9 +177,8 @@ public class PagedFile {
 			disposedPageNums[i] = -1;
 		}
 		for (int pageNum = 0; pageNum < N; pageNum++) {
-			file.position(pageNum * Page.PAGE_SIZE);
 			ByteBuffer pageNumCopy = ByteBuffer.allocate(4);
-			file.read(pageNumCopy);
+			storage.read(pageNum, pageNumCopy);
 			pageNumCopy.flip();
 			int actualNum = pageNumCopy.asIntBuffer().get(0);
 			if (actualNum < 0) {
@@ -126,6 +190,7 @@ public class PagedFile {
 		for (int pageNum : disposedPageNums) {
 			if (pageNum >= 0) {
 				disposedPageNumsStack.push(pageNum);
+				this.disposedPageNums.set(pageNum);
 			}
 		}
 	}
@@ -151,7 +216,7 @@ public class PagedFile {
 
 
 		try {
-			file.close();
+			storage.close();
 		} catch (IOException e) {
 			throw new PagedFileException(e);
 		}
@@ -168,28 +233,22 @@ public class PagedFile {
 	}
 
 	private boolean isDisposed(int pageNum) {
-		return disposedPageNumsStack.contains(pageNum);
+		return disposedPageNums.get(pageNum);
 	}
 
-	private Page readPageFromFile(int pageNum) throws IOException {
-		Page page = new Page(pageNum);
-		file.position(pageNum * Page.PAGE_SIZE);
-		ByteBuffer pageCopy = ByteBuffer.allocate(Page.PAGE_SIZE);
-		file.read(pageCopy);
-		pageCopy.position(4);
-		pageCopy.get(page.data);
-		return page;
+	private void readPageFromFile(Page page) throws IOException {
+		ioBuffer.clear();
+		storage.read(page.num, ioBuffer);
+		ioBuffer.position(4);
+		ioBuffer.get(page.data);
 	}
 
 	void writePageToFile(Page page) throws IOException {
-		file.position(page.num * Page.PAGE_SIZE);
-		ByteBuffer out = ByteBuffer.allocate(Page.PAGE_SIZE);
-		out.putInt(page.num);
-		out.put(page.data);
-		out.flip();
-		while (out.hasRemaining()) {
-			file.write(out);
-		}
+		ioBuffer.clear();
+		ioBuffer.putInt(page.num);
+		ioBuffer.put(page.data);
+		ioBuffer.flip();
+		storage.write(page.num, ioBuffer);
 	}
 
 	/**
@@ -199,26 +258,32 @@ public class PagedFile {
 	 * @throws PagedFileException When it fails to write the file.
 	 */
 	public Page allocatePage() {
+		Page page;
+		try {
+			page = buffer.obtainFrame();
+		} catch (FullBufferException e) {
+			logger.error("Fail to allocate page", e);
+			throw e;
+		}
 		int pageNum;
 		if (disposedPageNumsStack.isEmpty()) {
 			pageNum = N++;
 		} else {
 			pageNum = disposedPageNumsStack.pop();
+			disposedPageNums.clear(pageNum);
 		}
 		logger.info("Allocating page[{}]", pageNum);
-		Page page = new Page(pageNum);
+		page.num = pageNum;
+		// Fill the page with default bytes for ease of debugging.
+		Pages.fillDefaultBytes(page.data, 0, Page.DATA_SIZE);
 		try {
 			writePageToFile(page);
 		} catch (IOException e) {
+			buffer.releaseFrame(page);
 			String msg = String.format("fail to allocate page[%d]", pageNum);
 			throw new PagedFileException(msg, e);
 		}
-		try {
-			buffer.putAndPin(page);
-		} catch (FullBufferException e) {
-			logger.error(String.format("Fail to allocate page[%d]", page.num), e);
-			throw e;
-		}
+		buffer.putAndPin(page);
 		return page;
 	}
 
@@ -233,7 +298,7 @@ public class PagedFile {
 	 */
 	public void disposePage(int pageNum) {
 		checkPageNumRange(pageNum);
-		if (disposedPageNumsStack.contains(pageNum)) {
+		if (isDisposed(pageNum)) {
 			// This page is already disposed.
 			String msg = String.format("page[%d] already disposed", pageNum);
 			throw new PagedFileException(msg);
@@ -247,27 +312,64 @@ public class PagedFile {
 			buffer.removeWithoutWriteBack(pageNum); // can throw exception
 		}
 		try {
-			file.position(pageNum * Page.PAGE_SIZE);
 			// Write at the pageNum position with the opposite number of the
 			// disposed order, so that (1) we can identify disposed pages with
 			// a negative pageNum; (2) we can restore the disposed order when
 			// re-open the file.
-			ByteBuffer out = ByteBuffer.allocate(Page.PAGE_SIZE);
-			out.putInt(-1 - disposedPageNumsStack.size());
+			ioBuffer.clear();
+			ioBuffer.putInt(-1 - disposedPageNumsStack.size());
 			// Fill the file with default bytes for ease of debugging.
-			out.put(Pages.makeDefaultBytes(Page.DATA_SIZE));
-			out.flip();
-			while (out.hasRemaining()) {
-				file.write(out);
+			while (ioBuffer.hasRemaining()) {
+				ioBuffer.put(Pages.DEFAULT_BYTE);
 			}
+			ioBuffer.flip();
+			storage.write(pageNum, ioBuffer);
 		} catch (IOException e) {
 			String msg = String.format("fail to dispose page[%d]", pageNum);
 			throw new PagedFileException(msg, e);
 		}
 		disposedPageNumsStack.push(pageNum);
+		disposedPageNums.set(pageNum);
 		logger.debug(String.format("dispose page[%d]", pageNum));
 	}
 
+	/**
+	 * Remove the disposed pages at the end of the file, so that the file
+	 * shrinks. The numbers of the removed pages are allocated again as brand
+	 * new pages, after the rest disposed pages are reallocated.
+	 *
+	 * @return the number of removed pages
+	 * @throws PagedFileException When it fails to write the file.
+	 */
+	public int truncateDisposedPages() {
+		int oldN = N;
+		while (N > 0 && isDisposed(N - 1)) {
+			N--;
+			disposedPageNums.clear(N);
+			disposedPageNumsStack.remove(Integer.valueOf(N));
+		}
+		if (N == oldN) {
+			return 0;
+		}
+		try {
+			storage.truncate(N);
+			// Renumber the disposed order of the rest disposed pages, from
+			// the bottom of the stack, which has gaps now.
+			int order = 0;
+			for (Iterator<Integer> it = disposedPageNumsStack.descendingIterator(); it.hasNext(); order++) {
+				ioBuffer.clear();
+				ioBuffer.putInt(-1 - order);
+				ioBuffer.flip();
+				storage.write(it.next(), ioBuffer);
+			}
+		} catch (IOException e) {
+			String msg = String.format("fail to truncate to %d pages", N);
+			throw new PagedFileException(msg, e);
+		}
+		logger.info("Truncated disposed pages[{}-{}]", N, oldN - 1);
+		return oldN - N;
+	}
+
 	/**
 	 * Read page from buffer or from file.
 	 * 
@@ -284,7 +386,14 @@ public class PagedFile {
 				buffer.pinAgainIfNot(page);
 				return page;
 			} else {
-				Page page = readPageFromFile(pageNum);
+				Page page = buffer.obtainFrame();
+				page.num = pageNum;
+				try {
+					readPageFromFile(page);
+				} catch (IOException e) {
+					buffer.releaseFrame(page);
+					throw e;
+				}
 				buffer.putAndPin(page);
 				return page;
 			}
@@ -301,7 +410,9 @@ public class PagedFile {
 			throw new PagedFileException(msg);
 		}
 		Page page = readPage(pageNum);
-		logger.info("Got page[{}]", pageNum);
+		if (logger.isTraceEnabled()) {
+			logger.trace("Got page[{}]", pageNum);
+		}
 		return page;
 	}
 
@@ -350,6 +461,26 @@ public class PagedFile {
 		return page;
 	}
 
+	/**
+	 * Find the next page that is not disposed, without reading or pinning
+	 * any page. Together with <tt>getPage</tt>, this iterates over pages
+	 * lazily:
+	 * <pre>
+	 * for (int i = pagedFile.nextPageNum(0); i &gt;= 0; i = pagedFile.nextPageNum(i + 1)) {
+	 *     Page page = pagedFile.getPage(i);
+	 *     ...
+	 * }
+	 * </pre>
+	 * @param fromPageNum the page number to start from (inclusive)
+	 * @return the first page number not less than <tt>fromPageNum</tt> which
+	 * is not disposed, or -1 if no such page
+	 */
+	public int nextPageNum(int fromPageNum) {
+		checkArgument(fromPageNum >= 0, "negative page number: %s", fromPageNum);
+		int pageNum = disposedPageNums.nextClearBit(fromPageNum);
+		return pageNum < N ? pageNum : -1;
+	}
+
 	/**
 	 * Mark that the page specified by <tt>pageNum</tt> have been or will be
 	 * modified. The page must be pinned in the buffer pool. The <i>dirty</i>
@@ -370,7 +501,9 @@ public class PagedFile {
 			throw new PagedFileException(msg);
 		}
 		page.dirty = true;
-		logger.info("Marked page[{}] as dirty in buffer", page.num);
+		if (logger.isTraceEnabled()) {
+			logger.trace("Marked page[{}] as dirty in buffer", page.num);
+		}
 	}
 
 	/**
@@ -392,7 +525,9 @@ public class PagedFile {
 		checkPageNumRange(pageNum);
 		if (buffer.contains(pageNum)) {
 			buffer.unpin(pageNum);
-			logger.info("Unpinned page[{}] in buffer", pageNum);
+			if (logger.isTraceEnabled()) {
+				logger.trace("Unpinned page[{}] in buffer", pageNum);
+			}
 		}
 	}
 
@@ -0,0 +1,134 @@
+package me.nettee.pancake.core.page;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A writer that creates a paged file by appending pages sequentially, for
+ * loading a large amount of data at once. Unlike {@link PagedFile}, pages do
+ * not go through the buffer pool: the pages are written to the file in page
+ * number order, <tt>CHUNK_PAGES</tt> pages at a time.
+ * <p>
+ * The written file is an ordinary paged file with no disposed pages, and can
+ * be opened by {@link PagedFile#open(Path)} after the writer is closed.
+ */
+public class PagedFileWriter {
+
+	private static Logger logger = LoggerFactory.getLogger(PagedFileWriter.class);
+
+	// The number of pages written to the file in one write.
+	static final int CHUNK_PAGES = 64;
+
+	private final FileChannel file;
+	private final ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_PAGES * Page.PAGE_SIZE);
+	// The only frame, reused for every appended page.
+	private final Page frame = new Page();
+	private int N; // Number of appended pages
+	private int numWrittenPages;
+	private boolean closed = false;
+
+	private PagedFileWriter(FileChannel file) {
+		this.file = file;
+	}
+
+	/**
+	 * Create a paged file to write. The file should not already exist.
+	 *
+	 * @param path
+	 *            the path of database file
+	 * @return the writer of created file
+	 */
+	public static PagedFileWriter create(Path path) {
+		checkNotNull(path);
+		checkArgument(Files.notExists(path), "file already exists: %s", path.toString());
+		logger.info("Creating PagedFile {} for sequential writing", path.toString());
+		try {
+			return new PagedFileWriter(FileChannel.open(path, CREATE_NEW, WRITE));
+		} catch (IOException e) {
+			throw new PagedFileException(e);
+		}
+	}
+
+	/**
+	 * Append a new page to the file. The returned page is filled with
+	 * default bytes. Its contents are written when the next page is appended
+	 * or when the writer is closed, and it must not be used after that.
+	 *
+	 * @return a <tt>Page</tt> object for the appended page
+	 */
+	public Page appendPage() {
+		checkState(!closed, "writer is closed");
+		if (frame.num >= 0) {
+			bufferFrame();
+		}
+		frame.num = N++;
+		Pages.fillDefaultBytes(frame.data, 0, Page.DATA_SIZE);
+		return frame;
+	}
+
+	public int getNumOfPages() {
+		return N;
+	}
+
+	private void bufferFrame() {
+		chunk.putInt(frame.num);
+		chunk.put(frame.data);
+		if (!chunk.hasRemaining()) {
+			writeChunk();
+		}
+	}
+
+	private void writeChunk() {
+		int numPages = chunk.position() / Page.PAGE_SIZE;
+		chunk.flip();
+		try {
+			SingleFileStorage.writeFully(file, (long) numWrittenPages * Page.PAGE_SIZE, chunk);
+		} catch (IOException e) {
+			String msg = String.format("fail to write pages[%d-%d]",
+					numWrittenPages, numWrittenPages + numPages - 1);
+			throw new PagedFileException(msg, e);
+		}
+		numWrittenPages += numPages;
+		chunk.clear();
+	}
+
+	/**
+	 * Write the remaining pages, and close the file.
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (frame.num >= 0) {
+				bufferFrame();
+			}
+			if (chunk.position() > 0) {
+				writeChunk();
+			}
+			file.force(true);
+		} catch (IOException e) {
+			throw new PagedFileException(e);
+		} finally {
+			try {
+				file.close();
+			} catch (IOException e) {
+				logger.error("Fail to close file", e);
+			}
+		}
+		logger.info("Written {} pages sequentially", N);
+	}
+}
@@ -23,6 +23,14 @@ public class Pages {
         return makeDefaultBytes(DEFAULT_BYTE, length);
     }
 
+    /**
+     * Fill <tt>data[fromIndex..toIndex)</tt> with default bytes in place,
+     * without allocating a new array.
+     */
+    public static void fillDefaultBytes(byte[] data, int fromIndex, int toIndex) {
+        Arrays.fill(data, fromIndex, toIndex, DEFAULT_BYTE);
+    }
+
     public static String pageRangeRepr(Set<Integer> pageNumSet) {
         Integer[] pageNums = pageNumSet.toArray(new Integer[pageNumSet.size()]);
         List<Pair<Integer, Integer>> ranges = new ArrayList<>();
@@ -0,0 +1,77 @@
+package me.nettee.pancake.core.page;
+
+import com.google.common.collect.ImmutableList;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Describe a segmented paged file. A segmented paged file is split into
+ * segment files, each of which holds at most <tt>pagesPerSegment</tt> pages.
+ * Segments are striped across <tt>directories</tt> in a round-robin manner:
+ * segment <tt>s</tt> is stored in <tt>directories[s % directories.size()]</tt>
+ * with file name <tt>name.seg&lt;s&gt;</tt>.
+ * <p>
+ * Page <tt>p</tt> is stored in segment <tt>p / pagesPerSegment</tt>, at
+ * offset <tt>(p % pagesPerSegment) * PAGE_SIZE</tt>.
+ */
+public class SegmentLayout {
+
+    private final String name;
+    private final List<Path> directories;
+    private final int pagesPerSegment;
+
+    private SegmentLayout(String name, List<Path> directories, int pagesPerSegment) {
+        this.name = name;
+        this.directories = directories;
+        this.pagesPerSegment = pagesPerSegment;
+    }
+
+    /**
+     * @param name the base name of segment files
+     * @param directories the directories to hold segment files
+     * @param pagesPerSegment the maximum number of pages in one segment
+     * @return the segment layout
+     */
+    public static SegmentLayout of(String name, List<Path> directories, int pagesPerSegment) {
+        checkNotNull(name);
+        checkNotNull(directories);
+        checkArgument(!directories.isEmpty(), "no directories given");
+        checkArgument(pagesPerSegment > 0,
+                "pages per segment should be positive: %s", pagesPerSegment);
+        return new SegmentLayout(name, ImmutableList.copyOf(directories), pagesPerSegment);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Path> getDirectories() {
+        return directories;
+    }
+
+    public int getPagesPerSegment() {
+        return pagesPerSegment;
+    }
+
+    public Path segmentPath(int segmentNum) {
+        Path directory = directories.get(segmentNum % directories.size());
+        return directory.resolve(String.format("%s.seg%d", name, segmentNum));
+    }
+
+    int segmentOf(int pageNum) {
+        return pageNum / pagesPerSegment;
+    }
+
+    long offsetOf(int pageNum) {
+        return (long) (pageNum % pagesPerSegment) * Page.PAGE_SIZE;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s%s/%d", name, directories, pagesPerSegment);
+    }
+}
@@ -0,0 +1,114 @@
+package me.nettee.pancake.core.page;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Store the pages in several segment files, as described by a
+ * {@link SegmentLayout}. Segment files are opened on start-up and created on
+ * demand when the paged file grows.
+ */
+class SegmentedStorage implements PageStorage {
+
+    private static Logger logger = LoggerFactory.getLogger(SegmentedStorage.class);
+
+    private final SegmentLayout layout;
+    private final List<FileChannel> segments = new ArrayList<>();
+
+    SegmentedStorage(SegmentLayout layout) throws IOException {
+        this.layout = layout;
+        // Segments are always created in order, so the existing segments are
+        // numbered continuously from zero.
+        for (int s = 0; Files.exists(layout.segmentPath(s)); s++) {
+            segments.add(FileChannel.open(layout.segmentPath(s), READ, WRITE));
+        }
+        if (segments.isEmpty()) {
+            // A newly created paged file has one empty segment.
+            createSegment();
+        }
+    }
+
+    private void createSegment() throws IOException {
+        Path path = layout.segmentPath(segments.size());
+        logger.info("Creating segment {}", path.toString());
+        segments.add(FileChannel.open(path, CREATE_NEW, READ, WRITE));
+    }
+
+    @Override
+    public int getNumOfPages() throws IOException {
+        long numPages = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            long size = segments.get(s).size();
+            if (size % Page.PAGE_SIZE != 0) {
+                logger.warn("segment {} length is not dividable by {}", s, Page.PAGE_SIZE);
+            }
+            if (s < segments.size() - 1 && size != (long) layout.getPagesPerSegment() * Page.PAGE_SIZE) {
+                throw new PagedFileException(String.format(
+                        "segment %d is not full but followed by other segments", s));
+            }
+            numPages += size / Page.PAGE_SIZE;
+        }
+        return (int) numPages;
+    }
+
+    @Override
+    public void read(int pageNum, ByteBuffer dst) throws IOException {
+        int s = layout.segmentOf(pageNum);
+        if (s >= segments.size()) {
+            throw new PagedFileException(String.format(
+                    "segment %d of page[%d] does not exist", s, pageNum));
+        }
+        SingleFileStorage.readFully(segments.get(s), layout.offsetOf(pageNum), dst);
+    }
+
+    @Override
+    public void write(int pageNum, ByteBuffer src) throws IOException {
+        int s = layout.segmentOf(pageNum);
+        while (s >= segments.size()) {
+            createSegment();
+        }
+        SingleFileStorage.writeFully(segments.get(s), layout.offsetOf(pageNum), src);
+    }
+
+    /**
+     * The segments after the one holding the last remaining page are
+     * deleted. The first segment is always kept.
+     */
+    @Override
+    public void truncate(int numPages) throws IOException {
+        int numSegments = numPages == 0 ? 1 : layout.segmentOf(numPages - 1) + 1;
+        while (segments.size() > numSegments) {
+            int s = segments.size() - 1;
+            segments.remove(s).close();
+            Files.delete(layout.segmentPath(s));
+            logger.info("Deleted segment {}", layout.segmentPath(s).toString());
+        }
+        int lastPages = numPages - (numSegments - 1) * layout.getPagesPerSegment();
+        segments.get(numSegments - 1).truncate((long) lastPages * Page.PAGE_SIZE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (FileChannel segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package me.nettee.pancake.core.page;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Store all the pages in a single file. Page <tt>i</tt> is located at offset
+ * <tt>i * PAGE_SIZE</tt>.
+ */
+class SingleFileStorage implements PageStorage {
+
+    private static Logger logger = LoggerFactory.getLogger(SingleFileStorage.class);
+
+    private final FileChannel file;
+
+    SingleFileStorage(Path path) throws IOException {
+        file = FileChannel.open(path, CREATE, READ, WRITE);
+    }
+
+    @Override
+    public int getNumOfPages() throws IOException {
+        if (file.size() % Page.PAGE_SIZE != 0) {
+            logger.warn("file length is not dividable by {}", Page.PAGE_SIZE);
+        }
+        return (int) (file.size() / Page.PAGE_SIZE);
+    }
+
+    @Override
+    public void read(int pageNum, ByteBuffer dst) throws IOException {
+        readFully(file, (long) pageNum * Page.PAGE_SIZE, dst);
+    }
+
+    @Override
+    public void write(int pageNum, ByteBuffer src) throws IOException {
+        writeFully(file, (long) pageNum * Page.PAGE_SIZE, src);
+    }
+
+    @Override
+    public void truncate(int numPages) throws IOException {
+        file.truncate((long) numPages * Page.PAGE_SIZE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    static void readFully(FileChannel channel, long position, ByteBuffer dst) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, position);
+            if (n < 0) {
+                break;
+            }
+            position += n;
+        }
+    }
+
+    static void writeFully(FileChannel channel, long position, ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.Attr;
+import me.nettee.pancake.core.model.AttrType;
+
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static me.nettee.pancake.core.record.ByteArrays.readInt;
+
+/**
+ * The aggregates COUNT, SUM, MIN and MAX of an attribute over some records
+ * of a record file, computed by
+ * {@link RecordFile#aggregate(int, AttrType, Condition)}. SUM is only
+ * defined for int and float attributes. The aggregates of disjoint parts of
+ * a file, such as the page ranges from {@link RecordFile#splitPages(int)},
+ * are combined by {@link #merge(Aggregate)}.
+ * <p>
+ * Code example:
+ *
+ * <pre>
+Aggregate aggregate = recordFile.aggregate(4, AttrType.FLOAT, condition);
+if (aggregate.getCount() &gt; 0) {
+    double average = aggregate.getSum() / aggregate.getCount();
+    Attr max = aggregate.getMax().get();
+}
+ * </pre>
+ */
+public final class Aggregate {
+
+	private final int attrOffset;
+	private final AttrType attrType;
+	private int count;
+	private long intSum;
+	private double floatSum;
+	// The minimum and maximum values, stored as in records.
+	private final byte[] min;
+	private final byte[] max;
+
+	Aggregate(int attrOffset, AttrType attrType) {
+		this.attrOffset = attrOffset;
+		this.attrType = attrType;
+		this.min = new byte[attrType.getLength()];
+		this.max = new byte[attrType.getLength()];
+	}
+
+	public int getAttrOffset() {
+		return attrOffset;
+	}
+
+	public AttrType getAttrType() {
+		return attrType;
+	}
+
+	/**
+	 * @return the number of records aggregated
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the sum of an int or float attribute, which is 0 if no
+	 * records are aggregated
+	 * @throws IllegalStateException if the attribute is a string
+	 */
+	public double getSum() {
+		checkState(!attrType.isString(), "no sum of string attribute");
+		return attrType.isInt() ? intSum : floatSum;
+	}
+
+	/**
+	 * @return the exact sum of an int attribute
+	 * @throws IllegalStateException if the attribute is not an int
+	 */
+	public long getIntSum() {
+		checkState(attrType.isInt(), "not an int attribute");
+		return intSum;
+	}
+
+	/**
+	 * @return the minimum value, or empty if no records are aggregated
+	 */
+	public Optional<Attr> getMin() {
+		return count == 0 ? Optional.empty() : Optional.of(Attr.fromBytes(attrType, min.clone()));
+	}
+
+	/**
+	 * @return the maximum value, or empty if no records are aggregated
+	 */
+	public Optional<Attr> getMax() {
+		return count == 0 ? Optional.empty() : Optional.of(Attr.fromBytes(attrType, max.clone()));
+	}
+
+	/**
+	 * Add the value of the attribute stored at <tt>pos</tt> of
+	 * <tt>data</tt>, as in records.
+	 */
+	void add(byte[] data, int pos) {
+		int length = attrType.getLength();
+		if (attrType.isInt()) {
+			intSum += readInt(data, pos);
+		} else if (attrType.isFloat()) {
+			floatSum += Float.intBitsToFloat(readInt(data, pos));
+		}
+		if (count == 0 || Condition.compare(attrType, data, pos, min, 0) < 0) {
+			System.arraycopy(data, pos, min, 0, length);
+		}
+		if (count == 0 || Condition.compare(attrType, data, pos, max, 0) > 0) {
+			System.arraycopy(data, pos, max, 0, length);
+		}
+		count++;
+	}
+
+	/**
+	 * Combine the aggregates of another part of records into this one.
+	 * @param other the aggregates of the same attribute over other records
+	 * @return this aggregate
+	 */
+	public Aggregate merge(Aggregate other) {
+		checkArgument(attrOffset == other.attrOffset && attrType.equals(other.attrType),
+				"aggregates of different attributes");
+		if (other.count == 0) {
+			return this;
+		}
+		intSum += other.intSum;
+		floatSum += other.floatSum;
+		if (count == 0 || Condition.compare(attrType, other.min, 0, min, 0) < 0) {
+			System.arraycopy(other.min, 0, min, 0, min.length);
+		}
+		if (count == 0 || Condition.compare(attrType, other.max, 0, max, 0) > 0) {
+			System.arraycopy(other.max, 0, max, 0, max.length);
+		}
+		count += other.count;
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s@%d count=%d sum=%s min=%s max=%s", attrType, attrOffset, count,
+				attrType.isString() ? "-" : String.valueOf(getSum()),
+				getMin().map(Attr::toString).orElse("-"),
+				getMax().map(Attr::toString).orElse("-"));
+	}
+}
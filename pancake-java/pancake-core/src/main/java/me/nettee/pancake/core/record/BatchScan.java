@@ -0,0 +1,25 @@
+package me.nettee.pancake.core.record;
+
+/**
+ * A scan over the records of a record file which fills a
+ * {@link ColumnBatch} with many records at a time, started by
+ * {@link RecordFile#batchScan(ColumnBatch, Condition...)}. The same batch is
+ * refilled by every call of {@link #next()}.
+ */
+public interface BatchScan {
+
+	/**
+	 * Fill the batch with the next records. The previous contents of the
+	 * batch are discarded.
+	 * @return false if there are no more records; otherwise the batch has
+	 * at least one selected row
+	 */
+	boolean next();
+
+	/**
+	 * @return the batch filled by this scan
+	 */
+	ColumnBatch getBatch();
+
+	void close();
+}
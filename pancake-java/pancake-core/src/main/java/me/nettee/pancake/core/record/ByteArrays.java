@@ -0,0 +1,26 @@
+package me.nettee.pancake.core.record;
+
+/**
+ * Reads and writes multi-byte values in byte arrays, in big-endian byte
+ * order, the same as {@link java.nio.ByteBuffer} and
+ * {@link me.nettee.pancake.core.model.Attr}, without wrapping the arrays.
+ */
+final class ByteArrays {
+
+	private ByteArrays() {
+	}
+
+	static int readInt(byte[] data, int pos) {
+		return (data[pos] & 0xff) << 24
+				| (data[pos + 1] & 0xff) << 16
+				| (data[pos + 2] & 0xff) << 8
+				| (data[pos + 3] & 0xff);
+	}
+
+	static void writeInt(byte[] data, int pos, int value) {
+		data[pos] = (byte) (value >>> 24);
+		data[pos + 1] = (byte) (value >>> 16);
+		data[pos + 2] = (byte) (value >>> 8);
+		data[pos + 3] = (byte) value;
+	}
+}
@@ -0,0 +1,318 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.AttrType;
+import me.nettee.pancake.core.model.RID;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkState;
+import static me.nettee.pancake.core.record.ByteArrays.readInt;
+
+/**
+ * A batch of records decoded by columns, filled by a {@link BatchScan}. Each
+ * column is an attribute of records, given by its offset and type, and its
+ * values are stored in a vector: an <tt>int[]</tt> for int attributes, a
+ * <tt>float[]</tt> for float attributes, or a byte slab for string
+ * attributes, where the value of row <tt>r</tt> is the bytes
+ * <tt>[r * length, (r + 1) * length)</tt>. The vectors are allocated once and
+ * reused by every batch.
+ * <p>
+ * The rows of a batch are the records read by the scan, and the
+ * <i>selection vector</i> holds the rows satisfying the conditions of the
+ * scan, in ascending order. Only the selected rows should be used.
+ * <p>
+ * Code example:
+ *
+ * <pre>
+ColumnBatch batch = ColumnBatch.create(1024);
+int key = batch.addColumn(0, AttrType.INT);
+int price = batch.addColumn(4, AttrType.FLOAT);
+BatchScan scan = recordFile.batchScan(batch, condition);
+while (scan.next()) {
+    int[] keys = batch.getIntVector(key);
+    float[] prices = batch.getFloatVector(price);
+    int[] selection = batch.getSelection();
+    for (int i = 0; i &lt; batch.getNumOfSelected(); i++) {
+        int row = selection[i];
+        // Deal with keys[row] and prices[row] ...
+    }
+}
+scan.close();
+ * </pre>
+ */
+public final class ColumnBatch {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final int capacity;
+	private int numColumns;
+	private int[] attrOffsets = new int[0];
+	private AttrType[] attrTypes = new AttrType[0];
+	// The vector of each column: an int[], a float[] or a byte[].
+	private Object[] vectors = new Object[0];
+	// Whether the batch is being filled by a scan, when no columns can be
+	// added.
+	private boolean inUse;
+
+	private int size;
+	private final int[] pageNums;
+	private final int[] slotNums;
+	// The length of the record of each row.
+	private final int[] recordLengths;
+	private final int[] selection;
+	private int numSelected;
+
+	private ColumnBatch(int capacity) {
+		this.capacity = capacity;
+		pageNums = new int[capacity];
+		slotNums = new int[capacity];
+		recordLengths = new int[capacity];
+		selection = new int[capacity];
+	}
+
+	/**
+	 * @param capacity the maximum number of rows in a batch
+	 * @return an empty batch without columns
+	 */
+	public static ColumnBatch create(int capacity) {
+		checkArgument(capacity > 0, "non-positive capacity: %s", capacity);
+		return new ColumnBatch(capacity);
+	}
+
+	/**
+	 * @return an empty batch of {@value #DEFAULT_CAPACITY} rows without
+	 * columns
+	 */
+	public static ColumnBatch create() {
+		return create(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Add a column of the attribute at <tt>attrOffset</tt> of records.
+	 * Columns cannot be added while the batch is used by an open scan.
+	 * @param attrOffset the offset of the attribute in records
+	 * @param attrType the type of the attribute
+	 * @return the index of the column
+	 */
+	public int addColumn(int attrOffset, AttrType attrType) {
+		checkArgument(attrOffset >= 0, "negative attribute offset: %s", attrOffset);
+		checkArgument(attrType != null, "null attribute type");
+		checkState(!inUse, "batch is used by a scan");
+		int n = numColumns;
+		attrOffsets = Arrays.copyOf(attrOffsets, n + 1);
+		attrTypes = Arrays.copyOf(attrTypes, n + 1);
+		vectors = Arrays.copyOf(vectors, n + 1);
+		attrOffsets[n] = attrOffset;
+		attrTypes[n] = attrType;
+		if (attrType.isInt()) {
+			vectors[n] = new int[capacity];
+		} else if (attrType.isFloat()) {
+			vectors[n] = new float[capacity];
+		} else {
+			vectors[n] = new byte[capacity * attrType.getLength()];
+		}
+		numColumns++;
+		return n;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getNumOfColumns() {
+		return numColumns;
+	}
+
+	public int getAttrOffset(int column) {
+		checkElementIndex(column, numColumns);
+		return attrOffsets[column];
+	}
+
+	public AttrType getAttrType(int column) {
+		checkElementIndex(column, numColumns);
+		return attrTypes[column];
+	}
+
+	/**
+	 * @return the index of the column of the attribute, or -1 if there is
+	 * no such column
+	 */
+	public int indexOf(int attrOffset, AttrType attrType) {
+		for (int i = 0; i < numColumns; i++) {
+			if (attrOffsets[i] == attrOffset && attrTypes[i].equals(attrType)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the end of the last column in records
+	 */
+	int getEnd() {
+		int end = 0;
+		for (int i = 0; i < numColumns; i++) {
+			end = Math.max(end, attrOffsets[i] + attrTypes[i].getLength());
+		}
+		return end;
+	}
+
+	public int[] getIntVector(int column) {
+		checkElementIndex(column, numColumns);
+		checkArgument(attrTypes[column].isInt(), "column %s is not int", column);
+		return (int[]) vectors[column];
+	}
+
+	public float[] getFloatVector(int column) {
+		checkElementIndex(column, numColumns);
+		checkArgument(attrTypes[column].isFloat(), "column %s is not float", column);
+		return (float[]) vectors[column];
+	}
+
+	/**
+	 * @return the byte slab of a string column, where the value of each row
+	 * takes the length of the attribute
+	 */
+	public byte[] getBytesVector(int column) {
+		checkElementIndex(column, numColumns);
+		checkArgument(attrTypes[column].isString(), "column %s is not string", column);
+		return (byte[]) vectors[column];
+	}
+
+	/**
+	 * @return the number of rows in the batch
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	public int getPageNum(int row) {
+		checkElementIndex(row, size);
+		return pageNums[row];
+	}
+
+	public int getSlotNum(int row) {
+		checkElementIndex(row, size);
+		return slotNums[row];
+	}
+
+	public RID getRID(int row) {
+		checkElementIndex(row, size);
+		return new RID(pageNums[row], slotNums[row]);
+	}
+
+	/**
+	 * @return the selection vector, whose first {@link #getNumOfSelected()}
+	 * elements are the selected rows
+	 */
+	public int[] getSelection() {
+		return selection;
+	}
+
+	public int getNumOfSelected() {
+		return numSelected;
+	}
+
+	void setInUse(boolean inUse) {
+		checkState(!inUse || !this.inUse, "batch is used by another scan");
+		this.inUse = inUse;
+	}
+
+	void clear() {
+		size = 0;
+		numSelected = 0;
+	}
+
+	boolean isFull() {
+		return size == capacity;
+	}
+
+	/**
+	 * Decode a record into a new row, which is selected. The attribute of
+	 * column <tt>i</tt> is at <tt>positions[i]</tt> in the view; the bytes
+	 * beyond the end of the view are decoded as zero.
+	 * @param recordLength the length of the record, which may differ from
+	 * the length of a projected view
+	 */
+	void addRow(RecordView view, int[] positions, int recordLength) {
+		int row = size++;
+		pageNums[row] = view.getPageNum();
+		slotNums[row] = view.getSlotNum();
+		recordLengths[row] = recordLength;
+		selection[numSelected++] = row;
+		byte[] data = view.array();
+		int offset = view.arrayOffset();
+		int length = view.getLength();
+		for (int i = 0; i < numColumns; i++) {
+			int pos = positions[i];
+			AttrType attrType = attrTypes[i];
+			int attrLength = attrType.getLength();
+			if (pos + attrLength <= length) {
+				if (attrType.isInt()) {
+					((int[]) vectors[i])[row] = readInt(data, offset + pos);
+				} else if (attrType.isFloat()) {
+					((float[]) vectors[i])[row] = Float.intBitsToFloat(readInt(data, offset + pos));
+				} else {
+					System.arraycopy(data, offset + pos, vectors[i], row * attrLength, attrLength);
+				}
+			} else if (attrType.isInt()) {
+				((int[]) vectors[i])[row] = 0;
+			} else if (attrType.isFloat()) {
+				((float[]) vectors[i])[row] = 0;
+			} else {
+				byte[] slab = (byte[]) vectors[i];
+				int n = Math.max(length - pos, 0);
+				if (n > 0) {
+					System.arraycopy(data, offset + pos, slab, row * attrLength, n);
+				}
+				Arrays.fill(slab, row * attrLength + n, (row + 1) * attrLength, (byte) 0);
+			}
+		}
+	}
+
+	/**
+	 * Keep only the selected rows satisfying <tt>condition</tt>, which is on
+	 * the attribute of <tt>column</tt>. As {@link Condition#test(RecordView)},
+	 * a record too short to hold the attribute does not satisfy it.
+	 */
+	void filter(int column, Condition condition) {
+		int attrEnd = condition.getAttrOffset() + condition.getAttrType().getLength();
+		AttrType attrType = attrTypes[column];
+		int n = 0;
+		if (attrType.isInt()) {
+			int[] vector = (int[]) vectors[column];
+			int value = condition.getIntValue();
+			for (int i = 0; i < numSelected; i++) {
+				int row = selection[i];
+				if (recordLengths[row] >= attrEnd
+						&& condition.getOp().test(Integer.compare(vector[row], value))) {
+					selection[n++] = row;
+				}
+			}
+		} else if (attrType.isFloat()) {
+			float[] vector = (float[]) vectors[column];
+			float value = condition.getFloatValue();
+			for (int i = 0; i < numSelected; i++) {
+				int row = selection[i];
+				if (recordLengths[row] >= attrEnd
+						&& condition.getOp().test(Float.compare(vector[row], value))) {
+					selection[n++] = row;
+				}
+			}
+		} else {
+			byte[] slab = (byte[]) vectors[column];
+			byte[] value = condition.getValueBytes();
+			int attrLength = attrType.getLength();
+			for (int i = 0; i < numSelected; i++) {
+				int row = selection[i];
+				if (recordLengths[row] >= attrEnd && condition.getOp().test(
+						Condition.compare(attrType, slab, row * attrLength, value, 0))) {
+					selection[n++] = row;
+				}
+			}
+		}
+		numSelected = n;
+	}
+}
@@ -0,0 +1,42 @@
+package me.nettee.pancake.core.record;
+
+/**
+ * An online compaction of a record file, started by
+ * {@link RecordFile#startCompaction(int, java.util.function.BiConsumer)}.
+ * The compaction runs in steps, each reading a bounded number of pages, so
+ * that it can be interleaved with other operations on the file.
+ * <p>
+ * Code example:
+ *
+ * <pre>
+Compaction compaction = recordFile.startCompaction(50, (oldRid, newRid) -&gt; {
+    // Update the indexes pointing at oldRid ...
+});
+while (compaction.step(64)) {
+    // Serve other requests ...
+}
+ * </pre>
+ */
+public interface Compaction {
+
+	/**
+	 * Run the compaction until it finishes, or until it has read
+	 * <tt>pageBudget</tt> pages. A step always finishes the page it is
+	 * vacating, so it may read a few more pages than the budget.
+	 * @param pageBudget the maximum number of pages to read in this step
+	 * @return false if the compaction has finished
+	 */
+	boolean step(int pageBudget);
+
+	boolean isFinished();
+
+	/**
+	 * @return the number of records moved so far
+	 */
+	int getNumOfMovedRecords();
+
+	/**
+	 * @return the number of data pages disposed so far
+	 */
+	int getNumOfDisposedPages();
+}
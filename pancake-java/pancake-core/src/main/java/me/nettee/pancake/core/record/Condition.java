@@ -0,0 +1,151 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.Attr;
+import me.nettee.pancake.core.model.AttrType;
+import me.nettee.pancake.core.model.CompOp;
+
+import java.nio.ByteBuffer;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static me.nettee.pancake.core.record.ByteArrays.readInt;
+
+/**
+ * A scan condition comparing an attribute of records with a constant, as in
+ * <tt>attr op value</tt>. The attribute is at <tt>attrOffset</tt> of the
+ * record, and has type <tt>attrType</tt>.
+ * <p>
+ * A condition is tested on the bytes of a {@link RecordView} directly, with
+ * no decoding into {@link Attr} objects and no allocation. Ints and floats
+ * are compared the same as {@link me.nettee.pancake.core.model.IntAttr} and
+ * {@link me.nettee.pancake.core.model.FloatAttr}; strings are compared byte
+ * by byte. A record too short to hold the attribute does not satisfy the
+ * condition.
+ */
+public final class Condition implements Predicate<RecordView> {
+
+	private final int attrOffset;
+	private final AttrType attrType;
+	private final CompOp op;
+	private final Attr value;
+	// The value in the forms compared with records.
+	private final int intValue;
+	private final float floatValue;
+	private final byte[] bytes;
+
+	private Condition(int attrOffset, AttrType attrType, CompOp op, Attr value) {
+		this.attrOffset = attrOffset;
+		this.attrType = attrType;
+		this.op = op;
+		this.value = value;
+		this.bytes = value.toBytes();
+		if (attrType.isInt()) {
+			intValue = ByteBuffer.wrap(bytes).getInt();
+			floatValue = 0;
+		} else if (attrType.isFloat()) {
+			intValue = 0;
+			floatValue = ByteBuffer.wrap(bytes).getFloat();
+		} else {
+			intValue = 0;
+			floatValue = 0;
+		}
+	}
+
+	/**
+	 * @param attrOffset the offset of the attribute in records
+	 * @param attrType the type of the attribute
+	 * @param op the comparison operator
+	 * @param value the constant to compare with
+	 * @return the condition <tt>attr op value</tt>
+	 * @throws IllegalArgumentException if <tt>value</tt> does not have type
+	 * <tt>attrType</tt>
+	 */
+	public static Condition of(int attrOffset, AttrType attrType, CompOp op, Attr value) {
+		checkArgument(attrOffset >= 0, "negative attribute offset: %s", attrOffset);
+		checkNotNull(attrType);
+		checkNotNull(op);
+		checkNotNull(value);
+		attrType.check(value);
+		return new Condition(attrOffset, attrType, op, value);
+	}
+
+	public int getAttrOffset() {
+		return attrOffset;
+	}
+
+	public AttrType getAttrType() {
+		return attrType;
+	}
+
+	public CompOp getOp() {
+		return op;
+	}
+
+	public Attr getValue() {
+		return value;
+	}
+
+	/**
+	 * @return the value, stored as in records
+	 */
+	byte[] getValueBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return the value of an int condition
+	 */
+	int getIntValue() {
+		return intValue;
+	}
+
+	/**
+	 * @return the value of a float condition
+	 */
+	float getFloatValue() {
+		return floatValue;
+	}
+
+	@Override
+	public boolean test(RecordView view) {
+		if (view.getLength() < attrOffset + attrType.getLength()) {
+			return false;
+		}
+		int c;
+		if (attrType.isInt()) {
+			c = Integer.compare(view.getInt(attrOffset), intValue);
+		} else if (attrType.isFloat()) {
+			c = Float.compare(view.getFloat(attrOffset), floatValue);
+		} else {
+			c = view.compareBytes(attrOffset, bytes);
+		}
+		return op.test(c);
+	}
+
+	/**
+	 * Compare two values of type <tt>attrType</tt>, stored as in records, the
+	 * same way as a condition compares a record with its value.
+	 */
+	static int compare(AttrType attrType, byte[] a, int aPos, byte[] b, int bPos) {
+		if (attrType.isInt()) {
+			return Integer.compare(readInt(a, aPos), readInt(b, bPos));
+		} else if (attrType.isFloat()) {
+			return Float.compare(Float.intBitsToFloat(readInt(a, aPos)),
+					Float.intBitsToFloat(readInt(b, bPos)));
+		} else {
+			for (int i = 0; i < attrType.getLength(); i++) {
+				int c = Integer.compare(a[aPos + i] & 0xff, b[bPos + i] & 0xff);
+				if (c != 0) {
+					return c;
+				}
+			}
+			return 0;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s@%d %s %s", attrType, attrOffset, op, value);
+	}
+}
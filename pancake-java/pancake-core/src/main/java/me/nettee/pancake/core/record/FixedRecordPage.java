@@ -0,0 +1,333 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.page.Page;
+import me.nettee.pancake.core.page.Pages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * The layout of fixed-length record page: a header, followed by a bitset
+ * marking the occupied slots, followed by the slots. All the records in the
+ * page have the same size.
+ */
+public class FixedRecordPage extends RecordPage {
+
+	private static Logger logger = LoggerFactory.getLogger(FixedRecordPage.class);
+
+	/*
+	 * The header fields are read and written in place on the page data, at
+	 * the following offsets.
+	 */
+	private static final int RECORD_SIZE_POS = 0;
+	private static final int NUM_RECORDS_POS = 4;
+	private static final int CAPACITY_POS = 8;
+	private static final int BITSET_SIZE_POS = 12;
+	// Note: change the value when the structure of header changes.
+	static final int HEADER_SIZE = 16;
+
+	/**
+	 * The bitset marking the occupied slots, viewed in place as 64-bit words
+	 * following the header. Bit <tt>i</tt> is bit <tt>i % 64</tt> of word
+	 * <tt>i / 64</tt>, and the words are stored in little-endian byte order,
+	 * which is the same byte layout as {@link java.util.BitSet#toByteArray()}.
+	 */
+	private static class Bitset {
+
+		private final LongBuffer words;
+
+		Bitset(ByteBuffer view, int bitsetSize) {
+			ByteBuffer bytes = view.duplicate();
+			bytes.position(HEADER_SIZE);
+			bytes.limit(HEADER_SIZE + bitsetSize);
+			words = bytes.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+		}
+
+		boolean get(int i) {
+			return (words.get(i >>> 6) & (1L << i)) != 0;
+		}
+
+		void set(int i) {
+			int w = i >>> 6;
+			words.put(w, words.get(w) | (1L << i));
+		}
+
+		void clear(int i) {
+			int w = i >>> 6;
+			words.put(w, words.get(w) & ~(1L << i));
+		}
+
+		/**
+		 * Search a word (64 bits) at a time.
+		 * @return the index of the first clear bit from <tt>fromIndex</tt>,
+		 * or the number of bits if no such bit
+		 */
+		int nextClearBit(int fromIndex) {
+			int w = fromIndex >>> 6;
+			if (w >= words.limit()) {
+				return fromIndex;
+			}
+			long word = ~words.get(w) & (-1L << fromIndex);
+			while (word == 0) {
+				if (++w == words.limit()) {
+					return w * 64;
+				}
+				word = ~words.get(w);
+			}
+			return w * 64 + Long.numberOfTrailingZeros(word);
+		}
+
+		/**
+		 * Search a word (64 bits) at a time, skipping the all-zero words.
+		 * @return the index of the first set bit from <tt>fromIndex</tt>, or
+		 * -1 if no such bit
+		 */
+		int nextSetBit(int fromIndex) {
+			int w = fromIndex >>> 6;
+			if (w >= words.limit()) {
+				return -1;
+			}
+			long word = words.get(w) & (-1L << fromIndex);
+			while (word == 0) {
+				if (++w == words.limit()) {
+					return -1;
+				}
+				word = words.get(w);
+			}
+			return w * 64 + Long.numberOfTrailingZeros(word);
+		}
+	}
+
+	private Bitset bitset;
+	// All the slots before this hint are occupied.
+	private int freeSlotHint = 0;
+
+	FixedRecordPage(Page page) {
+		super(page);
+	}
+
+	static FixedRecordPage create(Page page, int recordSize) {
+		FixedRecordPage recordPage = new FixedRecordPage(page);
+		recordPage.init(recordSize);
+		return recordPage;
+	}
+
+	static FixedRecordPage open(Page page) {
+		FixedRecordPage recordPage = new FixedRecordPage(page);
+		recordPage.load();
+		return recordPage;
+	}
+
+	void init(int recordSize) {
+		int n = getPageRecordCapacity(recordSize);
+		view.putInt(RECORD_SIZE_POS, recordSize);
+		view.putInt(NUM_RECORDS_POS, 0);
+		view.putInt(CAPACITY_POS, n);
+		view.putInt(BITSET_SIZE_POS, getBitsetSize(n));
+		if (logger.isTraceEnabled()) {
+			logger.trace("capacity = {}", getCapacity());
+			logger.trace("bitsetSize = {}", getBitsetSize());
+		}
+
+		bitset = new Bitset(view, getBitsetSize());
+		Arrays.fill(page.getData(), HEADER_SIZE, HEADER_SIZE + getBitsetSize(), (byte) 0);
+	}
+
+	// TODO Repetitive computing in each record page
+	static int getPageRecordCapacity(int recordSize) {
+        /*
+         * Calculate bitset size:
+         *
+         * Let C = capacity of page (bytes), R = length of record, n = number of record.
+         * The bitset is stored in whole 64-bit words, taking 8*ceil(n/64) bytes.
+         *
+         * Rn + 8*ceil(n/64) <= C;
+         *
+         * Rn + 8*ceil(n/64) <= Rn + 8*(n/64 + 1) = Rn + n/8 + 8 <= C;
+         *
+         * Thus n <= 8(C-8)/(8R+1).
+         */
+        int C = Page.DATA_SIZE - HEADER_SIZE;
+        int n = 8 * (C - 8) / (8 * recordSize + 1);
+        return n;
+    }
+
+	// Bitset size in bytes, rounded up to whole words.
+	private static int getBitsetSize(int capacity) {
+		return (capacity + 63) / 64 * 8;
+	}
+
+	void load() {
+		bitset = new Bitset(view, getBitsetSize());
+	}
+
+	int getRecordSize() {
+		return view.getInt(RECORD_SIZE_POS);
+	}
+
+	@Override
+	int getNumRecords() {
+		return view.getInt(NUM_RECORDS_POS);
+	}
+
+	private void setNumRecords(int numRecords) {
+		view.putInt(NUM_RECORDS_POS, numRecords);
+	}
+
+	int getCapacity() {
+		return view.getInt(CAPACITY_POS);
+	}
+
+	int getBitsetSize() {
+		return view.getInt(BITSET_SIZE_POS);
+	}
+
+	@Override
+	public String dump() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("+----------------------------------------------------------------------------+\n");
+		sb.append(String.format("Page %d", pageNum));
+		sb.append("\n");
+		sb.append(String.format("record size: %d", getRecordSize()));
+		sb.append("\n");
+		sb.append(String.format("number of records: %d", getNumRecords()));
+		sb.append("\n");
+		sb.append(String.format("page capacity: %d", getCapacity()));
+		sb.append("\n");
+		sb.append(String.format("bitset size: %d", getBitsetSize()));
+		sb.append("\n");
+		sb.append("Bitset:\n");
+		int capacity = getCapacity();
+		for (int i = 0; i < capacity; i++) {
+			if (i % 64 == 0) {
+				sb.append(String.format("%3d: ", i));
+			} else if (i % 8 == 0) {
+				sb.append(" ");
+			}
+			sb.append(bitset.get(i) ? "1" : "0");
+			if (i % 64 == 64 - 1) {
+				sb.append("\n");
+			}
+		}
+		sb.append("\n");
+		sb.append("+----------------------------------------------------------------------------+\n");
+		return sb.toString();
+	}
+
+	@Override
+	void checkRecordExistence(int slotNum) {
+		if (slotNum < 0 || slotNum >= getCapacity() || !bitset.get(slotNum) || isTombstone(slotNum)) {
+			String msg = String.format("record %d does not exist", slotNum);
+			throw new RecordNotExistException(msg);
+		}
+	}
+
+	/*
+	 * The storage of records in slots, which a subclass may lay out in
+	 * another way.
+	 */
+
+	byte[] readRecordFromPage(int slotNum) {
+		int pos = recordPos(slotNum);
+		return Arrays.copyOfRange(page.getData(), pos, pos + getRecordSize());
+	}
+
+	void writeRecordToPage(int slotNum, byte[] src, int offset, int length) {
+		checkArgument(length == getRecordSize());
+		System.arraycopy(src, offset, page.getData(), recordPos(slotNum), length);
+	}
+
+	void clearRecordInPage(int slotNum) {
+		// Fill the record space with default bytes for ease of debugging.
+		Pages.fillDefaultBytes(page.getData(), recordPos(slotNum),
+				recordPos(slotNum) + getRecordSize());
+	}
+
+	private int recordPos(int i) {
+		return HEADER_SIZE + getBitsetSize() + i * getRecordSize();
+	}
+
+	@Override
+	boolean canInsert(int length) {
+		return length == getRecordSize() && !isFull();
+	}
+
+	@Override
+	int insert(byte[] src, int offset, int length) {
+		// Find the first free slot, starting from the hint.
+		int slotNum = bitset.nextClearBit(freeSlotHint);
+		checkState(slotNum < getCapacity(),
+			"No free slot left in record page");
+		writeRecordToPage(slotNum, src, offset, length);
+		bitset.set(slotNum);
+		setNumRecords(getNumRecords() + 1);
+		freeSlotHint = slotNum + 1;
+		return slotNum;
+	}
+
+	@Override
+	byte[] get(int slotNum) {
+		checkRecordExistence(slotNum);
+		return readRecordFromPage(slotNum);
+	}
+	
+	@Override
+	void update(int slotNum, byte[] data) {
+		checkRecordExistence(slotNum);
+		writeRecordToPage(slotNum, data, 0, data.length);
+	}
+	
+	@Override
+	void delete(int slotNum) {
+		checkRecordExistence(slotNum);
+		clearRecordInPage(slotNum);
+		bitset.clear(slotNum);
+		setNumRecords(getNumRecords() - 1);
+		freeSlotHint = Math.min(freeSlotHint, slotNum);
+	}
+	
+	@Override
+	boolean isOverflow(int slotNum) {
+		return false;
+	}
+
+	@Override
+	void setOverflow(int slotNum, boolean overflow) {
+		checkRecordExistence(slotNum);
+		// A fixed-length record always fits in a page.
+		checkArgument(!overflow, "fixed-length records are never stored in overflow pages");
+	}
+
+	@Override
+	public boolean isFull() {
+		return getNumRecords() >= getCapacity();
+	}
+
+	@Override
+	int getFreeSpace() {
+		return (getCapacity() - getNumRecords()) * getRecordSize();
+	}
+
+	@Override
+	int nextSlot(int fromSlotNum) {
+		// Empty slots are skipped a word at a time.
+		int slotNum = bitset.nextSetBit(fromSlotNum);
+		while (slotNum >= 0 && isTombstone(slotNum)) {
+			slotNum = bitset.nextSetBit(slotNum + 1);
+		}
+		return slotNum;
+	}
+
+	@Override
+	void viewRecord(int slotNum, RecordView view) {
+		view.set(pageNum, slotNum, page.getData(), recordPos(slotNum), getRecordSize());
+	}
+
+}
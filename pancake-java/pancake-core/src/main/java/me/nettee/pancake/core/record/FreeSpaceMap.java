@@ -0,0 +1,226 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.Magic;
+import me.nettee.pancake.core.page.Page;
+import me.nettee.pancake.core.page.PagedFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The free space map of a record file records the free space (in bytes) of
+ * each data page, so that an insertion finds a page with enough space
+ * without reading any data pages.
+ * <p>
+ * The map is kept in memory while the record file is open, and stored in a
+ * separate paged file next to the record file, named with suffix
+ * <tt>.fsm</tt>, when the record file is closed. The first page is the
+ * header page, which stores the number of entries. The rest pages store the
+ * entries, 2 bytes each, indexed by page number.
+ * <p>
+ * The stored map is deleted once it is loaded, so a record file which is
+ * not closed cleanly has no map when it is opened again, and the map is
+ * rebuilt from the data pages instead of trusting stale entries.
+ * <p>
+ * The map is only a hint. A page may have less space than its entry shows;
+ * the record file checks the page before inserting into it, and corrects
+ * the entry.
+ */
+class FreeSpaceMap {
+
+	private static Logger logger = LoggerFactory.getLogger(FreeSpaceMap.class);
+
+	private static final Magic MAGIC = new Magic("FREE-MAP");
+	private static final String SUFFIX = ".fsm";
+
+	private static final int ENTRY_SIZE = 2;
+	private static final int MAX_VALUE = 0xffff;
+	private static final int ENTRIES_PER_PAGE = Page.DATA_SIZE / ENTRY_SIZE;
+	// Entries are searched a block at a time.
+	private static final int BLOCK_SHIFT = 10;
+
+	private final Path dataFile;
+	private int[] values = new int[1 << BLOCK_SHIFT];
+	private int size;
+	// The upper bound of the values in each block.
+	private int[] blockMax = new int[1];
+	// All the pages before this hint have no free space.
+	private int hint;
+
+	private FreeSpaceMap(Path dataFile) {
+		this.dataFile = dataFile;
+	}
+
+	static Path pathOf(Path dataFile) {
+		return dataFile.resolveSibling(dataFile.getFileName().toString() + SUFFIX);
+	}
+
+	/**
+	 * Create an empty free space map of <tt>dataFile</tt>. It is stored when
+	 * closed.
+	 */
+	static FreeSpaceMap create(Path dataFile) {
+		destroy(dataFile);
+		return new FreeSpaceMap(dataFile);
+	}
+
+	/**
+	 * Load the free space map of <tt>dataFile</tt>, which has
+	 * <tt>numPages</tt> pages, and delete the stored map until it is stored
+	 * again on close.
+	 *
+	 * @return the loaded free space map, or null if it does not exist or does
+	 * not match the number of pages
+	 */
+	static FreeSpaceMap open(Path dataFile, int numPages) {
+		Path path = pathOf(dataFile);
+		if (Files.notExists(path)) {
+			logger.warn("Free space map {} does not exist", path.toString());
+			return null;
+		}
+		FreeSpaceMap map = new FreeSpaceMap(dataFile);
+		PagedFile pagedFile = PagedFile.open(path);
+		try {
+			Page headerPage = pagedFile.getFirstPage();
+			ByteBuffer in = ByteBuffer.wrap(headerPage.getData());
+			MAGIC.check(in);
+			int numEntries = in.getInt();
+			pagedFile.unpinPage(headerPage);
+			if (numEntries != numPages) {
+				logger.warn("Free space map {} has {} entries, but there are {} pages",
+						path.toString(), numEntries, numPages);
+				return null;
+			}
+			map.grow(numEntries);
+			for (int i = 0; i * ENTRIES_PER_PAGE < numEntries; i++) {
+				Page page = pagedFile.getPage(1 + i);
+				ByteBuffer entries = ByteBuffer.wrap(page.getData());
+				int from = i * ENTRIES_PER_PAGE;
+				int to = Math.min(from + ENTRIES_PER_PAGE, numEntries);
+				for (int pageNum = from; pageNum < to; pageNum++) {
+					map.set(pageNum, entries.getShort() & MAX_VALUE);
+				}
+				pagedFile.unpinPage(page);
+			}
+		} finally {
+			pagedFile.close();
+		}
+		// The stored map goes stale as soon as the data pages change.
+		destroy(dataFile);
+		logger.info("Loaded free space map of {} pages", numPages);
+		return map;
+	}
+
+	static void destroy(Path dataFile) {
+		try {
+			Files.deleteIfExists(pathOf(dataFile));
+		} catch (IOException e) {
+			throw new RecordFileException(e);
+		}
+	}
+
+	/**
+	 * Store the free space map, with entries of <tt>numPages</tt> pages.
+	 */
+	void close(int numPages) {
+		grow(numPages);
+		destroy(dataFile);
+		PagedFile pagedFile = PagedFile.create(pathOf(dataFile));
+		Page headerPage = pagedFile.allocatePage();
+		pagedFile.markDirty(headerPage);
+		ByteBuffer out = ByteBuffer.wrap(headerPage.getData());
+		out.put(MAGIC.getBytes());
+		out.putInt(numPages);
+		pagedFile.unpinPage(headerPage);
+		for (int from = 0; from < numPages; from += ENTRIES_PER_PAGE) {
+			Page page = pagedFile.allocatePage();
+			pagedFile.markDirty(page);
+			ByteBuffer entries = ByteBuffer.wrap(page.getData());
+			int to = Math.min(from + ENTRIES_PER_PAGE, numPages);
+			for (int pageNum = from; pageNum < to; pageNum++) {
+				entries.putShort((short) values[pageNum]);
+			}
+			pagedFile.unpinPage(page);
+		}
+		pagedFile.forceAllPages();
+		pagedFile.close();
+		logger.info("Stored free space map of {} pages", numPages);
+	}
+
+	private void grow(int newSize) {
+		if (newSize <= size) {
+			return;
+		}
+		if (newSize > values.length) {
+			int capacity = values.length;
+			while (capacity < newSize) {
+				capacity *= 2;
+			}
+			values = Arrays.copyOf(values, capacity);
+			blockMax = Arrays.copyOf(blockMax, capacity >>> BLOCK_SHIFT);
+		}
+		size = newSize;
+	}
+
+	/**
+	 * @return the recorded free space of the page
+	 */
+	int get(int pageNum) {
+		return pageNum < size ? values[pageNum] : 0;
+	}
+
+	/**
+	 * Record the free space of the page.
+	 */
+	void set(int pageNum, int freeSpace) {
+		checkArgument(pageNum >= 0 && freeSpace >= 0);
+		grow(pageNum + 1);
+		int value = Math.min(freeSpace, MAX_VALUE);
+		values[pageNum] = value;
+		int block = pageNum >>> BLOCK_SHIFT;
+		blockMax[block] = Math.max(blockMax[block], value);
+		if (value > 0 && pageNum < hint) {
+			hint = pageNum;
+		}
+	}
+
+	/**
+	 * Find the first page with at least <tt>freeSpace</tt> bytes of free
+	 * space. Blocks of pages without enough space are skipped as a whole.
+	 *
+	 * @return the page number, or -1 if there are no such pages
+	 */
+	int find(int freeSpace) {
+		while (hint < size && values[hint] == 0) {
+			hint++;
+		}
+		int numBlocks = (size + (1 << BLOCK_SHIFT) - 1) >>> BLOCK_SHIFT;
+		for (int block = hint >>> BLOCK_SHIFT; block < numBlocks; block++) {
+			if (blockMax[block] < freeSpace) {
+				continue;
+			}
+			int blockStart = block << BLOCK_SHIFT;
+			int from = Math.max(blockStart, hint);
+			int to = Math.min(blockStart + (1 << BLOCK_SHIFT), size);
+			int max = 0;
+			for (int pageNum = from; pageNum < to; pageNum++) {
+				int value = values[pageNum];
+				if (value >= freeSpace) {
+					return pageNum;
+				}
+				max = Math.max(max, value);
+			}
+			// The pages before the hint have no free space, so the bound
+			// becomes exact.
+			blockMax[block] = max;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,338 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.Magic;
+import me.nettee.pancake.core.page.Page;
+import me.nettee.pancake.core.page.PagedFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static me.nettee.pancake.core.record.ByteArrays.readInt;
+import static me.nettee.pancake.core.record.ByteArrays.writeInt;
+
+/**
+ * The overflow file of a record file stores the variable-length records too
+ * long to be kept in data pages. Such a record is stored in a <i>chain</i> of
+ * overflow pages, and the data page keeps only a <i>stub</i> of it, which
+ * consists of:
+ * <ul>
+ * <li>the length of the record (4 bytes)</li>
+ * <li>the number of the first page of the chain (4 bytes)</li>
+ * </ul>
+ * The overflow pages are stored in a separate paged file next to the record
+ * file, named with suffix <tt>.overflow</tt>, so a scan of the data pages
+ * never reads them unless it reaches an overflow record. The first page is
+ * the header page. Each of the rest pages holds a piece of a record:
+ * <ul>
+ * <li>the number of the next page of the chain, or -1 for the last page
+ * (4 bytes)</li>
+ * <li>the number of bytes of the record in this page (4 bytes)</li>
+ * <li>the bytes of the record</li>
+ * </ul>
+ * The pages of a chain are allocated one after another as the record is
+ * written, so they are mostly contiguous in the file.
+ * <p>
+ * Records are read from scans of different threads, so the reads are
+ * synchronized.
+ */
+class OverflowFile {
+
+	private static Logger logger = LoggerFactory.getLogger(OverflowFile.class);
+
+	private static final Magic MAGIC = new Magic("OVERFLOW");
+	private static final String SUFFIX = ".overflow";
+
+	private static final int NEXT_PAGE_NUM_POS = 0;
+	private static final int LENGTH_POS = 4;
+	private static final int DATA_POS = 8;
+	// The number of bytes of a record in an overflow page.
+	static final int PAGE_CAPACITY = Page.DATA_SIZE - DATA_POS;
+
+	static final int STUB_SIZE = 8;
+
+	/**
+	 * The maximum length of a record stored in overflow pages.
+	 */
+	static final int MAX_RECORD_SIZE = 1 << 24;
+
+	private final PagedFile pagedFile;
+
+	private OverflowFile(PagedFile pagedFile) {
+		this.pagedFile = pagedFile;
+	}
+
+	static Path pathOf(Path dataFile) {
+		return dataFile.resolveSibling(dataFile.getFileName().toString() + SUFFIX);
+	}
+
+	static boolean exists(Path dataFile) {
+		return Files.exists(pathOf(dataFile));
+	}
+
+	/**
+	 * Create the overflow file of <tt>dataFile</tt>, with no records.
+	 */
+	static OverflowFile create(Path dataFile) {
+		Path path = pathOf(dataFile);
+		logger.info("Creating overflow file {}", path.toString());
+		PagedFile pagedFile = PagedFile.create(path);
+		Page headerPage = pagedFile.allocatePage();
+		pagedFile.markDirty(headerPage);
+		byte[] magic = MAGIC.getBytes();
+		System.arraycopy(magic, 0, headerPage.getData(), 0, magic.length);
+		pagedFile.unpinPage(headerPage);
+		return new OverflowFile(pagedFile);
+	}
+
+	static OverflowFile open(Path dataFile) {
+		Path path = pathOf(dataFile);
+		logger.info("Opening overflow file {}", path.toString());
+		PagedFile pagedFile = PagedFile.open(path);
+		Page headerPage = pagedFile.getFirstPage();
+		try {
+			MAGIC.check(ByteBuffer.wrap(headerPage.getData()));
+		} finally {
+			pagedFile.unpinPage(headerPage);
+		}
+		return new OverflowFile(pagedFile);
+	}
+
+	/**
+	 * Delete the overflow file of <tt>dataFile</tt>, if any.
+	 */
+	static void destroy(Path dataFile) {
+		try {
+			if (Files.deleteIfExists(pathOf(dataFile))) {
+				logger.info("Deleted overflow file of {}", dataFile.toString());
+			}
+		} catch (IOException e) {
+			throw new RecordFileException(e);
+		}
+	}
+
+	void close() {
+		pagedFile.forceAllPages();
+		pagedFile.close();
+	}
+
+	/**
+	 * @return the length of the record of the stub at <tt>pos</tt> of
+	 * <tt>stub</tt>
+	 */
+	static int lengthOf(byte[] stub, int pos) {
+		return readInt(stub, pos);
+	}
+
+	private static int firstPageNumOf(byte[] stub, int pos) {
+		return readInt(stub, pos + 4);
+	}
+
+	/**
+	 * Write a record to a new chain of overflow pages.
+	 * @return the stub of the record
+	 */
+	byte[] write(byte[] src, int offset, int length) {
+		checkPositionIndexes(offset, offset + length, src.length);
+		try {
+			return write(new ByteArrayInputStream(src, offset, length));
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Write the bytes of <tt>in</tt> until its end, as a record, to a new
+	 * chain of overflow pages. The bytes are copied into the pages as they
+	 * are read, a page at a time. If the record is longer than
+	 * {@link #MAX_RECORD_SIZE} bytes, or reading <tt>in</tt> fails, the
+	 * written pages are freed.
+	 *
+	 * @return the stub of the record
+	 * @throws IllegalArgumentException if the record is too long
+	 */
+	byte[] write(InputStream in) throws IOException {
+		PushbackInputStream pin = new PushbackInputStream(in);
+		Page page = allocateChainPage();
+		int firstPageNum = page.getNum();
+		long length = 0;
+		try {
+			while (true) {
+				int n = readFully(pin, page.getData(), DATA_POS, PAGE_CAPACITY);
+				writeInt(page.getData(), LENGTH_POS, n);
+				length += n;
+				checkArgument(length <= MAX_RECORD_SIZE,
+						"record longer than %s bytes", MAX_RECORD_SIZE);
+				if (n < PAGE_CAPACITY) {
+					break;
+				}
+				int b = pin.read();
+				if (b < 0) {
+					break;
+				}
+				pin.unread(b);
+				Page next = allocateChainPage();
+				writeInt(page.getData(), NEXT_PAGE_NUM_POS, next.getNum());
+				pagedFile.unpinPage(page);
+				page = next;
+			}
+		} catch (IOException | RuntimeException e) {
+			pagedFile.unpinPage(page);
+			free(firstPageNum);
+			throw e;
+		}
+		pagedFile.unpinPage(page);
+		byte[] stub = new byte[STUB_SIZE];
+		writeInt(stub, 0, (int) length);
+		writeInt(stub, 4, firstPageNum);
+		logger.debug("Wrote overflow record of {} bytes from page[{}]", length, firstPageNum);
+		return stub;
+	}
+
+	private Page allocateChainPage() {
+		Page page = pagedFile.allocatePage();
+		pagedFile.markDirty(page);
+		writeInt(page.getData(), NEXT_PAGE_NUM_POS, -1);
+		writeInt(page.getData(), LENGTH_POS, 0);
+		return page;
+	}
+
+	private static int readFully(InputStream in, byte[] dest, int offset, int length) throws IOException {
+		int n = 0;
+		while (n < length) {
+			int read = in.read(dest, offset + n, length - n);
+			if (read < 0) {
+				break;
+			}
+			n += read;
+		}
+		return n;
+	}
+
+	/**
+	 * Read the record of the stub at <tt>stubPos</tt> of <tt>stub</tt> to
+	 * <tt>dest</tt>, starting at <tt>destPos</tt>.
+	 */
+	synchronized void read(byte[] stub, int stubPos, byte[] dest, int destPos) {
+		int pageNum = firstPageNumOf(stub, stubPos);
+		while (pageNum >= 0) {
+			Page page = pagedFile.getPage(pageNum);
+			byte[] data = page.getData();
+			int n = readInt(data, LENGTH_POS);
+			System.arraycopy(data, DATA_POS, dest, destPos, n);
+			destPos += n;
+			pageNum = readInt(data, NEXT_PAGE_NUM_POS);
+			pagedFile.unpinPage(page);
+		}
+	}
+
+	/**
+	 * Free the chain of overflow pages of the stub at <tt>pos</tt> of
+	 * <tt>stub</tt>.
+	 */
+	void free(byte[] stub, int pos) {
+		free(firstPageNumOf(stub, pos));
+	}
+
+	/**
+	 * Dispose the pages of the chain starting at <tt>firstPageNum</tt>. The
+	 * pages are disposed from the end of the chain, so that the next chain
+	 * reuses them in the same order.
+	 */
+	private void free(int firstPageNum) {
+		List<Integer> pageNums = new ArrayList<>();
+		for (int pageNum = firstPageNum; pageNum >= 0; ) {
+			pageNums.add(pageNum);
+			Page page = pagedFile.getPage(pageNum);
+			pageNum = readInt(page.getData(), NEXT_PAGE_NUM_POS);
+			pagedFile.unpinPage(page);
+		}
+		for (int i = pageNums.size() - 1; i >= 0; i--) {
+			pagedFile.disposePage(pageNums.get(i));
+		}
+		logger.debug("Freed {} overflow pages from page[{}]", pageNums.size(), firstPageNum);
+	}
+
+	/**
+	 * Open a stream of the record of the stub at <tt>pos</tt> of
+	 * <tt>stub</tt>, which reads the overflow pages one at a time as the
+	 * record is read. The record must not be updated or deleted until the
+	 * stream is closed.
+	 */
+	InputStream openStream(byte[] stub, int pos) {
+		return new ChainInputStream(firstPageNumOf(stub, pos));
+	}
+
+	private class ChainInputStream extends InputStream {
+
+		// The bytes of the record in the last read page.
+		private final byte[] buffer = new byte[PAGE_CAPACITY];
+		private int bufferLength;
+		private int bufferPos;
+		private int nextPageNum;
+
+		ChainInputStream(int firstPageNum) {
+			this.nextPageNum = firstPageNum;
+		}
+
+		/**
+		 * Read the next page into the buffer, if the buffer is used up.
+		 * @return false if the record is read to the end
+		 */
+		private boolean fill() {
+			while (bufferPos == bufferLength) {
+				if (nextPageNum < 0) {
+					return false;
+				}
+				synchronized (OverflowFile.this) {
+					Page page = pagedFile.getPage(nextPageNum);
+					byte[] data = page.getData();
+					bufferLength = readInt(data, LENGTH_POS);
+					System.arraycopy(data, DATA_POS, buffer, 0, bufferLength);
+					nextPageNum = readInt(data, NEXT_PAGE_NUM_POS);
+					pagedFile.unpinPage(page);
+				}
+				bufferPos = 0;
+			}
+			return true;
+		}
+
+		@Override
+		public int read() {
+			if (!fill()) {
+				return -1;
+			}
+			return buffer[bufferPos++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			checkPositionIndexes(off, off + len, b.length);
+			if (len == 0) {
+				return 0;
+			}
+			if (!fill()) {
+				return -1;
+			}
+			int n = Math.min(len, bufferLength - bufferPos);
+			System.arraycopy(buffer, bufferPos, b, off, n);
+			bufferPos += n;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return bufferLength - bufferPos;
+		}
+	}
+}
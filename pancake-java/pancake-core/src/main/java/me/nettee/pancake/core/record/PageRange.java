@@ -0,0 +1,48 @@
+package me.nettee.pancake.core.record;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A range of data pages in a record file, from <tt>fromPageNum</tt>
+ * (inclusive) to <tt>toPageNum</tt> (exclusive). A scan can be split into
+ * disjoint page ranges by {@link RecordFile#splitPages(int)}, and each range
+ * scanned by a different thread.
+ */
+public final class PageRange {
+
+	public final int fromPageNum;
+	public final int toPageNum;
+
+	public PageRange(int fromPageNum, int toPageNum) {
+		checkArgument(0 <= fromPageNum && fromPageNum <= toPageNum,
+				"invalid page range: [%s, %s)", fromPageNum, toPageNum);
+		this.fromPageNum = fromPageNum;
+		this.toPageNum = toPageNum;
+	}
+
+	/**
+	 * @return the number of pages in this range
+	 */
+	public int size() {
+		return toPageNum - fromPageNum;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof PageRange)) {
+			return false;
+		}
+		PageRange that = (PageRange) obj;
+		return this.fromPageNum == that.fromPageNum && this.toPageNum == that.toPageNum;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * fromPageNum + toPageNum;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("[%d,%d)", fromPageNum, toPageNum);
+	}
+}
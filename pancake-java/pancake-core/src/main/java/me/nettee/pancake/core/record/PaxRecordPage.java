@@ -0,0 +1,152 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.page.Page;
+import me.nettee.pancake.core.page.Pages;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The PAX (Partition Attributes Across) layout of fixed-length record page.
+ * The header and the bitset are the same as {@link FixedRecordPage}, but the
+ * records are stored by attributes: the values of each attribute of all the
+ * slots are grouped in a <i>minipage</i>, one after another. The page holds
+ * as many records as a fixed-length record page.
+ * <p>
+ * A scan that reads only some attributes reads only their minipages, which
+ * are contiguous, instead of every whole record. Reading a whole record
+ * assembles it from all the minipages.
+ */
+public class PaxRecordPage extends FixedRecordPage {
+
+	private final int[] attrLengths;
+	// The offset of each attribute in a record.
+	private final int[] attrOffsets;
+	// The position of each minipage in the page data.
+	private int[] minipagePos;
+	// The buffer to assemble whole records for views.
+	private byte[] rowBuffer;
+
+	private PaxRecordPage(Page page, int[] attrLengths) {
+		super(page);
+		this.attrLengths = attrLengths;
+		attrOffsets = new int[attrLengths.length];
+		for (int i = 1; i < attrLengths.length; i++) {
+			attrOffsets[i] = attrOffsets[i - 1] + attrLengths[i - 1];
+		}
+	}
+
+	static PaxRecordPage create(Page page, int[] attrLengths) {
+		PaxRecordPage recordPage = new PaxRecordPage(page, attrLengths);
+		recordPage.init(recordSizeOf(attrLengths));
+		recordPage.locateMinipages();
+		return recordPage;
+	}
+
+	static PaxRecordPage open(Page page, int[] attrLengths) {
+		PaxRecordPage recordPage = new PaxRecordPage(page, attrLengths);
+		recordPage.load();
+		checkArgument(recordPage.getRecordSize() == recordSizeOf(attrLengths),
+				"attributes do not match record size of page[%s]", page.getNum());
+		recordPage.locateMinipages();
+		return recordPage;
+	}
+
+	static int recordSizeOf(int[] attrLengths) {
+		int recordSize = 0;
+		for (int attrLength : attrLengths) {
+			recordSize += attrLength;
+		}
+		return recordSize;
+	}
+
+	private void locateMinipages() {
+		int capacity = getCapacity();
+		minipagePos = new int[attrLengths.length];
+		int pos = HEADER_SIZE + getBitsetSize();
+		for (int i = 0; i < attrLengths.length; i++) {
+			minipagePos[i] = pos;
+			pos += capacity * attrLengths[i];
+		}
+		rowBuffer = new byte[getRecordSize()];
+	}
+
+	private int valuePos(int attr, int slotNum) {
+		return minipagePos[attr] + slotNum * attrLengths[attr];
+	}
+
+	/**
+	 * Copy the bytes <tt>[offset, offset + length)</tt> of the record in a
+	 * slot to <tt>dest</tt>, which may span several attributes.
+	 */
+	private void readBytes(int slotNum, int offset, int length, byte[] dest, int destPos) {
+		byte[] data = page.getData();
+		int end = offset + length;
+		int attr = attrOf(offset);
+		while (offset < end) {
+			int attrEnd = attrOffsets[attr] + attrLengths[attr];
+			int n = Math.min(end, attrEnd) - offset;
+			System.arraycopy(data, valuePos(attr, slotNum) + offset - attrOffsets[attr],
+					dest, destPos, n);
+			offset += n;
+			destPos += n;
+			attr++;
+		}
+	}
+
+	// The attribute holding the byte at offset of a record.
+	private int attrOf(int offset) {
+		int attr = attrOffsets.length - 1;
+		while (attrOffsets[attr] > offset) {
+			attr--;
+		}
+		return attr;
+	}
+
+	@Override
+	byte[] readRecordFromPage(int slotNum) {
+		byte[] record = new byte[getRecordSize()];
+		readBytes(slotNum, 0, record.length, record, 0);
+		return record;
+	}
+
+	@Override
+	void writeRecordToPage(int slotNum, byte[] src, int offset, int length) {
+		checkArgument(length == getRecordSize());
+		byte[] data = page.getData();
+		for (int i = 0; i < attrLengths.length; i++) {
+			System.arraycopy(src, offset + attrOffsets[i], data, valuePos(i, slotNum), attrLengths[i]);
+		}
+	}
+
+	@Override
+	void clearRecordInPage(int slotNum) {
+		for (int i = 0; i < attrLengths.length; i++) {
+			int pos = valuePos(i, slotNum);
+			Pages.fillDefaultBytes(page.getData(), pos, pos + attrLengths[i]);
+		}
+	}
+
+	/**
+	 * The view is on a copy of the record assembled from the minipages,
+	 * which is overwritten by the next call.
+	 */
+	@Override
+	void viewRecord(int slotNum, RecordView view) {
+		readBytes(slotNum, 0, rowBuffer.length, rowBuffer, 0);
+		view.set(pageNum, slotNum, rowBuffer, 0, rowBuffer.length);
+	}
+
+	/**
+	 * Only the projected bytes are read, from the minipages holding them.
+	 */
+	@Override
+	void viewProjection(int slotNum, Projection projection, byte[] buffer, RecordView view) {
+		checkArgument(projection.getEnd() <= getRecordSize(), "projection out of record");
+		int destPos = 0;
+		for (int i = 0; i < projection.getNumOfRanges(); i++) {
+			readBytes(slotNum, projection.getOffset(i), projection.getLength(i), buffer, destPos);
+			destPos += projection.getLength(i);
+		}
+		view.set(pageNum, slotNum, buffer, 0, destPos);
+	}
+}
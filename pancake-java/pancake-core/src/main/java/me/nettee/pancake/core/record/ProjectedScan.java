@@ -0,0 +1,43 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.Record;
+import me.nettee.pancake.core.model.Scan;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A scan over the projected records of a record file, started by
+ * {@link RecordFile#scan(Projection)} or
+ * {@link RecordFile#scan(Projection, Condition)}. Each projected record
+ * holds only the bytes in the projection, of
+ * {@link Projection#getLength()} bytes.
+ * <p>
+ * Besides {@link #next()}, which copies one projected record at a time, the
+ * projected records can be copied back to back into a buffer of the caller:
+ *
+ * <pre>
+ByteBuffer buffer = ByteBuffer.allocate(4096);
+ProjectedScan scan = recordFile.scan(Projection.of(0, 4).and(12, 8));
+for (int n = scan.next(buffer); n &gt; 0; n = scan.next(buffer)) {
+    buffer.flip();
+    // Deal with the n projected records of 12 bytes ...
+    buffer.clear();
+}
+scan.close();
+ * </pre>
+ */
+public interface ProjectedScan extends Scan<Record> {
+
+	Projection getProjection();
+
+	/**
+	 * Copy as many of the next projected records as fit to <tt>dest</tt>,
+	 * starting at its position, which is advanced past them.
+	 * @param dest the buffer for projected records
+	 * @return the number of records copied, or 0 if there are no more
+	 * records
+	 * @throws IllegalArgumentException if not even one projected record
+	 * fits in <tt>dest</tt>
+	 */
+	int next(ByteBuffer dest);
+}
@@ -0,0 +1,155 @@
+package me.nettee.pancake.core.record;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A projection of records: a list of byte ranges of a record, such as the
+ * attributes needed by a query. The projected record is the concatenation
+ * of the bytes in these ranges, in the order of the list.
+ * <p>
+ * Code example:
+ *
+ * <pre>
+// The int at offset 0 and the 8-byte string at offset 12.
+Projection projection = Projection.of(0, 4).and(12, 8);
+ * </pre>
+ */
+public final class Projection {
+
+	private final int[] offsets;
+	private final int[] lengths;
+	// The length of the projected record.
+	private final int length;
+	// The end of the last byte range in the record.
+	private final int end;
+
+	private Projection(int[] offsets, int[] lengths) {
+		this.offsets = offsets;
+		this.lengths = lengths;
+		int length = 0;
+		int end = 0;
+		for (int i = 0; i < offsets.length; i++) {
+			length += lengths[i];
+			end = Math.max(end, offsets[i] + lengths[i]);
+		}
+		this.length = length;
+		this.end = end;
+	}
+
+	/**
+	 * @param offset the offset of the byte range in the record
+	 * @param length the length of the byte range
+	 * @return a projection of one byte range
+	 */
+	public static Projection of(int offset, int length) {
+		checkRange(offset, length);
+		return new Projection(new int[]{offset}, new int[]{length});
+	}
+
+	/**
+	 * @return a projection with another byte range appended
+	 */
+	public Projection and(int offset, int length) {
+		checkRange(offset, length);
+		int n = offsets.length;
+		int[] newOffsets = Arrays.copyOf(offsets, n + 1);
+		int[] newLengths = Arrays.copyOf(lengths, n + 1);
+		newOffsets[n] = offset;
+		newLengths[n] = length;
+		return new Projection(newOffsets, newLengths);
+	}
+
+	private static void checkRange(int offset, int length) {
+		checkArgument(offset >= 0, "negative offset: %s", offset);
+		checkArgument(length > 0, "non-positive length: %s", length);
+	}
+
+	public int getNumOfRanges() {
+		return offsets.length;
+	}
+
+	public int getOffset(int i) {
+		return offsets[i];
+	}
+
+	public int getLength(int i) {
+		return lengths[i];
+	}
+
+	/**
+	 * @return the length of a projected record
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the minimum length of a record holding all the byte ranges
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return the position in the projected record of the bytes
+	 * <tt>[offset, offset + length)</tt> of a record, or -1 if they are not
+	 * in one byte range
+	 */
+	int positionOf(int offset, int length) {
+		int pos = 0;
+		for (int i = 0; i < offsets.length; i++) {
+			if (offsets[i] <= offset && offset + length <= offsets[i] + lengths[i]) {
+				return pos + offset - offsets[i];
+			}
+			pos += lengths[i];
+		}
+		return -1;
+	}
+
+	/**
+	 * Copy the projected bytes of a record to <tt>dest</tt>, starting at
+	 * <tt>destPos</tt>. The bytes of the ranges beyond the end of the record
+	 * are set to zero.
+	 */
+	void project(byte[] src, int srcPos, int srcLength, byte[] dest, int destPos) {
+		for (int i = 0; i < offsets.length; i++) {
+			int n = Math.max(Math.min(lengths[i], srcLength - offsets[i]), 0);
+			if (n > 0) {
+				System.arraycopy(src, srcPos + offsets[i], dest, destPos, n);
+			}
+			Arrays.fill(dest, destPos + n, destPos + lengths[i], (byte) 0);
+			destPos += lengths[i];
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		Projection that = (Projection) o;
+		return Arrays.equals(offsets, that.offsets) && Arrays.equals(lengths, that.lengths);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(offsets) + Arrays.hashCode(lengths);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("Projection[");
+		for (int i = 0; i < offsets.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(offsets[i]).append('+').append(lengths[i]);
+		}
+		return sb.append(']').toString();
+	}
+}
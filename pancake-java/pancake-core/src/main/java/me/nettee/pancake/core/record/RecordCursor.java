@@ -0,0 +1,47 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.RID;
+
+/**
+ * A cursor over the records of a record file. Unlike
+ * {@link me.nettee.pancake.core.model.Scan}, a cursor does not copy records:
+ * the current record is exposed as a {@link RecordView} on the pinned page,
+ * and the same view object is reused for every record.
+ * <p>
+ * Code example:
+ *
+ * <pre>
+RecordCursor cursor = recordFile.cursor();
+while (cursor.advance()) {
+    RecordView view = cursor.getView();
+    // Deal with the record, or keep a copy via view.toRecord() ...
+}
+cursor.close();
+ * </pre>
+ */
+public interface RecordCursor {
+
+	/**
+	 * Move to the next record. The view of the previous record becomes
+	 * invalid.
+	 * @return false if there are no more records
+	 */
+	boolean advance();
+
+	/**
+	 * @return the view of the current record, valid until the next
+	 * {@link #advance()} or {@link #close()}
+	 * @throws IllegalStateException if the cursor is not on a record
+	 */
+	RecordView getView();
+
+	/**
+	 * @return the position right after the current record, from which
+	 * {@link RecordFile#cursor(RID, java.util.function.Predicate)} resumes
+	 * the scan
+	 * @throws IllegalStateException if the cursor is not on a record
+	 */
+	RID getResumePosition();
+
+	void close();
+}
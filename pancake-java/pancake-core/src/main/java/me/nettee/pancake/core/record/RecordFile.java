@@ -1,16 +1,28 @@
 package me.nettee.pancake.core.record;
 
+import com.google.common.io.ByteStreams;
+import me.nettee.pancake.core.model.AttrType;
 import me.nettee.pancake.core.model.RID;
 import me.nettee.pancake.core.model.Record;
 import me.nettee.pancake.core.model.Scan;
 import me.nettee.pancake.core.page.Page;
 import me.nettee.pancake.core.page.PagedFile;
+import me.nettee.pancake.core.page.PagedFileWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.google.common.base.Preconditions.*;
 
@@ -19,6 +31,14 @@ import static com.google.common.base.Preconditions.*;
  * and the rest pages serves as data page (which stores records). Each data page
  * also contains some header information. For metadata, see {@link RecordFileHeader}.
  * For data page, see {@link RecordPage}.
+ * <p>
+ * A record file stores either fixed-length records (created by
+ * {@link #create(Path, int)}) or variable-length records (created by
+ * {@link #createVariableLength(Path)}). Variable-length records are stored in
+ * slotted pages, so short records do not need padding to a maximum length.
+ * A variable-length record longer than a quarter of a page is stored in
+ * overflow pages, with only a stub of it in the data page (see
+ * {@link OverflowFile}).
  * 
  * @see RecordFileHeader
  * @see RecordPage
@@ -30,37 +50,45 @@ public class RecordFile {
 
 	private static Logger logger = LoggerFactory.getLogger(RecordFile.class);
 
-	private static class RecordPageBuffer {
-
-		private Map<Integer, RecordPage> buf = new HashMap<>();
-
-		void add(RecordPage recordPage) {
-			int pageNum = recordPage.getPageNum();
-			buf.put(pageNum, recordPage);
-			logger.info("Page[{}] added to record page buffer", pageNum);
-		}
-
-		boolean contains(int pageNum) {
-			return buf.containsKey(pageNum);
-		}
-
-		RecordPage get(int pageNum) {
-			return buf.get(pageNum);
-		}
-
-		Collection<RecordPage> pages() {
-			return buf.values();
-		}
-	}
+	// The attribute lengths of a columnar file are stored in the header page.
+	private static final int MAX_NUM_OF_ATTRS = 1000;
+	/*
+	 * Variable-length records longer than this are stored in overflow pages,
+	 * so that a data page holds at least a few records, and scans over short
+	 * records do not read through the pages of long ones.
+	 */
+	private static final int MAX_INLINE_RECORD_SIZE = SlottedRecordPage.MAX_RECORD_SIZE / 4;
 
+	private final Path path;
 	private PagedFile pagedFile;
 	private RecordFileHeader header;
-	private RecordPageBuffer buffer;
+	private FreeSpaceMap freeSpaceMap;
+	// The page last deleted from, tried first by insertions until it has no
+	// space, or -1 if none. The last page is never the target, otherwise its
+	// unused tail would be filled before the space freed in other pages.
+	private int targetPageNum = -1;
+	// The data page taking insertions in the append-only mode, or -1 if
+	// not known yet.
+	private int tailPageNum = -1;
+	// The zone map of this file, or null if it has none.
+	private ZoneMap zoneMap;
+	// The overflow file of this file, or null if it has no overflow records
+	// yet.
+	private OverflowFile overflowFile;
+	// The tombstones of the records deleted in the append-only mode, or null
+	// if there are none.
+	private TombstoneFile tombstoneFile;
+	/*
+	 * Guards the pinning and unpinning of pages by scans, so that scans over
+	 * disjoint page ranges can run in different threads. The records of a
+	 * pinned page are read without the lock, as no other scan reads the page.
+	 */
+	private final Object scanLock = new Object();
 
-	private RecordFile(PagedFile pagedFile) {
+	private RecordFile(Path path, PagedFile pagedFile) {
+		this.path = path;
 		this.pagedFile = pagedFile;
 		header = new RecordFileHeader();
-		buffer = new RecordPageBuffer();
 	}
 
 	public static RecordFile create(Path path, int recordSize) {
@@ -75,13 +103,158 @@ public class RecordFile {
 				"Created paged file is not empty");
 		pagedFile.allocatePage(); // As header page
 
-		RecordFile recordFile = new RecordFile(pagedFile);
+		RecordFile recordFile = new RecordFile(path, pagedFile);
 		recordFile.header.init(recordSize);
+		recordFile.resetSideFiles();
+		logger.info("Metadata initialized");
+
+		return recordFile;
+	}
+
+	/**
+	 * Create a record file storing variable-length records. The length of a
+	 * record can be at most {@link #getMaxRecordSize()} bytes. Records longer
+	 * than a quarter of a page are stored in overflow pages, and can also be
+	 * written and read as streams (see {@link #insertRecord(InputStream)} and
+	 * {@link #openRecordStream(RID)}).
+	 *
+	 * @param path the path of database file
+	 * @return created record file
+	 */
+	public static RecordFile createVariableLength(Path path) {
+		checkNotNull(path);
+
+		logger.info("Creating variable-length RecordFile {}", path.toString());
+
+		PagedFile pagedFile = PagedFile.create(path);
+		checkState(pagedFile.getNumOfPages() == 0,
+				"Created paged file is not empty");
+		pagedFile.allocatePage(); // As header page
+
+		RecordFile recordFile = new RecordFile(path, pagedFile);
+		recordFile.header.initVariableLength();
+		recordFile.resetSideFiles();
+		logger.info("Metadata initialized");
+
+		return recordFile;
+	}
+
+	/**
+	 * Create a record file storing fixed-length records in the PAX layout
+	 * (see {@link PaxRecordPage}): within each data page, the values of an
+	 * attribute are stored together. A record consists of the attributes in
+	 * order, and its length is the sum of the attribute lengths.
+	 * <p>
+	 * The file is used in the same way as one created by
+	 * {@link #create(Path, int)}. A cursor with a {@link Projection} on the
+	 * file reads only the projected attributes from each page, which suits
+	 * analytic scans over a few attributes of wide records.
+	 *
+	 * @param path the path of database file
+	 * @param attrLengths the lengths of the attributes of records
+	 * @return created record file
+	 */
+	public static RecordFile createColumnar(Path path, int... attrLengths) {
+		checkNotNull(path);
+		checkArgument(attrLengths.length > 0, "no attributes");
+		checkArgument(attrLengths.length <= MAX_NUM_OF_ATTRS,
+				"more than %s attributes", MAX_NUM_OF_ATTRS);
+		for (int attrLength : attrLengths) {
+			checkArgument(attrLength > 0, "non-positive attribute length: %s", attrLength);
+		}
+		int recordSize = PaxRecordPage.recordSizeOf(attrLengths);
+		checkArgument(recordSize >= 4,
+				"record size less than 4 is currently not supported");
+
+		logger.info("Creating columnar RecordFile {}", path.toString());
+
+		PagedFile pagedFile = PagedFile.create(path);
+		checkState(pagedFile.getNumOfPages() == 0,
+				"Created paged file is not empty");
+		pagedFile.allocatePage(); // As header page
+
+		RecordFile recordFile = new RecordFile(path, pagedFile);
+		recordFile.header.initColumnar(attrLengths);
+		recordFile.resetSideFiles();
 		logger.info("Metadata initialized");
 
 		return recordFile;
 	}
 
+	/**
+	 * Create a record file storing fixed-length records, and load
+	 * <tt>records</tt> into it. The records are packed into full data pages
+	 * in order, and the pages are written to the file sequentially, without
+	 * going through the buffer pool. This is much faster than inserting the
+	 * records one by one for the initial load of a large file.
+	 * <p>
+	 * The data pages are packed completely, regardless of the fill factor, so
+	 * only the last data page may have free slots.
+	 *
+	 * @param path the path of database file
+	 * @param recordSize the length of records
+	 * @param records the records to load
+	 * @return created record file, opened
+	 */
+	public static RecordFile bulkLoad(Path path, int recordSize, Iterator<Record> records) {
+		checkNotNull(path);
+		checkNotNull(records);
+		checkArgument(recordSize >= 4,
+				"record size less than 4 is currently not supported");
+
+		logger.info("Bulk loading RecordFile {}", path.toString());
+
+		RecordFileHeader header = new RecordFileHeader();
+		header.init(recordSize);
+		int lastPageNum = -1;
+		int lastFreeSpace = 0;
+		PagedFileWriter writer = PagedFileWriter.create(path);
+		try {
+			writer.appendPage(); // As header page, written after loading
+			FixedRecordPage recordPage = null;
+			while (records.hasNext()) {
+				Record record = records.next();
+				checkArgument(record.getLength() == recordSize);
+				if (recordPage == null || recordPage.isFull()) {
+					Page page = writer.appendPage();
+					recordPage = FixedRecordPage.create(page, recordSize);
+					header.numPages++;
+				}
+				recordPage.insert(record.getData());
+				header.numRecords++;
+			}
+			if (recordPage != null) {
+				lastPageNum = recordPage.getPageNum();
+				lastFreeSpace = recordPage.getFreeSpace();
+			}
+		} finally {
+			writer.close();
+		}
+		logger.info("Loaded {} records into {} data pages",
+				header.numRecords, header.numPages - header.dataPageOffset);
+
+		RecordFile recordFile = new RecordFile(path, PagedFile.open(path));
+		recordFile.header = header;
+		recordFile.resetSideFiles();
+		if (lastPageNum >= 0) {
+			recordFile.freeSpaceMap.set(lastPageNum, lastFreeSpace);
+		}
+		recordFile.writeMetadataToPage();
+		recordFile.pagedFile.forceAllPages();
+		return recordFile;
+	}
+
+	/**
+	 * Delete the side files left by a deleted record file at the same path,
+	 * and start with an empty free space map.
+	 */
+	private void resetSideFiles() {
+		ZoneMap.destroy(path);
+		OverflowFile.destroy(path);
+		TombstoneFile.destroy(path);
+		freeSpaceMap = FreeSpaceMap.create(path);
+	}
+
 	public static RecordFile open(Path path) {
 		checkNotNull(path);
 
@@ -91,11 +264,24 @@ public class RecordFile {
 		checkState(pagedFile.getNumOfPages() > 0,
 				"Opened paged file is empty");
 
-		RecordFile recordFile = new RecordFile(pagedFile);
+		RecordFile recordFile = new RecordFile(path, pagedFile);
 		Page headerPage = pagedFile.getFirstPage();
 		recordFile.header.readFrom(headerPage.getData());
 		logger.info("Metadata loaded");
 		pagedFile.unpinPage(headerPage);
+		recordFile.freeSpaceMap = FreeSpaceMap.open(path, pagedFile.getNumOfPages());
+		if (recordFile.freeSpaceMap == null) {
+			recordFile.rebuildFreeSpaceMap();
+		}
+		if (ZoneMap.exists(path)) {
+			recordFile.zoneMap = ZoneMap.open(path);
+		}
+		if (OverflowFile.exists(path)) {
+			recordFile.overflowFile = OverflowFile.open(path);
+		}
+		if (TombstoneFile.exists(path)) {
+			recordFile.tombstoneFile = TombstoneFile.open(path);
+		}
 
 		return recordFile;
 	}
@@ -104,10 +290,34 @@ public class RecordFile {
 		logger.info("Closing RecordFile");
 
 		writeMetadataToPage();
-		writeDataPageHeadersAndBitsetsToPage();
 
 		pagedFile.forceAllPages();
+		freeSpaceMap.close(pagedFile.getNumOfPages());
 		pagedFile.close();
+		if (zoneMap != null) {
+			zoneMap.close();
+		}
+		if (overflowFile != null) {
+			overflowFile.close();
+		}
+		if (tombstoneFile != null) {
+			tombstoneFile.close();
+		}
+	}
+
+	/**
+	 * Rebuild the free space map from the data pages, when it is lost or
+	 * out of date.
+	 */
+	private void rebuildFreeSpaceMap() {
+		freeSpaceMap = FreeSpaceMap.create(path);
+		for (int pageNum = pagedFile.nextPageNum(header.dataPageOffset); pageNum >= 0;
+				pageNum = pagedFile.nextPageNum(pageNum + 1)) {
+			RecordPage recordPage = getRecordPage(pageNum);
+			freeSpaceMap.set(pageNum, recordPage.getFreeSpace());
+			unpinPage(recordPage);
+		}
+		logger.info("Rebuilt free space map");
 	}
 
 	private void writeMetadataToPage() {
@@ -117,44 +327,349 @@ public class RecordFile {
 		pagedFile.unpinPage(headerPage);
 	}
 
-	private void writeDataPageHeadersAndBitsetsToPage() {
-		// TODO mark dirty
-		for (RecordPage recordPage : buffer.pages()) {
-			recordPage.writeHeaderToPage();
-			recordPage.writeBitsetToPage();
+	/**
+	 * @return whether this file stores variable-length records
+	 */
+	public boolean isVariableLength() {
+		return header.isVariableLength();
+	}
+
+	/**
+	 * @return whether this file stores records in the PAX layout
+	 * @see #createColumnar(Path, int...)
+	 */
+	public boolean isColumnar() {
+		return header.pageLayout == RecordFileHeader.PageLayout.PAX;
+	}
+
+	/**
+	 * @return the maximum length of a record in this file
+	 */
+	public int getMaxRecordSize() {
+		if (header.isVariableLength()) {
+			return OverflowFile.MAX_RECORD_SIZE;
+		} else {
+			return header.recordSize;
+		}
+	}
+
+	/**
+	 * @return the percentage of space in a data page to be filled by
+	 * insertions
+	 */
+	public int getFillFactor() {
+		return header.fillFactor;
+	}
+
+	/**
+	 * Set the percentage of space in a data page to be filled by insertions.
+	 * A record is not inserted into a page whose free space would drop below
+	 * the rest percentage, which is left for updates, unless the page is a
+	 * new one. The default fill factor is 100.
+	 *
+	 * @param fillFactor the percentage, from 10 to 100
+	 */
+	public void setFillFactor(int fillFactor) {
+		checkArgument(10 <= fillFactor && fillFactor <= 100,
+				"fill factor not in [10, 100]: %s", fillFactor);
+		header.fillFactor = fillFactor;
+	}
+
+	/**
+	 * @return whether this file is in the append-only mode
+	 * @see #setAppendOnly(boolean)
+	 */
+	public boolean isAppendOnly() {
+		return header.appendOnly;
+	}
+
+	/**
+	 * Turn the append-only mode of this file on or off. The mode is stored
+	 * in the file. In the append-only mode, which suits write-heavy ingest
+	 * of records never updated:
+	 * <ul>
+	 * <li>records are always inserted into the tail data page, regardless of
+	 * the free space in other pages and of the fill factor;</li>
+	 * <li>when the tail page is full, it is <i>sealed</i>: it is written to
+	 * disk at once, and a new tail page is allocated, so data pages are
+	 * written in order, each once;</li>
+	 * <li>deleting a record leaves it in its page, and adds a tombstone of
+	 * it to a separate file named with suffix <tt>.tombstones</tt>, so the
+	 * page is not written, and the slot is never reused;</li>
+	 * <li>records cannot be updated, and the file cannot be compacted, so
+	 * sealed pages never change.</li>
+	 * </ul>
+	 * When the mode is turned off, the records with tombstones are deleted
+	 * from their pages, and the tombstone file is deleted.
+	 *
+	 * @param appendOnly whether to use the append-only mode
+	 */
+	public void setAppendOnly(boolean appendOnly) {
+		header.appendOnly = appendOnly;
+		tailPageNum = -1;
+		targetPageNum = -1;
+		if (!appendOnly && tombstoneFile != null) {
+			removeTombstones();
+		}
+	}
+
+	/**
+	 * Delete the records with tombstones from their pages, and delete the
+	 * tombstone file.
+	 */
+	private void removeTombstones() {
+		for (Map.Entry<Integer, BitSet> entry : tombstoneFile.getAll().entrySet()) {
+			RecordPage recordPage = getRecordPage(entry.getKey());
+			recordPage.setTombstones(null);
+			markDirty(recordPage);
+			BitSet slots = entry.getValue();
+			for (int slotNum = slots.nextSetBit(0); slotNum >= 0; slotNum = slots.nextSetBit(slotNum + 1)) {
+				recordPage.delete(slotNum);
+			}
+			freeSpaceMap.set(recordPage.getPageNum(), recordPage.getFreeSpace());
+			unpinPage(recordPage);
+		}
+		tombstoneFile.close();
+		tombstoneFile = null;
+		TombstoneFile.destroy(path);
+	}
+
+	/**
+	 * Add the attribute at <tt>attrOffset</tt> of type <tt>attrType</tt> to
+	 * the zone map of this file, creating the zone map if the file has none.
+	 * The zone map keeps the minimum and maximum values of the attribute in
+	 * each data page, so that a scan with a {@link Condition} on the
+	 * attribute skips the pages where no records can satisfy it. The zone map
+	 * is rebuilt from all the records in this file.
+	 *
+	 * @param attrOffset the offset of the attribute in records
+	 * @param attrType the type of the attribute
+	 * @see ZoneMap
+	 */
+	public void addZoneMap(int attrOffset, AttrType attrType) {
+		checkArgument(attrOffset >= 0, "negative attribute offset: %s", attrOffset);
+		checkNotNull(attrType);
+		checkArgument(header.isVariableLength()
+						|| attrOffset + attrType.getLength() <= header.recordSize,
+				"attribute out of record: %s at %s", attrType, attrOffset);
+		int n = zoneMap == null ? 0 : zoneMap.getNumOfAttrs();
+		int[] attrOffsets = new int[n + 1];
+		AttrType[] attrTypes = new AttrType[n + 1];
+		for (int i = 0; i < n; i++) {
+			attrOffsets[i] = zoneMap.getAttrOffset(i);
+			attrTypes[i] = zoneMap.getAttrType(i);
+			if (attrOffsets[i] == attrOffset
+					&& attrTypes[i].equals(attrType)) {
+				logger.info("Zone map already has {} at {}", attrType, attrOffset);
+				return;
+			}
+		}
+		attrOffsets[n] = attrOffset;
+		attrTypes[n] = attrType;
+		dropZoneMap();
+		zoneMap = ZoneMap.create(path, attrOffsets, attrTypes);
+		buildZoneMap();
+	}
+
+	/**
+	 * Remove the zone map of this file, if any.
+	 */
+	public void dropZoneMap() {
+		if (zoneMap != null) {
+			zoneMap.close();
+			zoneMap = null;
+		}
+		ZoneMap.destroy(path);
+	}
+
+	private void buildZoneMap() {
+		RecordView view = new RecordView();
+		int numPages = 0;
+		for (int pageNum = pagedFile.nextPageNum(header.dataPageOffset); pageNum >= 0;
+				pageNum = pagedFile.nextPageNum(pageNum + 1)) {
+			RecordPage recordPage = getRecordPage(pageNum);
+			zoneMap.reset(pageNum);
+			for (int slotNum = recordPage.nextSlot(0); slotNum >= 0;
+					slotNum = recordPage.nextSlot(slotNum + 1)) {
+				viewRecord(recordPage, slotNum, view);
+				zoneMap.add(pageNum, view.array(), view.arrayOffset(), view.getLength());
+			}
+			unpinPage(recordPage);
+			numPages++;
+		}
+		logger.info("Built zone map of {} data pages", numPages);
+	}
+
+	private void checkRecordLength(Record record) {
+		if (header.isVariableLength()) {
+			checkArgument(record.getLength() <= OverflowFile.MAX_RECORD_SIZE,
+					"record longer than %s bytes", OverflowFile.MAX_RECORD_SIZE);
+		} else {
+			checkArgument(record.getLength() == header.recordSize);
+		}
+	}
+
+	/**
+	 * @return whether a record of <tt>length</tt> bytes is stored in
+	 * overflow pages
+	 */
+	private boolean isOverflowLength(int length) {
+		return header.isVariableLength() && length > MAX_INLINE_RECORD_SIZE;
+	}
+
+	/**
+	 * Get the overflow file, creating it for the first overflow record.
+	 */
+	private OverflowFile getOverflowFile() {
+		if (overflowFile == null) {
+			overflowFile = OverflowFile.create(path);
+		}
+		return overflowFile;
+	}
+
+	/**
+	 * The free space a page must have for a record of <tt>length</tt> bytes
+	 * to be inserted, including the space left by the fill factor. A
+	 * variable-length record is counted with a new slot, since the free
+	 * space map does not know about free slots, so every page found in the
+	 * map with this much space {@linkplain #fits fits} the record.
+	 */
+	private int neededFreeSpace(int length) {
+		int needed = header.isVariableLength() ? length + SlottedRecordPage.SLOT_SIZE : length;
+		return needed + reservedSpace();
+	}
+
+	/**
+	 * The free space left in a page by the fill factor for updates.
+	 */
+	private int reservedSpace() {
+		if (header.appendOnly) {
+			// No space is left for updates.
+			return 0;
+		}
+		return getPageSpace() * (100 - header.fillFactor) / 100;
+	}
+
+	/**
+	 * Check whether a record of <tt>length</tt> bytes can be inserted into a
+	 * pinned page, keeping the space left by the fill factor. A free slot of
+	 * the page is reused, so no space for a new slot is needed then.
+	 */
+	private boolean fits(RecordPage recordPage, int length) {
+		return recordPage.canInsert(length)
+				&& recordPage.getFreeSpace() >= recordPage.insertedSpace(length) + reservedSpace();
+	}
+
+	/**
+	 * The space for records in a data page, which is the free space of an
+	 * empty data page.
+	 */
+	private int getPageSpace() {
+		if (header.isVariableLength()) {
+			return Page.DATA_SIZE - SlottedRecordPage.HEADER_SIZE;
+		} else {
+			return FixedRecordPage.getPageRecordCapacity(header.recordSize) * header.recordSize;
 		}
 	}
 
-	private RecordPage getOneFreeRecordPage() {
-		if (hasFreePages()) {
-            return getFirstFreePage();
-        } else {
-			RecordPage recordPage = createRecordPage();
-			insertFreePage(recordPage);
-			logger.info("No free pages, created record page[{}]", recordPage.getPageNum());
-			return recordPage;
+	/**
+	 * Get a record page where a record of <tt>length</tt> bytes fits. The
+	 * page last deleted from is tried first, so that freed space is reused
+	 * soon; otherwise the free space map is looked up for the first page
+	 * with enough space. If the map is out of date about a page, its entry
+	 * is corrected.
+	 */
+	private RecordPage getOneFreeRecordPage(int length) {
+		if (header.appendOnly) {
+			return getTailRecordPage(length);
+		}
+		if (targetPageNum >= 0) {
+			// The page may have a free slot, so only the record is counted.
+			if (freeSpaceMap.get(targetPageNum) >= length + reservedSpace()) {
+				RecordPage recordPage = getRecordPage(targetPageNum);
+				if (fits(recordPage, length)) {
+					return recordPage;
+				}
+				freeSpaceMap.set(targetPageNum, recordPage.getFreeSpace());
+				unpinPage(recordPage);
+			}
+			targetPageNum = -1;
+		}
+		int neededFreeSpace = neededFreeSpace(length);
+		while (true) {
+			int pageNum = freeSpaceMap.find(neededFreeSpace);
+			if (pageNum < 0) {
+				break;
+			}
+			RecordPage recordPage = getRecordPage(pageNum);
+			if (fits(recordPage, length)) {
+				return recordPage;
+			}
+			logger.debug("Record page[{}] has less free space than in the free space map",
+					pageNum);
+			freeSpaceMap.set(pageNum, recordPage.getFreeSpace());
+			unpinPage(recordPage);
 		}
+		RecordPage recordPage = createRecordPage();
+		logger.debug("No free pages, created record page[{}]", recordPage.getPageNum());
+		return recordPage;
+	}
 
+	/**
+	 * Get the tail page if a record of <tt>length</tt> bytes fits in it;
+	 * otherwise seal the tail page and create a new one. Right after the
+	 * file is opened, the last data page is the tail page.
+	 */
+	private RecordPage getTailRecordPage(int length) {
+		if (tailPageNum < 0) {
+			int lastPageNum = pagedFile.getNumOfPages() - 1;
+			if (lastPageNum >= header.dataPageOffset && pagedFile.nextPageNum(lastPageNum) == lastPageNum) {
+				tailPageNum = lastPageNum;
+			}
+		}
+		if (tailPageNum >= 0) {
+			RecordPage recordPage = getRecordPage(tailPageNum);
+			if (fits(recordPage, length)) {
+				return recordPage;
+			}
+			// Seal the full tail page, which is written once here.
+			pagedFile.forcePage(recordPage.getPage());
+			unpinPage(recordPage);
+			logger.debug("Sealed record page[{}]", tailPageNum);
+		}
+		RecordPage recordPage = createRecordPage();
+		tailPageNum = recordPage.getPageNum();
+		return recordPage;
 	}
 
 	private RecordPage createRecordPage() {
 		Page page = pagedFile.allocatePage();
 		pagedFile.markDirty(page);
-		RecordPage recordPage = RecordPage.create(page, header.recordSize);
+		RecordPage recordPage = RecordPage.create(page, header);
 		header.numPages++;
-		buffer.add(recordPage);
+		if (zoneMap != null) {
+			zoneMap.reset(recordPage.getPageNum());
+		}
+		page.setAttachment(recordPage);
 		return recordPage;
 	}
 
+	/**
+	 * Pin a data page and get its record page. The record page is attached
+	 * to the frame holding the page, so it is decoded only when the page is
+	 * read into the buffer pool, and dropped when the page is removed from
+	 * it. A record page is valid only while its page is pinned.
+	 */
 	private RecordPage getRecordPage(int pageNum) {
-		if (buffer.contains(pageNum)) {
-			RecordPage recordPage = buffer.get(pageNum);
-			touch(recordPage);
-			return recordPage;
-		}
 		Page page = pagedFile.getPage(pageNum);
-		RecordPage recordPage = RecordPage.open(page);
-		buffer.add(recordPage);
+		RecordPage recordPage = (RecordPage) page.getAttachment();
+		if (recordPage == null) {
+			recordPage = RecordPage.open(page, header);
+			if (tombstoneFile != null) {
+				recordPage.setTombstones(tombstoneFile.get(pageNum));
+			}
+			page.setAttachment(recordPage);
+		}
 		return recordPage;
 	}
 
@@ -165,22 +680,223 @@ public class RecordFile {
 	 * @return record identifier <tt>RID</tt>
 	 */
 	public RID insertRecord(Record record) {
-		checkArgument(record.getLength() == header.recordSize);
-		RecordPage recordPage = getOneFreeRecordPage();
+		checkRecordLength(record);
+		if (isOverflowLength(record.getLength())) {
+			byte[] stub = getOverflowFile().write(record.getData(), 0, record.getLength());
+			return insertStub(stub, record.getData(), record.getLength());
+		}
+		RecordPage recordPage = getOneFreeRecordPage(record.getLength());
 		markDirty(recordPage);
 		int insertedPageNum = recordPage.getPageNum();
 		int insertedSlotNum = recordPage.insert(record.getData());
 		header.numRecords += 1;
-		logger.info("Inserted record[{},{}] <{}>",
-				insertedPageNum, insertedSlotNum, record.toString());
-		unpinPage(recordPage);
-		if (recordPage.isFull()) {
-			logger.info("Record page[{}] now becomes full", recordPage.getPageNum());
-			removeFirstFreePage(recordPage);
+		if (zoneMap != null) {
+			zoneMap.add(insertedPageNum, record.getData(), 0, record.getLength());
+		}
+		if (logger.isTraceEnabled()) {
+			logger.trace("Inserted record[{},{}] <{}>",
+					insertedPageNum, insertedSlotNum, record.toString());
+		}
+		releaseInsertedPage(recordPage);
+		return new RID(insertedPageNum, insertedSlotNum);
+	}
+
+	/**
+	 * Insert a variable-length record read from <tt>in</tt> until its end.
+	 * A long record is copied into overflow pages as it is read, a page at a
+	 * time, so it is never held in memory as a whole. The stream is not
+	 * closed.
+	 *
+	 * @param in the stream of the record
+	 * @return record identifier <tt>RID</tt>
+	 * @throws IllegalArgumentException if the record is longer than
+	 * {@link #getMaxRecordSize()} bytes
+	 * @throws RecordFileException if reading <tt>in</tt> fails
+	 * @throws IllegalStateException if this file stores fixed-length records
+	 */
+	public RID insertRecord(InputStream in) {
+		checkNotNull(in);
+		checkState(header.isVariableLength(), "only variable-length records can be streamed");
+		// The prefix read first decides whether the record is long. The rest
+		// of a long record goes straight into the overflow pages.
+		byte[] prefix = new byte[MAX_INLINE_RECORD_SIZE + 1];
+		try {
+			int n = ByteStreams.read(in, prefix, 0, prefix.length);
+			if (n <= MAX_INLINE_RECORD_SIZE) {
+				return insertRecord(new Record(Arrays.copyOf(prefix, n)));
+			}
+			InputStream record = new SequenceInputStream(new ByteArrayInputStream(prefix, 0, n), in);
+			byte[] stub = getOverflowFile().write(record);
+			int end = Math.min(zoneMapEnd(), OverflowFile.lengthOf(stub, 0));
+			if (end > n) {
+				// Some attributes in the zone map are beyond the prefix, so
+				// they are read back from the overflow pages.
+				prefix = new byte[end];
+				n = ByteStreams.read(overflowFile.openStream(stub, 0), prefix, 0, end);
+			}
+			return insertStub(stub, prefix, n);
+		} catch (IOException e) {
+			throw new RecordFileException(e);
+		}
+	}
+
+	/**
+	 * @return the end of the attributes in the zone map, or 0 if there is
+	 * no zone map
+	 */
+	private int zoneMapEnd() {
+		int end = 0;
+		if (zoneMap != null) {
+			for (int i = 0; i < zoneMap.getNumOfAttrs(); i++) {
+				end = Math.max(end, zoneMap.getAttrOffset(i) + zoneMap.getAttrType(i).getLength());
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * Insert the stub of an overflow record, whose chain of overflow pages
+	 * is written.
+	 *
+	 * @param prefix the array holding the record or a prefix of it, which
+	 *               has all the attributes in the zone map
+	 * @param prefixLength the length of the prefix
+	 */
+	private RID insertStub(byte[] stub, byte[] prefix, int prefixLength) {
+		RecordPage recordPage = getOneFreeRecordPage(stub.length);
+		markDirty(recordPage);
+		int insertedPageNum = recordPage.getPageNum();
+		int insertedSlotNum = recordPage.insert(stub);
+		recordPage.setOverflow(insertedSlotNum, true);
+		header.numRecords += 1;
+		if (zoneMap != null) {
+			zoneMap.add(insertedPageNum, prefix, 0, prefixLength);
 		}
+		logger.trace("Inserted overflow record[{},{}] of {} bytes",
+				insertedPageNum, insertedSlotNum, OverflowFile.lengthOf(stub, 0));
+		releaseInsertedPage(recordPage);
 		return new RID(insertedPageNum, insertedSlotNum);
 	}
 
+	/**
+	 * Insert records in file. Consecutive records are inserted into the same
+	 * page under one pin, until the page is full, so the free space map is
+	 * looked up once per page rather than once per record.
+	 * <p>
+	 * If a record is invalid, the records before it are still inserted.
+	 *
+	 * @param records the record objects
+	 * @return record identifiers of the records, in the same order
+	 */
+	public List<RID> insertRecords(Iterable<Record> records) {
+		checkNotNull(records);
+		BatchInserter inserter = new BatchInserter();
+		try {
+			for (Record record : records) {
+				checkRecordLength(record);
+				inserter.insert(record.getData(), 0, record.getLength());
+			}
+		} finally {
+			inserter.finish();
+		}
+		return inserter.rids;
+	}
+
+	/**
+	 * Insert <tt>count</tt> fixed-length records stored back to back in
+	 * <tt>src</tt>, starting from its position. The position of <tt>src</tt>
+	 * is advanced past the inserted records. See
+	 * {@link #insertRecords(Iterable)}.
+	 *
+	 * @param src the buffer holding records
+	 * @param count the number of records
+	 * @return record identifiers of the records, in the same order
+	 */
+	public List<RID> insertRecords(ByteBuffer src, int count) {
+		checkNotNull(src);
+		checkState(!header.isVariableLength(),
+				"records in a buffer must have fixed length");
+		checkArgument(count >= 0, "negative count: %s", count);
+		int recordSize = header.recordSize;
+		checkArgument((long) count * recordSize <= src.remaining(),
+				"buffer has less than %s records", count);
+		BatchInserter inserter = new BatchInserter();
+		try {
+			if (src.hasArray()) {
+				byte[] array = src.array();
+				int offset = src.arrayOffset() + src.position();
+				for (int i = 0; i < count; i++) {
+					inserter.insert(array, offset + i * recordSize, recordSize);
+				}
+				src.position(src.position() + count * recordSize);
+			} else {
+				byte[] data = new byte[recordSize];
+				for (int i = 0; i < count; i++) {
+					src.get(data);
+					inserter.insert(data, 0, recordSize);
+				}
+			}
+		} finally {
+			inserter.finish();
+		}
+		return inserter.rids;
+	}
+
+	/**
+	 * Inserts records into the first free page, keeping the page pinned
+	 * until no more records fit in it.
+	 */
+	private class BatchInserter {
+
+		final List<RID> rids = new ArrayList<>();
+		private RecordPage recordPage;
+
+		void insert(byte[] src, int offset, int length) {
+			byte[] stub = null;
+			if (isOverflowLength(length)) {
+				stub = getOverflowFile().write(src, offset, length);
+			}
+			int storedLength = stub == null ? length : stub.length;
+			if (recordPage != null && !fits(recordPage, storedLength)) {
+				releaseInsertedPage(recordPage);
+				recordPage = null;
+			}
+			if (recordPage == null) {
+				recordPage = getOneFreeRecordPage(storedLength);
+				markDirty(recordPage);
+			}
+			int slotNum;
+			if (stub == null) {
+				slotNum = recordPage.insert(src, offset, length);
+			} else {
+				slotNum = recordPage.insert(stub);
+				recordPage.setOverflow(slotNum, true);
+			}
+			header.numRecords += 1;
+			if (zoneMap != null) {
+				zoneMap.add(recordPage.getPageNum(), src, offset, length);
+			}
+			rids.add(new RID(recordPage.getPageNum(), slotNum));
+		}
+
+		void finish() {
+			if (recordPage != null) {
+				releaseInsertedPage(recordPage);
+				recordPage = null;
+			}
+			logger.debug("Inserted {} records", rids.size());
+		}
+	}
+
+	/**
+	 * Update the free space map after records are inserted into the page,
+	 * and then unpin the page.
+	 */
+	private void releaseInsertedPage(RecordPage recordPage) {
+		freeSpaceMap.set(recordPage.getPageNum(), recordPage.getFreeSpace());
+		unpinPage(recordPage);
+	}
+
 	/**
 	 * Get the record identified by <tt>rid</tt>.
 	 * 
@@ -192,9 +908,14 @@ public class RecordFile {
 		RecordPage recordPage = getRecordPage(rid.pageNum);
 		try {
 			byte[] data = recordPage.get(rid.slotNum);
+			if (recordPage.isOverflow(rid.slotNum)) {
+				data = readOverflowRecord(data);
+			}
 			Record record = new Record(data);
-			logger.info("Got record[{},{}] = <{}>",
-                    rid.pageNum, rid.slotNum, record.toString());
+			if (logger.isTraceEnabled()) {
+				logger.trace("Got record[{},{}] = <{}>",
+						rid.pageNum, rid.slotNum, record.toString());
+			}
 			unpinPage(recordPage);
 			return record;
 		} catch (RecordNotExistException e) {
@@ -205,86 +926,282 @@ public class RecordFile {
 	}
 
 	/**
-	 * Update the record identified by <tt>rid</tt>. The existing contents of
-	 * the record will be replaced by <tt>record</tt>.
-	 * 
-	 * @param rid record identification
-	 * @param record replacement
-	 * @throws RecordNotExistException if <tt>rid</tt> does not exist
+	 * Get the records identified by <tt>rids</tt>. The RIDs are sorted by
+	 * page number, so that each page is pinned once and the pages are read
+	 * in order, however the RIDs are ordered.
+	 *
+	 * @param rids record identifications
+	 * @return the records, in the same order as <tt>rids</tt>
+	 * @throws RecordNotExistException if any of <tt>rids</tt> does not exist
 	 */
-	public void updateRecord(RID rid, Record record) {
-		checkArgument(record.getLength() == header.recordSize);
-		RecordPage recordPage = getRecordPage(rid.pageNum);
+	public List<Record> getRecords(Collection<RID> rids) {
+		checkNotNull(rids);
+		RID[] ridArray = rids.toArray(new RID[0]);
+		int n = ridArray.length;
+		// Sort the indexes of RIDs by page number, without boxing: the page
+		// number is in the high 32 bits and the index in the low 32 bits.
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = ((long) ridArray[i].pageNum << 32) | i;
+		}
+		Arrays.sort(keys);
+
+		Record[] records = new Record[n];
+		RecordPage recordPage = null;
 		try {
-			recordPage.update(rid.slotNum, record.getData());
-			logger.info("Updated record[{},{}] to <{}>",
-                    rid.pageNum, rid.slotNum, record.toString());
-			unpinPage(recordPage);
+			for (long key : keys) {
+				int i = (int) key;
+				RID rid = ridArray[i];
+				if (recordPage == null || recordPage.getPageNum() != rid.pageNum) {
+					if (recordPage != null) {
+						unpinPage(recordPage);
+						recordPage = null;
+					}
+					recordPage = getRecordPage(rid.pageNum);
+				}
+				byte[] data = recordPage.get(rid.slotNum);
+				if (recordPage.isOverflow(rid.slotNum)) {
+					data = readOverflowRecord(data);
+				}
+				records[i] = new Record(data);
+			}
 		} catch (RecordNotExistException e) {
 			logger.error(e.getMessage());
-			unpinPage(recordPage);
 			throw e;
+		} finally {
+			if (recordPage != null) {
+				unpinPage(recordPage);
+			}
 		}
+		logger.debug("Got {} records", n);
+		return Arrays.asList(records);
 	}
 
 	/**
-	 * Delete the record identified by <tt>rid</tt>.
-	 * @param rid record identification
-	 * @throws RecordNotExistException if <tt>rid</tt> does not exist
+	 * Read the overflow record of <tt>stub</tt> from its overflow pages.
 	 */
-	public void deleteRecord(RID rid) {
-		logger.debug("Deleting record[{},{}]", rid.pageNum, rid.slotNum);
-		RecordPage recordPage = getRecordPage(rid.pageNum);
-		boolean awayFromFull = recordPage.isFull();
-		try {
-			markDirty(recordPage);
-			recordPage.delete(rid.slotNum);
-			header.numRecords -= 1;
-			logger.info("Deleted record[{},{}]", rid.pageNum, rid.slotNum);
-			unpinPage(recordPage);
-			if (recordPage.isEmpty()) {
-				logger.info("Record page[{}] now becomes empty", recordPage.getPageNum());
-				insertFreePage(recordPage);
-			} else if (awayFromFull) {
-			    /*
-			    When the first record from a full page is deleted, mark this
-			    page as free and insert it into the linked list. No page will be
-			    inserted twice in the linked list, because we insert record into
-			    the first page of the linked list first, and remove it from the
-			    linked list once it becomes full.
-			     */
-			    logger.info("Record page[{}] is now half empty", recordPage.getPageNum());
-			    insertFreePage(recordPage);
-            }
-		} catch (RecordNotExistException e) {
+	private byte[] readOverflowRecord(byte[] stub) {
+		byte[] data = new byte[OverflowFile.lengthOf(stub, 0)];
+		overflowFile.read(stub, 0, data, 0);
+		return data;
+	}
+
+	/**
+	 * Point <tt>view</tt> to the record in an occupied slot of
+	 * <tt>recordPage</tt>, as {@link RecordPage#viewRecord(int, RecordView)}.
+	 * An overflow record is read from its overflow pages into the buffer of
+	 * the view.
+	 */
+	private void viewRecord(RecordPage recordPage, int slotNum, RecordView view) {
+		recordPage.viewRecord(slotNum, view);
+		if (recordPage.isOverflow(slotNum)) {
+			int length = OverflowFile.lengthOf(view.array(), view.arrayOffset());
+			byte[] buffer = view.buffer(length);
+			overflowFile.read(view.array(), view.arrayOffset(), buffer, 0);
+			view.set(recordPage.getPageNum(), slotNum, buffer, 0, length);
+		}
+	}
+
+	/**
+	 * Point <tt>view</tt> to the projected record in an occupied slot of
+	 * <tt>recordPage</tt>, as
+	 * {@link RecordPage#viewProjection(int, Projection, byte[], RecordView)},
+	 * reading an overflow record from its overflow pages first.
+	 */
+	private void viewProjection(RecordPage recordPage, int slotNum, Projection projection,
+								byte[] buffer, RecordView view) {
+		if (!recordPage.isOverflow(slotNum)) {
+			recordPage.viewProjection(slotNum, projection, buffer, view);
+			return;
+		}
+		viewRecord(recordPage, slotNum, view);
+		projection.project(view.array(), view.arrayOffset(), view.getLength(), buffer, 0);
+		view.set(recordPage.getPageNum(), slotNum, buffer, 0, projection.getLength());
+	}
+
+	/**
+	 * Open a stream of the record identified by <tt>rid</tt>. An overflow
+	 * record is read from its overflow pages one page at a time as the
+	 * stream is read, so a long record is never held in memory as a whole.
+	 * The record must not be updated or deleted until the stream is closed.
+	 *
+	 * @param rid record identification
+	 * @return the stream of the record
+	 * @throws RecordNotExistException if <tt>rid</tt> does not exist
+	 */
+	public InputStream openRecordStream(RID rid) {
+		RecordPage recordPage = getRecordPage(rid.pageNum);
+		try {
+			byte[] data = recordPage.get(rid.slotNum);
+			if (recordPage.isOverflow(rid.slotNum)) {
+				return overflowFile.openStream(data, 0);
+			}
+			return new ByteArrayInputStream(data);
+		} catch (RecordNotExistException e) {
 			logger.error(e.getMessage());
-			unpinPage(recordPage);
 			throw e;
+		} finally {
+			unpinPage(recordPage);
 		}
 	}
 
-	private void insertFreePage(RecordPage recordPage) {
-	    // Insert the number of this page as the header node of linked list.
-        if (header.firstFreePage == RecordFileHeader.NO_FREE_PAGE) {
-            header.firstFreePage = recordPage.getPageNum();
-        } else {
-            recordPage.setNextFreePage(header.firstFreePage);
-            header.firstFreePage = recordPage.getPageNum();
-        }
-    }
+	/**
+	 * Update the record identified by <tt>rid</tt>. The existing contents of
+	 * the record will be replaced by <tt>record</tt>. A variable-length
+	 * record which is long, or no longer fits in its page, is moved to
+	 * overflow pages, keeping its RID.
+	 * 
+	 * @param rid record identification
+	 * @param record replacement
+	 * @throws RecordNotExistException if <tt>rid</tt> does not exist
+	 * @throws RecordFileException if a variable-length record grows larger
+	 * than the free space of its page, even as an overflow stub
+	 * @throws IllegalStateException if the file is in the append-only mode
+	 */
+	public void updateRecord(RID rid, Record record) {
+		checkState(!header.appendOnly, "cannot update records of an append-only file");
+		checkRecordLength(record);
+		RecordPage recordPage = getRecordPage(rid.pageNum);
+		try {
+			markDirty(recordPage);
+			byte[] oldData = recordPage.get(rid.slotNum);
+			boolean wasOverflow = recordPage.isOverflow(rid.slotNum);
+			byte[] stub = null;
+			if (isOverflowLength(record.getLength()) || (header.isVariableLength()
+					&& record.getLength() > recordPage.getFreeSpace() + oldData.length)) {
+				stub = getOverflowFile().write(record.getData(), 0, record.getLength());
+			}
+			try {
+				recordPage.update(rid.slotNum, stub == null ? record.getData() : stub);
+			} catch (RecordFileException e) {
+				if (stub != null) {
+					overflowFile.free(stub, 0);
+				}
+				throw e;
+			}
+			if (stub != null) {
+				recordPage.setOverflow(rid.slotNum, true);
+			}
+			if (wasOverflow) {
+				overflowFile.free(oldData, 0);
+			}
+			freeSpaceMap.set(rid.pageNum, recordPage.getFreeSpace());
+			if (zoneMap != null) {
+				zoneMap.update(rid.pageNum, record.getData(), 0, record.getLength());
+			}
+			if (logger.isTraceEnabled()) {
+				logger.trace("Updated record[{},{}] to <{}>",
+						rid.pageNum, rid.slotNum, record.toString());
+			}
+			unpinPage(recordPage);
+		} catch (RecordNotExistException | RecordFileException e) {
+			logger.error(e.getMessage());
+			unpinPage(recordPage);
+			throw e;
+		}
+	}
 
-    private boolean hasFreePages() {
-	    return header.firstFreePage != RecordFileHeader.NO_FREE_PAGE;
-    }
+	/**
+	 * Delete the record identified by <tt>rid</tt>.
+	 * @param rid record identification
+	 * @throws RecordNotExistException if <tt>rid</tt> does not exist
+	 */
+	public void deleteRecord(RID rid) {
+		RecordPage recordPage = getRecordPage(rid.pageNum);
+		try {
+			recordPage.checkRecordExistence(rid.slotNum);
+			if (recordPage.isOverflow(rid.slotNum)) {
+				overflowFile.free(recordPage.get(rid.slotNum), 0);
+			}
+			if (header.appendOnly) {
+				// The record is left in its slot, and the page is not
+				// written, so its slot is never reused.
+				if (tombstoneFile == null) {
+					tombstoneFile = TombstoneFile.create(path);
+				}
+				recordPage.setTombstones(tombstoneFile.add(rid.pageNum, rid.slotNum));
+			} else {
+				markDirty(recordPage);
+				recordPage.delete(rid.slotNum);
+				freeSpaceMap.set(rid.pageNum, recordPage.getFreeSpace());
+				if (rid.pageNum != pagedFile.getNumOfPages() - 1) {
+					targetPageNum = rid.pageNum;
+				}
+			}
+			header.numRecords -= 1;
+			if (zoneMap != null) {
+				zoneMap.remove(rid.pageNum);
+			}
+			logger.trace("Deleted record[{},{}]", rid.pageNum, rid.slotNum);
+			if (recordPage.isEmpty()) {
+				logger.debug("Record page[{}] now becomes empty", recordPage.getPageNum());
+			}
+			unpinPage(recordPage);
+		} catch (RecordNotExistException e) {
+			logger.error(e.getMessage());
+			unpinPage(recordPage);
+			throw e;
+		}
+	}
 
-    private RecordPage getFirstFreePage() {
-	    return getRecordPage(header.firstFreePage);
-    }
+	/**
+	 * Start an online compaction of this file, which moves the records out
+	 * of sparse data pages and disposes the emptied pages, so that scans
+	 * read fewer pages.
+	 * <p>
+	 * The compaction visits the data pages from the last one backwards. A
+	 * page is sparse if at most <tt>sparseFillFactor</tt> percent of its
+	 * space is used. The records of a sparse page are moved into the first
+	 * pages before it with enough free space, as insertions do, and the page
+	 * is then disposed. At the end of each step, the disposed pages at the
+	 * end of the file are removed, so that the file shrinks; other disposed
+	 * pages are reused by later insertions. The compaction finishes when it
+	 * reaches the first data page, or when the records of a sparse page do
+	 * not all fit in the pages before it.
+	 * <p>
+	 * A moved record gets a new RID. Each move is reported to
+	 * <tt>remapping</tt> with the old RID and the new RID, so that indexes on
+	 * this file can be maintained.
+	 * <p>
+	 * The compaction runs in steps (see {@link Compaction#step(int)}). Other
+	 * operations may run between steps, but no cursor, scan or stream of
+	 * this file should be open during a step, as the pages it visits may be
+	 * disposed.
+	 *
+	 * @param sparseFillFactor the percentage of used space, from 0 to 100,
+	 *                         under which a page is vacated; with 0 only the
+	 *                         empty pages are disposed
+	 * @param remapping the consumer of old and new RIDs of moved records
+	 * @return the compaction, which has not run any steps
+	 * @throws IllegalStateException if the file is in the append-only mode
+	 */
+	public Compaction startCompaction(int sparseFillFactor, BiConsumer<RID, RID> remapping) {
+		checkArgument(0 <= sparseFillFactor && sparseFillFactor <= 100,
+				"sparse fill factor not in [0, 100]: %s", sparseFillFactor);
+		checkNotNull(remapping);
+		checkState(!header.appendOnly, "cannot compact an append-only file");
+		return new RecordFileCompaction(sparseFillFactor, remapping);
+	}
 
-    private void removeFirstFreePage(RecordPage recordPage) {
-	    checkArgument(header.firstFreePage == recordPage.getPageNum());
-        header.firstFreePage = recordPage.getNextFreePage();
-    }
+	/**
+	 * Dispose a data page which has no records, and forget it in the free
+	 * space map and the zone map. The page must be unpinned.
+	 */
+	private void disposeRecordPage(int pageNum) {
+		pagedFile.disposePage(pageNum);
+		header.numPages--;
+		freeSpaceMap.set(pageNum, 0);
+		if (targetPageNum == pageNum) {
+			targetPageNum = -1;
+		}
+		if (tailPageNum == pageNum) {
+			tailPageNum = -1;
+		}
+		if (zoneMap != null) {
+			zoneMap.reset(pageNum);
+		}
+		logger.debug("Disposed record page[{}]", pageNum);
+	}
 
 	/**
 	 * Scan over all the records in this file.
@@ -307,72 +1224,1089 @@ while (true) {
 	 * @return an <tt>Scan</tt> to iterate through records
 	 */
 	public Scan<Record> scan() {
-		return new RecordScan();
+		return new RecordScan(cursor(), null);
 	}
 
 	public Scan<Record> scan(Predicate<Record> predicate) {
-	    return new RecordScan(predicate);
+	    return new RecordScan(cursor(), predicate);
     }
 
-	private class RecordScan implements Scan<Record> {
+	/**
+	 * Scan over the records satisfying <tt>condition</tt>. The condition is
+	 * tested on the bytes of records in the pages, so only the records
+	 * satisfying it are copied.
+	 *
+	 * @param condition the condition on records
+	 * @return an <tt>Scan</tt> to iterate through records
+	 * @see Condition
+	 */
+	public Scan<Record> scan(Condition condition) {
+		checkNotNull(condition);
+		return new RecordScan(cursor(condition), null);
+	}
 
-	    private final Predicate<byte[]> predicate;
-	    private final Iterator<Integer> pageIterator;
-	    private RecordPage recordPage;
-	    private Scan<byte[]> pageScan;
-	    private boolean closed;
+	/**
+	 * Scan over the projected records in this file. Only the bytes in
+	 * <tt>projection</tt> are copied out of the pages, into compact records
+	 * of {@link Projection#getLength()} bytes.
+	 *
+	 * @param projection the byte ranges of records to read
+	 * @return a <tt>ProjectedScan</tt> to iterate through projected records
+	 * @see #scan(Projection, Condition)
+	 */
+	public ProjectedScan scan(Projection projection) {
+		return projectedScan(projection, null);
+	}
 
-	    RecordScan() {
-	        this(null);
-        }
+	/**
+	 * Scan over the projected records of the records satisfying
+	 * <tt>condition</tt>. Unlike {@link #cursor(Projection, Predicate)}, the
+	 * condition is on whole records, and its attribute need not be in the
+	 * projection. The zone map applies to the condition as in
+	 * {@link #scan(Condition)}.
+	 * <p>
+	 * The bytes of a variable-length record shorter than the projection are
+	 * zero in the projected record.
+	 *
+	 * @param projection the byte ranges of records to read
+	 * @param condition the condition on records
+	 * @return a <tt>ProjectedScan</tt> to iterate through projected records
+	 */
+	public ProjectedScan scan(Projection projection, Condition condition) {
+		checkNotNull(condition);
+		return projectedScan(projection, condition);
+	}
 
-		RecordScan(Predicate<Record> p) {
-	        this.predicate = data -> p == null || p.test(new Record(data));
-            logger.debug("dataPageOffset = {}", header.dataPageOffset);
-            logger.debug("numPages = {}", header.numPages);
-            Set<Integer> targetPages = new TreeSet<>();
-            for (int i = header.dataPageOffset; i < header.numPages; i++) {
-                targetPages.add(i);
-            }
-            pageIterator = targetPages.iterator();
+	private ProjectedScan projectedScan(Projection projection, Condition condition) {
+		checkNotNull(projection);
+		checkArgument(projection.getEnd() <= getMaxRecordSize(),
+				"%s out of record of %s bytes", projection, getMaxRecordSize());
+		RecordCursor cursor = projectedCursor(projection, condition,
+				header.dataPageOffset, Integer.MAX_VALUE);
+		return new RecordProjectedScan(cursor, projection, isColumnar());
+	}
+
+	/**
+	 * Open a cursor over the records satisfying <tt>condition</tt>, which is
+	 * on whole records, for reading the bytes in <tt>projection</tt>. In a
+	 * columnar file, only the minipages of the projection and of the
+	 * attribute of the condition are read, and each view starts with the
+	 * projected record. In the other layouts, the views are on the whole
+	 * records in the pages, which are not copied.
+	 *
+	 * @param condition the condition on records, or null
+	 */
+	private RecordCursor projectedCursor(Projection projection, Condition condition,
+										 int fromPageNum, int toPageNum) {
+		if (!isColumnar()) {
+			return new RecordFileCursor(condition, null, fromPageNum, toPageNum);
+		}
+		if (condition == null) {
+			return new RecordFileCursor(null, projection, fromPageNum, toPageNum);
+		}
+		int attrLength = condition.getAttrType().getLength();
+		Projection readProjection = projection;
+		int attrPos = projection.positionOf(condition.getAttrOffset(), attrLength);
+		if (attrPos < 0) {
+			readProjection = projection.and(condition.getAttrOffset(), attrLength);
+			attrPos = projection.getLength();
+		}
+		// The condition is tested on the projected records, while the zone
+		// map applies to the condition on whole records.
+		Condition projectedCondition = Condition.of(attrPos, condition.getAttrType(),
+				condition.getOp(), condition.getValue());
+		return new RecordFileCursor(projectedCondition, readProjection,
+				fromPageNum, toPageNum, condition);
+	}
+
+	/**
+	 * @return the number of records in this file, without reading any data
+	 * pages
+	 */
+	public int getNumOfRecords() {
+		return header.numRecords;
+	}
+
+	/**
+	 * Count the records in the pages of <tt>range</tt>. Only the header of
+	 * each page is read.
+	 *
+	 * @param range the range of data pages, usually from {@link #splitPages(int)}
+	 * @return the number of records in the pages
+	 */
+	public int count(PageRange range) {
+		checkNotNull(range);
+		checkArgument(range.fromPageNum >= header.dataPageOffset,
+				"page range %s includes the header page", range);
+		int count = 0;
+		int pageNum = range.fromPageNum;
+		RecordPage recordPage;
+		while ((recordPage = pinNextScanPage(pageNum, range.toPageNum, null)) != null) {
+			count += recordPage.getNumRecords() - recordPage.getNumTombstones();
+			pageNum = recordPage.getPageNum() + 1;
+			unpinScanPage(recordPage);
+		}
+		return count;
+	}
+
+	/**
+	 * Count the records satisfying <tt>condition</tt>, as
+	 * {@link #aggregate(int, AttrType, Condition)} on its attribute.
+	 *
+	 * @param condition the condition on records
+	 * @return the number of records satisfying the condition
+	 */
+	public int count(Condition condition) {
+		checkNotNull(condition);
+		return aggregate(condition.getAttrOffset(), condition.getAttrType(), condition).getCount();
+	}
+
+	/**
+	 * @see #aggregate(PageRange, int, AttrType, Condition)
+	 */
+	public Aggregate aggregate(int attrOffset, AttrType attrType) {
+		return aggregate(attrOffset, attrType, null);
+	}
+
+	/**
+	 * @see #aggregate(PageRange, int, AttrType, Condition)
+	 */
+	public Aggregate aggregate(int attrOffset, AttrType attrType, Condition condition) {
+		return aggregate(new PageRange(header.dataPageOffset, Integer.MAX_VALUE),
+				attrOffset, attrType, condition);
+	}
+
+	/**
+	 * Compute COUNT, SUM, MIN and MAX of an attribute over the records
+	 * satisfying <tt>condition</tt> in the pages of <tt>range</tt>. The
+	 * values are read from the bytes in the pages as they are scanned, and
+	 * no records are copied; in a columnar file, only the minipages of the
+	 * attribute and of the attribute of the condition are read. The zone
+	 * map applies to the condition as in {@link #scan(Condition)}.
+	 * <p>
+	 * The aggregates of the page ranges from {@link #splitPages(int)} can be
+	 * computed in parallel as with {@link #cursor(PageRange, Predicate)},
+	 * and combined by {@link Aggregate#merge(Aggregate)}. Variable-length
+	 * records too short to hold the attribute are not aggregated.
+	 *
+	 * @param range the range of data pages
+	 * @param attrOffset the offset of the attribute in records
+	 * @param attrType the type of the attribute
+	 * @param condition the condition on records, or null for all records
+	 * @return the aggregates of the attribute
+	 */
+	public Aggregate aggregate(PageRange range, int attrOffset, AttrType attrType, Condition condition) {
+		checkNotNull(range);
+		checkArgument(range.fromPageNum >= header.dataPageOffset,
+				"page range %s includes the header page", range);
+		checkArgument(attrOffset >= 0, "negative attribute offset: %s", attrOffset);
+		checkNotNull(attrType);
+		checkArgument(attrOffset + attrType.getLength() <= getMaxRecordSize(),
+				"attribute out of record of %s bytes", getMaxRecordSize());
+		Aggregate aggregate = new Aggregate(attrOffset, attrType);
+		int attrLength = attrType.getLength();
+		RecordCursor cursor = projectedCursor(Projection.of(attrOffset, attrLength), condition,
+				range.fromPageNum, range.toPageNum);
+		// The position of the attribute in the views.
+		int attrPos = isColumnar() ? 0 : attrOffset;
+		try {
+			while (cursor.advance()) {
+				RecordView view = cursor.getView();
+				if (view.getLength() >= attrPos + attrLength) {
+					aggregate.add(view.array(), view.arrayOffset() + attrPos);
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+		return aggregate;
+	}
+
+	/**
+	 * Open a cursor over all the records in this file. Records are exposed
+	 * as views on the pages, without being copied.
+	 *
+	 * @return a <tt>RecordCursor</tt> to iterate through records
+	 * @see RecordCursor
+	 */
+	public RecordCursor cursor() {
+		return new RecordFileCursor(null, null, header.dataPageOffset, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Open a cursor over the records satisfying <tt>predicate</tt>. The
+	 * predicate is tested on the view of each record, so records not
+	 * satisfying it are never copied.
+	 *
+	 * @param predicate the condition on records
+	 * @return a <tt>RecordCursor</tt> to iterate through records
+	 */
+	public RecordCursor cursor(Predicate<RecordView> predicate) {
+		return new RecordFileCursor(predicate, null, header.dataPageOffset, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Open a cursor over the projected records in this file.
+	 *
+	 * @param projection the byte ranges of records to read
+	 * @return a <tt>RecordCursor</tt> to iterate through projected records
+	 * @see #cursor(Projection, Predicate)
+	 */
+	public RecordCursor cursor(Projection projection) {
+		return cursor(projection, null);
+	}
+
+	/**
+	 * Open a cursor over the projected records satisfying
+	 * <tt>predicate</tt>. The view of a record holds only the bytes in
+	 * <tt>projection</tt>, copied to a buffer of the cursor; the predicate is
+	 * tested on this view, so its offsets are in the projected record. In a
+	 * columnar file, only the projected bytes are read from the pages.
+	 * <p>
+	 * The bytes of a variable-length record shorter than the projection are
+	 * zero in the view.
+	 *
+	 * @param projection the byte ranges of records to read
+	 * @param predicate the condition on projected records
+	 * @return a <tt>RecordCursor</tt> to iterate through projected records
+	 */
+	public RecordCursor cursor(Projection projection, Predicate<RecordView> predicate) {
+		checkNotNull(projection);
+		checkArgument(projection.getEnd() <= getMaxRecordSize(),
+				"%s out of record of %s bytes", projection, getMaxRecordSize());
+		return new RecordFileCursor(predicate, projection, header.dataPageOffset, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Open a cursor over the records satisfying <tt>predicate</tt>, starting
+	 * from the first record whose RID is not less than <tt>from</tt>. The
+	 * records before it are not read, so a scan stopped at
+	 * {@link RecordCursor#getResumePosition()} can be resumed at the cost of
+	 * the records after it.
+	 *
+	 * @param from the RID to start from, which need not be of a record
+	 * @param predicate the condition on records
+	 * @return a <tt>RecordCursor</tt> to iterate through records
+	 */
+	public RecordCursor cursor(RID from, Predicate<RecordView> predicate) {
+		checkNotNull(from);
+		int fromPageNum = Math.max(from.pageNum, header.dataPageOffset);
+		int fromSlotNum = fromPageNum == from.pageNum ? Math.max(from.slotNum, 0) : 0;
+		return new RecordFileCursor(predicate, null, fromPageNum, Integer.MAX_VALUE)
+				.startAt(fromSlotNum);
+	}
+
+	/**
+	 * Scan over at most <tt>limit</tt> records satisfying <tt>condition</tt>,
+	 * starting from the first record whose RID is not less than
+	 * <tt>from</tt> and skipping the first <tt>offset</tt> of them. The
+	 * skipped records are tested on the pages but not copied. Paging
+	 * through the records by the positions from
+	 * {@link ResumableScan#getResumePosition()} reads each record once,
+	 * while an offset still reads the records it skips.
+	 *
+	 * @param from the RID to start from, or null to start from the first
+	 * record
+	 * @param offset the number of records to skip
+	 * @param limit the maximum number of records to return
+	 * @param condition the condition on records, or null for all records
+	 * @return a <tt>ResumableScan</tt> to iterate through records
+	 */
+	public ResumableScan scan(RID from, int offset, int limit, Condition condition) {
+		checkArgument(offset >= 0, "negative offset: %s", offset);
+		checkArgument(limit >= 0, "negative limit: %s", limit);
+		if (from == null) {
+			from = new RID(header.dataPageOffset, 0);
+		}
+		return new RecordResumableScan(cursor(from, condition), from, offset, limit);
+	}
+
+	/**
+	 * Open a cursor over the records in the pages of <tt>range</tt>.
+	 *
+	 * @param range the range of data pages, usually from {@link #splitPages(int)}
+	 * @return a <tt>RecordCursor</tt> to iterate through records
+	 * @see #cursor(PageRange, Predicate)
+	 */
+	public RecordCursor cursor(PageRange range) {
+		return cursor(range, null);
+	}
+
+	/**
+	 * Open a cursor over the records satisfying <tt>predicate</tt> in the
+	 * pages of <tt>range</tt>.
+	 * <p>
+	 * Cursors over disjoint page ranges can be used in different threads at
+	 * the same time, each pinning its own pages. Each such cursor pins at
+	 * most one page at a time, so the number of cursors open at the same time
+	 * should be well below the number of frames in the buffer pool. The file
+	 * must not be modified while they are open.
+	 *
+	 * @param range the range of data pages, usually from {@link #splitPages(int)}
+	 * @param predicate the condition on records
+	 * @return a <tt>RecordCursor</tt> to iterate through records
+	 */
+	public RecordCursor cursor(PageRange range, Predicate<RecordView> predicate) {
+		checkNotNull(range);
+		checkArgument(range.fromPageNum >= header.dataPageOffset,
+				"page range %s includes the header page", range);
+		return new RecordFileCursor(predicate, null, range.fromPageNum, range.toPageNum);
+	}
+
+	/**
+	 * Start a batch scan over the records satisfying all the
+	 * <tt>conditions</tt>, which fills <tt>batch</tt> with up to its capacity
+	 * of records at a time. The columns of the batch are decoded straight
+	 * from the bytes in the pages, and in a columnar file only their
+	 * minipages are read. The conditions are then evaluated a column at a
+	 * time over the batch, leaving the satisfying rows in its selection
+	 * vector, so each condition must be on an attribute which is a column of
+	 * the batch.
+	 * <p>
+	 * No page is left pinned between calls of {@link BatchScan#next()}, but
+	 * the file must not be modified until the scan is closed. A batch can
+	 * be used by only one open scan at a time.
+	 *
+	 * @param batch the batch to fill, with its columns added
+	 * @param conditions the conditions on records, all of which the selected
+	 * rows satisfy
+	 * @return a <tt>BatchScan</tt> to iterate through batches of records
+	 * @throws IllegalArgumentException if a column is out of records, or a
+	 * condition is not on a column of the batch
+	 * @see ColumnBatch
+	 */
+	public BatchScan batchScan(ColumnBatch batch, Condition... conditions) {
+		checkNotNull(batch);
+		checkNotNull(conditions);
+		checkArgument(batch.getEnd() <= getMaxRecordSize(),
+				"columns out of record of %s bytes", getMaxRecordSize());
+		int[] conditionColumns = new int[conditions.length];
+		for (int i = 0; i < conditions.length; i++) {
+			Condition condition = conditions[i];
+			checkNotNull(condition);
+			conditionColumns[i] = batch.indexOf(condition.getAttrOffset(), condition.getAttrType());
+			checkArgument(conditionColumns[i] >= 0, "%s is not on a column of the batch", condition);
+		}
+		batch.setInUse(true);
+		return new RecordFileBatchScan(batch, conditions.clone(), conditionColumns);
+	}
+
+	/**
+	 * @see #sample(double, long)
+	 */
+	public SampleCursor sample(double fraction) {
+		return sample(fraction, new Random().nextLong());
+	}
+
+	/**
+	 * Open a cursor over the records in a block-level Bernoulli sample of the
+	 * data pages, where each page is in the sample with probability
+	 * <tt>fraction</tt>, independently. The same seed gives the same sample
+	 * of the same file. Only the sampled pages are read.
+	 *
+	 * @param fraction the probability of each page being sampled
+	 * @param seed the seed of the random sample
+	 * @return a <tt>SampleCursor</tt> to iterate through the sampled records
+	 */
+	public SampleCursor sample(double fraction, long seed) {
+		checkArgument(0 <= fraction && fraction <= 1, "invalid sampling fraction: %s", fraction);
+		int fromPageNum = header.dataPageOffset;
+		int numDataPages = Math.max(pagedFile.getNumOfPages() - fromPageNum, 0);
+		Random random = new Random(seed);
+		BitSet sampledPages = new BitSet(numDataPages);
+		for (int i = 0; i < numDataPages; i++) {
+			if (random.nextDouble() < fraction) {
+				sampledPages.set(i);
+			}
+		}
+		return new RecordSampleCursor(sampledPages, numDataPages);
+	}
+
+	/**
+	 * Open a cursor over the records in a simple random sample of
+	 * <tt>numPages</tt> data pages, or all the data pages if there are not
+	 * so many. The pages are chosen by selection sampling in a single pass,
+	 * and the same seed gives the same sample of the same file. Only the
+	 * sampled pages are read.
+	 *
+	 * @param numPages the number of pages to sample
+	 * @param seed the seed of the random sample
+	 * @return a <tt>SampleCursor</tt> to iterate through the sampled records
+	 */
+	public SampleCursor samplePages(int numPages, long seed) {
+		checkArgument(numPages >= 0, "negative number of pages: %s", numPages);
+		int fromPageNum = header.dataPageOffset;
+		int numDataPages = Math.max(pagedFile.getNumOfPages() - fromPageNum, 0);
+		Random random = new Random(seed);
+		BitSet sampledPages = new BitSet(numDataPages);
+		int needed = Math.min(numPages, numDataPages);
+		for (int i = 0; i < numDataPages && needed > 0; i++) {
+			// Choose each page with probability needed / remaining pages.
+			if (random.nextInt(numDataPages - i) < needed) {
+				sampledPages.set(i);
+				needed--;
+			}
+		}
+		return new RecordSampleCursor(sampledPages, numDataPages);
+	}
+
+	/**
+	 * Split the data pages of this file into at most <tt>numSplits</tt>
+	 * disjoint ranges of about the same number of pages, to be scanned in
+	 * parallel by {@link #cursor(PageRange, Predicate)}. There are fewer
+	 * ranges if the file has fewer data pages than <tt>numSplits</tt>, and
+	 * no ranges if it has no data pages.
+	 *
+	 * @param numSplits the maximum number of ranges
+	 * @return the page ranges, in page number order
+	 */
+	public List<PageRange> splitPages(int numSplits) {
+		checkArgument(numSplits > 0, "non-positive number of splits: %s", numSplits);
+		int fromPageNum = header.dataPageOffset;
+		int numDataPages = Math.max(pagedFile.getNumOfPages() - fromPageNum, 0);
+		int n = Math.min(numSplits, numDataPages);
+		List<PageRange> ranges = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			int from = fromPageNum + (int) ((long) numDataPages * i / n);
+			int to = fromPageNum + (int) ((long) numDataPages * (i + 1) / n);
+			ranges.add(new PageRange(from, to));
+		}
+		return ranges;
+	}
+
+	/**
+	 * @return a <tt>Spliterator</tt> over all the records in this file,
+	 * which splits by page ranges
+	 * @see #parallelStream()
+	 */
+	public Spliterator<Record> spliterator() {
+		return new RecordSpliterator(null);
+	}
+
+	/**
+	 * @return a sequential <tt>Stream</tt> of all the records in this file
+	 */
+	public Stream<Record> stream() {
+		return StreamSupport.stream(new RecordSpliterator(null), false);
+	}
+
+	/**
+	 * @param predicate the condition on records, tested on their views
+	 * @return a sequential <tt>Stream</tt> of the records satisfying
+	 * <tt>predicate</tt>
+	 */
+	public Stream<Record> stream(Predicate<RecordView> predicate) {
+		return StreamSupport.stream(new RecordSpliterator(predicate), false);
+	}
+
+	/**
+	 * Get a parallel stream of all the records in this file. The data pages
+	 * are split into ranges, which are scanned by the threads of the
+	 * fork/join pool, each pinning its own pages. The records are copied
+	 * page by page, so no page is left pinned even if the stream is not
+	 * consumed to the end.
+	 * <p>
+	 * The file must not be modified or used in other ways until the terminal
+	 * operation of the stream returns.
+	 *
+	 * @return a parallel <tt>Stream</tt> of all the records in this file
+	 */
+	public Stream<Record> parallelStream() {
+		return StreamSupport.stream(new RecordSpliterator(null), true);
+	}
+
+	/**
+	 * @param predicate the condition on records, tested on their views
+	 * @return a parallel <tt>Stream</tt> of the records satisfying
+	 * <tt>predicate</tt>
+	 * @see #parallelStream()
+	 */
+	public Stream<Record> parallelStream(Predicate<RecordView> predicate) {
+		return StreamSupport.stream(new RecordSpliterator(predicate), true);
+	}
+
+	/**
+	 * Pin the first data page in <tt>[fromPageNum, toPageNum)</tt> which may
+	 * have records, skipping the disposed pages and the pages which are empty
+	 * in the free space map. If <tt>predicate</tt> is a {@link Condition} on an attribute in
+	 * the zone map, the pages where no records can satisfy it are skipped as
+	 * well.
+	 *
+	 * @return the pinned page, or null if there are no such pages
+	 */
+	private RecordPage pinNextScanPage(int fromPageNum, int toPageNum, Predicate<RecordView> predicate) {
+		synchronized (scanLock) {
+			Condition condition = null;
+			int attrIndex = -1;
+			if (zoneMap != null && predicate instanceof Condition) {
+				condition = (Condition) predicate;
+				attrIndex = zoneMap.indexOf(condition);
+			}
+			int pageSpace = getPageSpace();
+			int pageNum = fromPageNum;
+			while (pageNum < toPageNum) {
+				pageNum = pagedFile.nextPageNum(pageNum);
+				if (pageNum < 0 || pageNum >= toPageNum) {
+					return null;
+				}
+				if (freeSpaceMap.get(pageNum) == pageSpace) {
+					pageNum++;
+					continue;
+				}
+				if (attrIndex >= 0 && !zoneMap.mayMatch(pageNum, condition, attrIndex)) {
+					if (logger.isTraceEnabled()) {
+						logger.trace("Skipped page[{}] for {}", pageNum, condition);
+					}
+					pageNum++;
+					continue;
+				}
+				RecordPage recordPage = getRecordPage(pageNum);
+				// A page of deleted records in the append-only mode keeps
+				// its free space.
+				if (!recordPage.isEmpty()) {
+					return recordPage;
+				}
+				unpinPage(recordPage);
+				pageNum++;
+			}
+			return null;
+		}
+	}
+
+	private void unpinScanPage(RecordPage recordPage) {
+		synchronized (scanLock) {
+			unpinPage(recordPage);
+		}
+	}
+
+	private class RecordFileCursor implements RecordCursor {
+
+		private final Predicate<RecordView> predicate;
+		private final Predicate<RecordView> pagePredicate;
+		// The projection of records, or null to view whole records.
+		private final Projection projection;
+		private final byte[] projectionBuffer;
+		private final RecordView view = new RecordView();
+		private int nextPageNum;
+		private final int toPageNum;
+		// The page under scanning, which is pinned.
+		private RecordPage recordPage;
+		private int nextSlotNum;
+		// The slot to start from in the first page, if it is not disposed.
+		private final int fromPageNum;
+		private int fromSlotNum;
+		private boolean onRecord;
+		private boolean closed;
+
+		RecordFileCursor(Predicate<RecordView> predicate, Projection projection,
+						 int fromPageNum, int toPageNum) {
+			// The zone map does not apply to a predicate on projected records.
+			this(predicate, projection, fromPageNum, toPageNum, projection == null ? predicate : null);
+		}
+
+		/**
+		 * @param pagePredicate the predicate on whole records for skipping
+		 * pages by the zone map, which must hold whenever <tt>predicate</tt>
+		 * holds
+		 */
+		RecordFileCursor(Predicate<RecordView> predicate, Projection projection,
+						 int fromPageNum, int toPageNum, Predicate<RecordView> pagePredicate) {
+			this.predicate = predicate;
+			this.pagePredicate = pagePredicate;
+			this.projection = projection;
+			this.projectionBuffer = projection == null ? null : new byte[projection.getLength()];
+			this.nextPageNum = fromPageNum;
+			this.toPageNum = toPageNum;
+			this.fromPageNum = fromPageNum;
+		}
+
+		/**
+		 * Start from the slot <tt>fromSlotNum</tt> of the first page instead of
+		 * its first slot.
+		 */
+		RecordFileCursor startAt(int fromSlotNum) {
+			this.fromSlotNum = fromSlotNum;
+			return this;
+		}
+
+		/**
+		 * Pin the next data page which may have records.
+		 * @return false if all pages finish scanning
+		 */
+		private boolean nextPage() {
+			recordPage = pinNextScanPage(nextPageNum, toPageNum, pagePredicate);
+			if (recordPage == null) {
+				nextPageNum = toPageNum;
+				return false;
+			}
+			nextPageNum = recordPage.getPageNum() + 1;
+			nextSlotNum = recordPage.getPageNum() == fromPageNum ? fromSlotNum : 0;
+			return true;
+		}
+
+		@Override
+		public boolean advance() {
+			if (closed) {
+				throw new IllegalStateException("Scan is closed");
+			}
+			onRecord = false;
+			while (true) {
+				if (recordPage == null && !nextPage()) {
+					// All pages finish scanning.
+					return false;
+				}
+				int slotNum = recordPage.nextSlot(nextSlotNum);
+				if (slotNum < 0) {
+					unpinScanPage(recordPage);
+					recordPage = null;
+					continue;
+				}
+				nextSlotNum = slotNum + 1;
+				if (projection == null) {
+					viewRecord(recordPage, slotNum, view);
+				} else {
+					viewProjection(recordPage, slotNum, projection, projectionBuffer, view);
+				}
+				if (predicate == null || predicate.test(view)) {
+					onRecord = true;
+					return true;
+				}
+			}
+		}
+
+		@Override
+		public RecordView getView() {
+			checkState(onRecord, "Cursor is not on a record");
+			return view;
+		}
+
+		@Override
+		public RID getResumePosition() {
+			checkState(onRecord, "Cursor is not on a record");
+			return new RID(recordPage.getPageNum(), nextSlotNum);
+		}
+
+		@Override
+		public void close() {
+			if (recordPage != null) {
+				unpinScanPage(recordPage);
+				recordPage = null;
+			}
+			onRecord = false;
+			closed = true;
+		}
+	}
+
+	private class RecordFileBatchScan implements BatchScan {
+
+		private final ColumnBatch batch;
+		private final Condition[] conditions;
+		// The column of each condition in the batch.
+		private final int[] conditionColumns;
+		// The condition for skipping pages by the zone map, if any.
+		private final Condition pageCondition;
+		// In a columnar file, the columns are read as a projection of records.
+		private final Projection projection;
+		private final byte[] projectionBuffer;
+		// The position of each column in the views.
+		private final int[] positions;
+		private final RecordView view = new RecordView();
+		private int nextPageNum = header.dataPageOffset;
+		private int nextSlotNum;
+		private boolean closed;
+
+		RecordFileBatchScan(ColumnBatch batch, Condition[] conditions, int[] conditionColumns) {
+			this.batch = batch;
+			this.conditions = conditions;
+			this.conditionColumns = conditionColumns;
+			Condition pageCondition = null;
+			if (zoneMap != null) {
+				for (Condition condition : conditions) {
+					if (zoneMap.indexOf(condition) >= 0) {
+						pageCondition = condition;
+						break;
+					}
+				}
+			}
+			this.pageCondition = pageCondition;
+			int numColumns = batch.getNumOfColumns();
+			positions = new int[numColumns];
+			Projection projection = null;
+			for (int i = 0; i < numColumns; i++) {
+				int offset = batch.getAttrOffset(i);
+				int length = batch.getAttrType(i).getLength();
+				if (isColumnar()) {
+					positions[i] = projection == null ? 0 : projection.getLength();
+					projection = projection == null ? Projection.of(offset, length)
+							: projection.and(offset, length);
+				} else {
+					positions[i] = offset;
+				}
+			}
+			this.projection = projection;
+			this.projectionBuffer = projection == null ? null : new byte[projection.getLength()];
+		}
+
+		@Override
+		public boolean next() {
+			if (closed) {
+				throw new IllegalStateException("Scan is closed");
+			}
+			do {
+				batch.clear();
+				if (!fill()) {
+					return false;
+				}
+				for (int i = 0; i < conditions.length && batch.getNumOfSelected() > 0; i++) {
+					batch.filter(conditionColumns[i], conditions[i]);
+				}
+			} while (batch.getNumOfSelected() == 0);
+			return true;
+		}
+
+		/**
+		 * Fill the batch with the next records, pinning one page at a time.
+		 * @return false if there are no more records
+		 */
+		private boolean fill() {
+			while (!batch.isFull()) {
+				RecordPage recordPage = pinNextScanPage(nextPageNum, Integer.MAX_VALUE, pageCondition);
+				if (recordPage == null) {
+					nextPageNum = Integer.MAX_VALUE;
+					break;
+				}
+				if (recordPage.getPageNum() != nextPageNum) {
+					nextPageNum = recordPage.getPageNum();
+					nextSlotNum = 0;
+				}
+				try {
+					fillFromPage(recordPage);
+				} finally {
+					unpinScanPage(recordPage);
+				}
+			}
+			return batch.getSize() > 0;
+		}
+
+		private void fillFromPage(RecordPage recordPage) {
+			while (!batch.isFull()) {
+				int slotNum = recordPage.nextSlot(nextSlotNum);
+				if (slotNum < 0) {
+					nextPageNum++;
+					nextSlotNum = 0;
+					return;
+				}
+				nextSlotNum = slotNum + 1;
+				if (projection == null) {
+					viewRecord(recordPage, slotNum, view);
+					batch.addRow(view, positions, view.getLength());
+				} else {
+					viewProjection(recordPage, slotNum, projection, projectionBuffer, view);
+					batch.addRow(view, positions, header.recordSize);
+				}
+			}
+		}
+
+		@Override
+		public ColumnBatch getBatch() {
+			return batch;
+		}
+
+		@Override
+		public void close() {
+			if (!closed) {
+				batch.clear();
+				batch.setInUse(false);
+				closed = true;
+			}
+		}
+	}
+
+	/**
+	 * Splits the data pages in halves. Records are read one page at a time:
+	 * the page is pinned, its records satisfying the predicate are copied,
+	 * and the page is unpinned at once.
+	 */
+	private class RecordSpliterator implements Spliterator<Record> {
+
+		private final Predicate<RecordView> predicate;
+		private final RecordView view = new RecordView();
+		private int nextPageNum;
+		private final int toPageNum;
+		// The records copied from the last read page.
+		private final List<Record> pageRecords = new ArrayList<>();
+		private int index;
+
+		RecordSpliterator(Predicate<RecordView> predicate) {
+			this(predicate, header.dataPageOffset,
+					Math.max(pagedFile.getNumOfPages(), header.dataPageOffset));
+		}
+
+		private RecordSpliterator(Predicate<RecordView> predicate, int fromPageNum, int toPageNum) {
+			this.predicate = predicate;
+			this.nextPageNum = fromPageNum;
+			this.toPageNum = toPageNum;
+		}
+
+		/**
+		 * Pass the records satisfying the predicate in the next page which
+		 * has records to <tt>action</tt>.
+		 * @return false if all pages finish scanning
+		 */
+		private boolean scanNextPage(Consumer<? super Record> action) {
+			RecordPage recordPage = pinNextScanPage(nextPageNum, toPageNum, predicate);
+			if (recordPage == null) {
+				nextPageNum = toPageNum;
+				return false;
+			}
+			nextPageNum = recordPage.getPageNum() + 1;
+			try {
+				for (int slotNum = recordPage.nextSlot(0); slotNum >= 0;
+						slotNum = recordPage.nextSlot(slotNum + 1)) {
+					viewRecord(recordPage, slotNum, view);
+					if (predicate == null || predicate.test(view)) {
+						action.accept(view.toRecord());
+					}
+				}
+			} finally {
+				unpinScanPage(recordPage);
+			}
+			return true;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Record> action) {
+			while (index == pageRecords.size()) {
+				pageRecords.clear();
+				index = 0;
+				if (!scanNextPage(pageRecords::add)) {
+					return false;
+				}
+			}
+			action.accept(pageRecords.get(index++));
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(Consumer<? super Record> action) {
+			while (index < pageRecords.size()) {
+				action.accept(pageRecords.get(index++));
+			}
+			while (scanNextPage(action)) {
+				// Records are passed to action.
+			}
+		}
+
+		@Override
+		public Spliterator<Record> trySplit() {
+			if (index < pageRecords.size()) {
+				// The copied records must stay before the split.
+				return null;
+			}
+			int numPages = toPageNum - nextPageNum;
+			if (numPages < 2) {
+				return null;
+			}
+			int mid = nextPageNum + numPages / 2;
+			RecordSpliterator prefix = new RecordSpliterator(predicate, nextPageNum, mid);
+			nextPageNum = mid;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			long remaining = pageRecords.size() - index;
+			long numDataPages = pagedFile.getNumOfPages() - header.dataPageOffset;
+			if (numDataPages > 0) {
+				remaining += header.numRecords * Math.max(toPageNum - nextPageNum, 0L) / numDataPages;
+			}
+			return remaining;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | NONNULL;
+		}
+	}
+
+	private class RecordFileCompaction implements Compaction {
+
+		// A page using at most this many bytes is sparse.
+		private final int maxSparseUsedSpace;
+		private final BiConsumer<RID, RID> remapping;
+		private final RecordView view = new RecordView();
+		// The view of a moved overflow record, for the zone map.
+		private final RecordView overflowView = new RecordView();
+		// The next page to visit, going backwards.
+		private int pageNum;
+		private int budget;
+		private boolean finished;
+		private int numMovedRecords;
+		private int numDisposedPages;
+
+		RecordFileCompaction(int sparseFillFactor, BiConsumer<RID, RID> remapping) {
+			this.maxSparseUsedSpace = getPageSpace() * sparseFillFactor / 100;
+			this.remapping = remapping;
+			this.pageNum = pagedFile.getNumOfPages() - 1;
+		}
+
+		private int usedSpace(int freeSpace) {
+			return getPageSpace() - freeSpace;
+		}
+
+		@Override
+		public boolean step(int pageBudget) {
+			checkArgument(pageBudget > 0, "non-positive page budget: %s", pageBudget);
+			budget = pageBudget;
+			while (!finished && budget > 0) {
+				if (pageNum < header.dataPageOffset) {
+					finished = true;
+					break;
+				}
+				if (pagedFile.nextPageNum(pageNum) != pageNum
+						|| usedSpace(freeSpaceMap.get(pageNum)) > maxSparseUsedSpace) {
+					// Skip the disposed pages and the dense pages, without
+					// reading them.
+					pageNum--;
+					continue;
+				}
+				budget--;
+				RecordPage recordPage = getRecordPage(pageNum);
+				if (usedSpace(recordPage.getFreeSpace()) > maxSparseUsedSpace) {
+					freeSpaceMap.set(pageNum, recordPage.getFreeSpace());
+					unpinPage(recordPage);
+					pageNum--;
+					continue;
+				}
+				boolean vacated = vacate(recordPage);
+				freeSpaceMap.set(pageNum, recordPage.getFreeSpace());
+				unpinPage(recordPage);
+				if (!vacated) {
+					logger.info("Compaction stopped at page[{}], where records do not fit in pages before",
+							pageNum);
+					finished = true;
+					break;
+				}
+				disposeRecordPage(pageNum);
+				numDisposedPages++;
+				pageNum--;
+			}
+			pagedFile.truncateDisposedPages();
+			if (finished) {
+				logger.info("Compaction finished, moved {} records, disposed {} pages",
+						numMovedRecords, numDisposedPages);
+			}
+			return !finished;
+		}
+
+		/**
+		 * Move all the records of a page into the pages before it.
+		 * @return false if some records do not fit in the pages before
+		 */
+		private boolean vacate(RecordPage recordPage) {
+			RecordPage target = null;
+			try {
+				for (int slotNum = recordPage.nextSlot(0); slotNum >= 0;
+						slotNum = recordPage.nextSlot(slotNum + 1)) {
+					recordPage.viewRecord(slotNum, view);
+					int length = view.getLength();
+					if (target != null && !fits(target, length)) {
+						releaseInsertedPage(target);
+						target = null;
+					}
+					if (target == null) {
+						target = pinMoveTarget(length, recordPage.getPageNum());
+						if (target == null) {
+							return false;
+						}
+					}
+					markDirty(target);
+					// The stub of an overflow record is moved, and its
+					// overflow pages stay.
+					int newSlotNum = target.insert(view.array(), view.arrayOffset(), length);
+					boolean overflow = recordPage.isOverflow(slotNum);
+					if (overflow) {
+						target.setOverflow(newSlotNum, true);
+					}
+					if (zoneMap != null) {
+						RecordView record = view;
+						if (overflow) {
+							viewRecord(recordPage, slotNum, overflowView);
+							record = overflowView;
+						}
+						zoneMap.add(target.getPageNum(), record.array(), record.arrayOffset(), record.getLength());
+					}
+					markDirty(recordPage);
+					recordPage.delete(slotNum);
+					if (zoneMap != null) {
+						zoneMap.remove(recordPage.getPageNum());
+					}
+					numMovedRecords++;
+					remapping.accept(new RID(recordPage.getPageNum(), slotNum),
+							new RID(target.getPageNum(), newSlotNum));
+				}
+				return true;
+			} finally {
+				if (target != null) {
+					releaseInsertedPage(target);
+				}
+			}
+		}
+
+		/**
+		 * Pin the first page before <tt>limitPageNum</tt> where a record of
+		 * <tt>length</tt> bytes fits.
+		 * @return the pinned page, or null if there are no such pages
+		 */
+		private RecordPage pinMoveTarget(int length, int limitPageNum) {
+			int neededFreeSpace = neededFreeSpace(length);
+			while (true) {
+				int targetNum = freeSpaceMap.find(neededFreeSpace);
+				if (targetNum < 0 || targetNum >= limitPageNum) {
+					return null;
+				}
+				budget--;
+				RecordPage target = getRecordPage(targetNum);
+				if (fits(target, length)) {
+					return target;
+				}
+				freeSpaceMap.set(targetNum, target.getFreeSpace());
+				unpinPage(target);
+			}
+		}
+
+		@Override
+		public boolean isFinished() {
+			return finished;
+		}
+
+		@Override
+		public int getNumOfMovedRecords() {
+			return numMovedRecords;
+		}
+
+		@Override
+		public int getNumOfDisposedPages() {
+			return numDisposedPages;
+		}
+	}
+
+	private class RecordScan implements Scan<Record> {
+
+	    private final Predicate<Record> predicate;
+	    private final RecordCursor cursor;
+
+		RecordScan(RecordCursor cursor, Predicate<Record> predicate) {
+	        this.predicate = predicate;
+	        this.cursor = cursor;
 		}
 
         @Override
         public Optional<Record> next() {
-		    if (closed) {
-                throw new IllegalStateException("Scan is closed");
-            }
-		    // TODO consider deleted records and pages
-            if (pageScan != null) {
-                // One page is under scanning
-                Optional<byte[]> optionalRecord = pageScan.next();
-                if (optionalRecord.isPresent()) {
-                    return Optional.of(new Record(optionalRecord.get()));
-                } else {
-                    pageScan.close();
-                    pageScan = null;
-                    unpinPage(recordPage);
-                    recordPage = null;
-                }
-            }
-            if (!pageIterator.hasNext()) {
-                // All pages finish scanning.
-                return Optional.empty();
-            }
-            // Start to scan new pages.
-			while (pageIterator.hasNext()) {
-		        int pageNum = pageIterator.next();
-		        recordPage = getRecordPage(pageNum);
-		        pageScan = recordPage.scan(predicate);
-                Optional<byte[]> optionalRecord = pageScan.next();
-                if (optionalRecord.isPresent()) {
-                    return Optional.of(new Record(optionalRecord.get()));
-                } else {
-                    // This page has no records that satisfy the predicate.
-                    pageScan.close();
-                    pageScan = null;
-                    unpinPage(recordPage);
-                    recordPage = null;
+		    while (cursor.advance()) {
+		        Record record = cursor.getView().toRecord();
+		        if (predicate == null || predicate.test(record)) {
+		            return Optional.of(record);
                 }
             }
             return Optional.empty();
@@ -380,19 +2314,199 @@ while (true) {
 
         @Override
         public void close() {
-            pageScan.close();
-            pageScan = null;
-            unpinPage(recordPage);
-            recordPage = null;
-            closed = true;
+		    cursor.close();
         }
     }
 
+	private static class RecordProjectedScan implements ProjectedScan {
+
+		private final RecordCursor cursor;
+		private final Projection projection;
+		private final int length;
+		// Whether the views of the cursor are already projected, with the
+		// projected record as their prefix.
+		private final boolean viewsProjected;
+		private byte[] buffer;
+
+		RecordProjectedScan(RecordCursor cursor, Projection projection, boolean viewsProjected) {
+			this.cursor = cursor;
+			this.projection = projection;
+			this.length = projection.getLength();
+			this.viewsProjected = viewsProjected;
+		}
+
+		@Override
+		public Projection getProjection() {
+			return projection;
+		}
+
+		@Override
+		public Optional<Record> next() {
+			if (!cursor.advance()) {
+				return Optional.empty();
+			}
+			byte[] data = new byte[length];
+			copyProjected(cursor.getView(), data, 0);
+			return Optional.of(new Record(data));
+		}
+
+		@Override
+		public int next(ByteBuffer dest) {
+			checkArgument(dest.remaining() >= length,
+					"%s bytes remaining, less than a projected record", dest.remaining());
+			int n = 0;
+			while (dest.remaining() >= length && cursor.advance()) {
+				if (dest.hasArray()) {
+					copyProjected(cursor.getView(), dest.array(), dest.arrayOffset() + dest.position());
+					dest.position(dest.position() + length);
+				} else {
+					if (buffer == null) {
+						buffer = new byte[length];
+					}
+					copyProjected(cursor.getView(), buffer, 0);
+					dest.put(buffer);
+				}
+				n++;
+			}
+			return n;
+		}
+
+		private void copyProjected(RecordView view, byte[] dest, int destPos) {
+			if (viewsProjected) {
+				System.arraycopy(view.array(), view.arrayOffset(), dest, destPos, length);
+			} else {
+				projection.project(view.array(), view.arrayOffset(), view.getLength(), dest, destPos);
+			}
+		}
+
+		@Override
+		public void close() {
+			cursor.close();
+		}
+	}
+
 	/**
-	 * Make the page pinned again in paged file.
+	 * Scans the sampled pages one at a time, each by a cursor over the page.
 	 */
-	private void touch(RecordPage recordPage) {
-		pagedFile.getPage(recordPage.getPageNum());
+	private class RecordSampleCursor implements SampleCursor {
+
+		// The sampled pages, by their indexes among the data pages.
+		private final BitSet sampledPages;
+		private final int numDataPages;
+		private int nextIndex;
+		// The cursor over the sampled page under scanning.
+		private RecordFileCursor pageCursor;
+		private boolean closed;
+
+		RecordSampleCursor(BitSet sampledPages, int numDataPages) {
+			this.sampledPages = sampledPages;
+			this.numDataPages = numDataPages;
+		}
+
+		@Override
+		public boolean advance() {
+			if (closed) {
+				throw new IllegalStateException("Scan is closed");
+			}
+			while (pageCursor == null || !pageCursor.advance()) {
+				if (pageCursor != null) {
+					pageCursor.close();
+					pageCursor = null;
+				}
+				int index = sampledPages.nextSetBit(nextIndex);
+				if (index < 0) {
+					nextIndex = numDataPages;
+					return false;
+				}
+				nextIndex = index + 1;
+				int pageNum = header.dataPageOffset + index;
+				pageCursor = new RecordFileCursor(null, null, pageNum, pageNum + 1);
+			}
+			return true;
+		}
+
+		@Override
+		public RecordView getView() {
+			checkState(pageCursor != null, "Cursor is not on a record");
+			return pageCursor.getView();
+		}
+
+		@Override
+		public RID getResumePosition() {
+			checkState(pageCursor != null, "Cursor is not on a record");
+			return pageCursor.getResumePosition();
+		}
+
+		@Override
+		public int getNumOfSampledPages() {
+			return sampledPages.cardinality();
+		}
+
+		@Override
+		public int getNumOfPages() {
+			return numDataPages;
+		}
+
+		@Override
+		public double getSamplingFraction() {
+			return numDataPages == 0 ? 0 : (double) getNumOfSampledPages() / numDataPages;
+		}
+
+		@Override
+		public void close() {
+			if (pageCursor != null) {
+				pageCursor.close();
+				pageCursor = null;
+			}
+			closed = true;
+		}
+	}
+
+	private static class RecordResumableScan implements ResumableScan {
+
+		private final RecordCursor cursor;
+		private int remainingOffset;
+		private int remainingLimit;
+		// The position after the last read record, or null if there are no
+		// more records.
+		private RID position;
+
+		RecordResumableScan(RecordCursor cursor, RID from, int offset, int limit) {
+			this.cursor = cursor;
+			this.position = from;
+			this.remainingOffset = offset;
+			this.remainingLimit = limit;
+		}
+
+		@Override
+		public Optional<Record> next() {
+			if (position == null || remainingLimit == 0) {
+				return Optional.empty();
+			}
+			while (true) {
+				if (!cursor.advance()) {
+					position = null;
+					return Optional.empty();
+				}
+				position = cursor.getResumePosition();
+				if (remainingOffset == 0) {
+					break;
+				}
+				remainingOffset--;
+			}
+			remainingLimit--;
+			return Optional.of(cursor.getView().toRecord());
+		}
+
+		@Override
+		public Optional<RID> getResumePosition() {
+			return Optional.ofNullable(position);
+		}
+
+		@Override
+		public void close() {
+			cursor.close();
+		}
 	}
 
 	private void markDirty(RecordPage recordPage) {
@@ -3,66 +3,130 @@ package me.nettee.pancake.core.record;
 import me.nettee.pancake.core.model.Magic;
 import me.nettee.pancake.core.page.Page;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class RecordFileHeader {
 	
-	public static final int NO_FREE_PAGE = -1; 
-	
 	private static final Magic MAGIC = new Magic("REC-FILE");
 
+	/**
+	 * The layout of data pages.
+	 */
+	enum PageLayout {
+		FIXED_LENGTH(1),
+		VARIABLE_LENGTH(2),
+		PAX(3),
+		;
+
+		private final int value;
+
+		PageLayout(int value) {
+			this.value = value;
+		}
+
+		public int toInt() {
+			return value;
+		}
+
+		public static PageLayout fromInt(int value) {
+			switch (value) {
+				case 1: return FIXED_LENGTH;
+				case 2: return VARIABLE_LENGTH;
+				case 3: return PAX;
+				default: throw new RecordFileException("Unknown page layout: " + value);
+			}
+		}
+	}
+
+	/**
+	 * The record size of a file storing variable-length records.
+	 */
+	static final int VARIABLE_RECORD_SIZE = 0;
+
 	int recordSize;
 	int dataPageOffset;
 	int numRecords;
 	int numPages;
 	int pageRecordCapacity; // TODO Useless field
-	int firstFreePage;
+	/*
+	 * The percentage of space in a data page to be filled by insertions. The
+	 * rest is left for updates.
+	 */
+	int fillFactor;
+	PageLayout pageLayout;
+	// The lengths of the attributes of a record, only for the PAX layout.
+	int[] attrLengths;
+	// Whether records are only inserted at the tail data page.
+	boolean appendOnly;
 
 	void init(int recordSize) {
 		this.recordSize = recordSize;
 		this.dataPageOffset = 1;
 		this.numRecords = 0;
 		this.numPages = 1;
-		this.pageRecordCapacity = (Page.DATA_SIZE - RecordPage.HEADER_SIZE) / recordSize;
-		this.firstFreePage = RecordFileHeader.NO_FREE_PAGE;
+		this.pageRecordCapacity = (Page.DATA_SIZE - FixedRecordPage.HEADER_SIZE) / recordSize;
+		this.fillFactor = 100;
+		this.pageLayout = PageLayout.FIXED_LENGTH;
+		this.appendOnly = false;
+	}
+
+	void initVariableLength() {
+		this.recordSize = VARIABLE_RECORD_SIZE;
+		this.dataPageOffset = 1;
+		this.numRecords = 0;
+		this.numPages = 1;
+		this.pageRecordCapacity = 0;
+		this.fillFactor = 100;
+		this.pageLayout = PageLayout.VARIABLE_LENGTH;
+		this.appendOnly = false;
+	}
+
+	void initColumnar(int[] attrLengths) {
+		init(PaxRecordPage.recordSizeOf(attrLengths));
+		this.pageLayout = PageLayout.PAX;
+		this.attrLengths = attrLengths.clone();
+	}
+
+	boolean isVariableLength() {
+		return pageLayout == PageLayout.VARIABLE_LENGTH;
 	}
 
 	void readFrom(byte[] src) {
-        ByteArrayInputStream bais = new ByteArrayInputStream(src);
-        DataInputStream is = new DataInputStream(bais);
-		try {
-			MAGIC.check(is);
-			recordSize = is.readInt();
-			dataPageOffset = is.readInt();
-			numRecords = is.readInt();
-			numPages = is.readInt();
-			pageRecordCapacity = is.readInt();
-			firstFreePage = is.readInt();
-		} catch (IOException e) {
-			throw new RecordFileException(e);
+		ByteBuffer in = ByteBuffer.wrap(src);
+		MAGIC.check(in);
+		recordSize = in.getInt();
+		dataPageOffset = in.getInt();
+		numRecords = in.getInt();
+		numPages = in.getInt();
+		pageRecordCapacity = in.getInt();
+		fillFactor = in.getInt();
+		pageLayout = PageLayout.fromInt(in.getInt());
+		if (pageLayout == PageLayout.PAX) {
+			attrLengths = new int[in.getInt()];
+			for (int i = 0; i < attrLengths.length; i++) {
+				attrLengths[i] = in.getInt();
+			}
 		}
+		appendOnly = in.getInt() == 1;
 	}
 	
 	void writeTo(byte[] dest) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream os = new DataOutputStream(baos);
-		try {
-			os.write(MAGIC.getBytes());
-			os.writeInt(recordSize);
-			os.writeInt(dataPageOffset);
-			os.writeInt(numRecords);
-			os.writeInt(numPages);
-			os.writeInt(pageRecordCapacity);
-			os.writeInt(firstFreePage);
-			byte[] data = baos.toByteArray();
-			System.arraycopy(data, 0, dest, 0, data.length);
-		} catch (IOException e) {
-			throw new RecordFileException(e);
+		ByteBuffer out = ByteBuffer.wrap(dest);
+		out.put(MAGIC.getBytes());
+		out.putInt(recordSize);
+		out.putInt(dataPageOffset);
+		out.putInt(numRecords);
+		out.putInt(numPages);
+		out.putInt(pageRecordCapacity);
+		out.putInt(fillFactor);
+		out.putInt(pageLayout.toInt());
+		if (pageLayout == PageLayout.PAX) {
+			out.putInt(attrLengths.length);
+			for (int attrLength : attrLengths) {
+				out.putInt(attrLength);
+			}
 		}
+		out.putInt(appendOnly ? 1 : 0);
 	}
 
 }
@@ -3,274 +3,96 @@ package me.nettee.pancake.core.record;
 import me.nettee.pancake.core.model.Scan;
 import me.nettee.pancake.core.page.Page;
 import me.nettee.pancake.core.page.PagedFile;
-import me.nettee.pancake.core.page.Pages;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.io.*;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 import java.util.BitSet;
 import java.util.Optional;
 import java.util.function.Predicate;
 
-import static com.google.common.base.Preconditions.checkArgument;
-import static com.google.common.base.Preconditions.checkState;
 
-public class RecordPage {
-
-	private static Logger logger = LoggerFactory.getLogger(RecordPage.class);
-
-	// Note: change the value when the structure of Header changes.
-	static final int HEADER_SIZE = 20;
-
-	private static class Header {
-
-		int nextFreePage;
-		int recordSize;
-		int numRecords;
-		int capacity;
-		int bitsetSize;
-
-		void fromByteArray(byte[] src) {
-			try {
-				ByteArrayInputStream bais = new ByteArrayInputStream(src);
-				DataInputStream is = new DataInputStream(bais);
-				nextFreePage = is.readInt();
-				recordSize = is.readInt();
-				numRecords = is.readInt();
-				capacity = is.readInt();
-				bitsetSize = is.readInt();
-			} catch (IOException e) {
-				throw new RecordFileException(e);
-			}
-		}
-
-		byte[] toByteArray() {
-			try {
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				DataOutputStream os = new DataOutputStream(baos);
-				os.writeInt(nextFreePage);
-				os.writeInt(recordSize);
-				os.writeInt(numRecords);
-				os.writeInt(capacity);
-				os.writeInt(bitsetSize);
-				byte[] data = baos.toByteArray();
-				checkState(data.length == HEADER_SIZE);
-				return data;
-			} catch (IOException e) {
-				throw new RecordFileException(e);
-			}
-		}
-
-		String dump() {
-			StringBuilder sb = new StringBuilder();
-			sb.append(String.format("next free page: %d", nextFreePage));
-			sb.append("\n");
-			sb.append(String.format("record size: %d", recordSize));
-			sb.append("\n");
-			sb.append(String.format("number of records: %d", numRecords));
-			sb.append("\n");
-			sb.append(String.format("page capacity: %d", capacity));
-			sb.append("\n");
-			sb.append(String.format("bitset size: %d", bitsetSize));
-			sb.append("\n");
-			return sb.toString();
-		}
-	}
-
-	private static class Bitset {
-
-		private final BitSet bs;
-
-		private Bitset(BitSet bs) {
-			this.bs = bs;
-		}
-
-		static Bitset empty(int n) {
-			BitSet bs = new BitSet(n + 1);
-			bs.set(n + 1, true); // workaround "plus one"
-			return new Bitset(bs);
-		}
-
-		static Bitset fromByteArray(byte[] bytes) {
-			BitSet bs = BitSet.valueOf(bytes);
-			return new Bitset(bs);
-		}
-
-		byte[] toByteArray() {
-			return bs.toByteArray();
-		}
-
-		boolean get(int i) {
-			return bs.get(i);
-		}
-
-		void set(int i) {
-			bs.set(i);
-		}
-
-		void set(int i, boolean b) {
-			bs.set(i, b);
-		}
-
-		String dump(int n) {
-			StringBuilder sb = new StringBuilder();
-			for (int i = 0; i < n; i++) {
-				char b = bs.get(i) ? '1' : '0';
-				sb.append(b);
-				if (i % 10 == 9) {
-					sb.append('|');
-					sb.append(i+1);
-					sb.append('|');
-				}
-			}
-			return sb.toString();
-		}
-
-	}
-
-	private final Page page;
-
-	private Header header;
-	private Bitset bitset;
-
-	private RecordPage(Page page) {
+/**
+ * A data page of record file. A record page stores records in slots, and the
+ * slot number of a record never changes until the record is deleted. The
+ * layout of record page is decided by the record file (see
+ * {@link RecordFileHeader.PageLayout}):
+ * <ul>
+ * <li>{@link FixedRecordPage} stores fixed-length records;</li>
+ * <li>{@link SlottedRecordPage} stores variable-length records;</li>
+ * <li>{@link PaxRecordPage} stores fixed-length records by attributes.</li>
+ * </ul>
+ * The header of a record page is read and written in place on the page data,
+ * so the page holds the latest header as soon as it is modified.
+ */
+public abstract class RecordPage {
+
+	protected final int pageNum;
+	protected final Page page;
+	// A view of the page data, for accessing header fields in place.
+	protected final ByteBuffer view;
+	// The slots of the records deleted in the append-only mode, which are
+	// kept out of the page by the record file, or null if none.
+	private BitSet tombstones;
+
+	protected RecordPage(Page page) {
+		this.pageNum = page.getNum();
 		this.page = page;
-		header = new Header();
+		this.view = ByteBuffer.wrap(page.getData());
 	}
 
 	/**
 	 * The <tt>page</tt> should be newly created by
 	 * {@linkplain PagedFile#allocatePage()}.
-	 * @param page
-	 * @param recordSize
-	 * @return
+	 * @param page the page to hold records
+	 * @param fileHeader the header of record file
+	 * @return created record page
 	 */
-	public static RecordPage create(Page page, int recordSize) {
-		RecordPage recordPage = new RecordPage(page);
-		recordPage.init(recordSize);
-		return recordPage;
+	public static RecordPage create(Page page, RecordFileHeader fileHeader) {
+		switch (fileHeader.pageLayout) {
+			case FIXED_LENGTH:
+				return FixedRecordPage.create(page, fileHeader.recordSize);
+			case VARIABLE_LENGTH:
+				return SlottedRecordPage.create(page);
+			case PAX:
+				return PaxRecordPage.create(page, fileHeader.attrLengths);
+			default:
+				throw new AssertionError();
+		}
 	}
 
 	/**
 	 * The <tt>page</tt> should be a valid record page, retrieved via
 	 * {@linkplain PagedFile#getPage(int)}.
-	 * @param page
-	 * @return
+	 * @param page the page holding records
+	 * @param fileHeader the header of record file
+	 * @return opened record page
 	 */
-	public static RecordPage open(Page page) {
-		RecordPage recordPage = new RecordPage(page);
-		recordPage.load();
-		return recordPage;
-	}
-
-	private void init(int recordSize) {
-		header.nextFreePage = RecordFileHeader.NO_FREE_PAGE;
-		header.recordSize = recordSize;
-		header.numRecords = 0;
-
-        int n = getPageRecordCapacity(recordSize);
-		header.capacity = n;
-		header.bitsetSize = (int) Math.ceil((double) n / 8);
-		logger.debug("header.capacity = {}", header.capacity);
-		logger.debug("header.bitsetSize = {}", header.bitsetSize);
-
-		bitset = Bitset.empty(n);
-
-		writeHeaderToPage();
-		writeBitsetToPage();
-	}
-
-	// TODO Repetitive computing in each record page
-	static int getPageRecordCapacity(int recordSize) {
-        /*
-         * Calculate bitset size:
-         *
-         * Let C = capacity of page (bytes), R = length of record, n = number of record.
-         *
-         * Rn + ceil(n/8) <= C;
-         *
-         * Rn + ceil(n/8) <= Rn + (n+7)/8 <= C;
-         *
-         * Thus n <= (8C-7)/(8R+1).
-         *
-         * Bitset size = ceil(n/8) bytes.
-         *
-         * Workaround: Java BitSet class has a bug, its capacity wouldn't grow
-         * if all the bits is 0, and toByteArray() returns empty array. Add one
-         * dummy bit at the end of bitset to fix this problem.
-         */
-        int C = Page.DATA_SIZE - HEADER_SIZE;
-        // workaround "minus one"
-        int n = (8 * C - 7) / (8 * recordSize + 1) - 1;
-        return n;
-    }
-
-	private void load() {
-		readHeaderAndBitsetFromPage();
-	}
-
-	public String dump() {
-		StringBuilder sb = new StringBuilder();
-		sb.append("+----------------------------------------------------------------------------+\n");
-		sb.append(String.format("Page %d", page.getNum()));
-		sb.append("\n");
-		sb.append(header.dump());
-		sb.append("Bitset:\n");
-		for (int i = 0; i < header.capacity; i++) {
-			if (i % 64 == 0) {
-				sb.append(String.format("%3d: ", i));
-			} else if (i % 8 == 0) {
-				sb.append(" ");
-			}
-			sb.append(bitset.get(i) ? "1" : "0");
-			if (i % 64 == 64 - 1) {
-				sb.append("\n");
-			}
-		}
-		sb.append("\n");
-		sb.append("+----------------------------------------------------------------------------+\n");
-		return sb.toString();
-	}
-	
-	private void checkRecordExistence(int slotNum) {
-		if (!bitset.get(slotNum)) {
-			String msg = String.format("record %d does not exist", slotNum);
-			throw new RecordNotExistException(msg);
+	public static RecordPage open(Page page, RecordFileHeader fileHeader) {
+		switch (fileHeader.pageLayout) {
+			case FIXED_LENGTH:
+				return FixedRecordPage.open(page);
+			case VARIABLE_LENGTH:
+				return SlottedRecordPage.open(page);
+			case PAX:
+				return PaxRecordPage.open(page, fileHeader.attrLengths);
+			default:
+				throw new AssertionError();
 		}
 	}
 
-	private void readHeaderAndBitsetFromPage() {
-		byte[] headerByteArray = Arrays.copyOf(page.getData(), HEADER_SIZE);
-		header.fromByteArray(headerByteArray);
-		byte[] bitsetByteArray = Arrays.copyOfRange(page.getData(),
-				HEADER_SIZE,
-				HEADER_SIZE + header.bitsetSize);
-		bitset = Bitset.fromByteArray(bitsetByteArray);
-	}
-
-	void writeHeaderToPage() {
-		byte[] headerBytes = header.toByteArray();
-		System.arraycopy(headerBytes, 0, page.getData(), 0, HEADER_SIZE);
-	}
-
-	void writeBitsetToPage() {
-		byte[] bitsetBytes = bitset.toByteArray();
-		System.arraycopy(bitsetBytes, 0, page.getData(), HEADER_SIZE, bitsetBytes.length);
-	}
-
-	private byte[] readRecordFromPage(int slotNum) {
-		return Arrays.copyOfRange(page.getData(), recordPos(slotNum),
-				recordPos(slotNum) + header.recordSize);
-	}
-
-	private void writeRecordToPage(int slotNum, byte[] data) {
-		checkArgument(data.length == header.recordSize);
-		System.arraycopy(data, 0, page.getData(), recordPos(slotNum), header.recordSize);
-	}
+	/**
+	 * Check whether a record of <tt>length</tt> bytes can be inserted into
+	 * this page.
+	 * @param length record length
+	 * @return true if the record fits in this page
+	 */
+	abstract boolean canInsert(int length);
 
-	private int recordPos(int i) {
-		return HEADER_SIZE + header.bitsetSize + i * header.recordSize;
+	/**
+	 * @return the free space taken by inserting a record of <tt>length</tt>
+	 * bytes into this page
+	 */
+	int insertedSpace(int length) {
+		return length;
 	}
 
 	/**
@@ -279,118 +101,184 @@ public class RecordPage {
 	 * @return slot number of inserted record
 	 */
 	int insert(byte[] data) {
-		int slotNum = 0;
-		// Find the first free slot
-		while (slotNum < header.capacity && bitset.get(slotNum)) {
-			slotNum++;
-		}
-		checkState(slotNum < header.capacity,
-			"No free slot left in record page");
-		writeRecordToPage(slotNum, data);
-		bitset.set(slotNum);
-		header.numRecords++;
-		return slotNum;
+		return insert(data, 0, data.length);
 	}
 
+	/**
+	 * Insert record from part of a byte array.
+	 * @param src the array holding record data
+	 * @param offset the offset of record data in <tt>src</tt>
+	 * @param length record length
+	 * @return slot number of inserted record
+	 */
+	abstract int insert(byte[] src, int offset, int length);
+
 	/**
 	 * Get record.
 	 * @param slotNum slot number
 	 * @return record
+	 * @throws RecordNotExistException if the slot is empty
 	 */
-	byte[] get(int slotNum) {
-		checkRecordExistence(slotNum);
-		return readRecordFromPage(slotNum);
-	}
-	
+	abstract byte[] get(int slotNum);
+
 	/**
-	 * Update record.
+	 * Update record. The updated record is not an overflow stub.
 	 * @param slotNum slot number
 	 * @param data record
+	 * @throws RecordNotExistException if the slot is empty
 	 */
-	void update(int slotNum, byte[] data) {
-		checkRecordExistence(slotNum);
-		writeRecordToPage(slotNum, data);
-	}
-	
+	abstract void update(int slotNum, byte[] data);
+
+	/**
+	 * @param slotNum slot number of an occupied slot
+	 * @return whether the record in the slot is the stub of an overflow
+	 * record, stored in the {@link OverflowFile}
+	 */
+	abstract boolean isOverflow(int slotNum);
+
+	/**
+	 * Flag the record in a slot as the stub of an overflow record, or not.
+	 * Only slotted record pages store overflow records.
+	 * @param slotNum slot number
+	 * @param overflow whether the record is a stub
+	 * @throws RecordNotExistException if the slot is empty
+	 * @throws IllegalArgumentException if the page cannot store overflow
+	 * records
+	 */
+	abstract void setOverflow(int slotNum, boolean overflow);
+
 	/**
 	 * Delete record.
 	 * @param slotNum slot number
+	 * @throws RecordNotExistException if the slot is empty
+	 */
+	abstract void delete(int slotNum);
+
+	/**
+	 * @param slotNum slot number
+	 * @throws RecordNotExistException if the slot is empty, or its record is
+	 * deleted as a tombstone
+	 */
+	abstract void checkRecordExistence(int slotNum);
+
+	/**
+	 * Set the tombstones of this page. A record with a tombstone stays in
+	 * its slot, but it no longer exists: it is skipped by
+	 * {@link #nextSlot(int)} and cannot be read or deleted again.
+	 * @param tombstones the slots of deleted records, or null if none
 	 */
-	void delete(int slotNum) {
-		checkRecordExistence(slotNum);
-		// Fill the record space with default bytes for ease of debugging.
-		writeRecordToPage(slotNum, Pages.makeDefaultBytes(header.recordSize));
-		bitset.set(slotNum, false);
-		header.numRecords--;
+	void setTombstones(BitSet tombstones) {
+		this.tombstones = tombstones;
 	}
-	
-	public boolean isEmpty() {
-		return header.numRecords == 0;
+
+	boolean isTombstone(int slotNum) {
+		return tombstones != null && tombstones.get(slotNum);
 	}
-	
-	public boolean isFull() {
-		return header.numRecords >= header.capacity;
+
+	int getNumTombstones() {
+		return tombstones == null ? 0 : tombstones.cardinality();
 	}
-	
-	public int getNextFreePage() {
-		return header.nextFreePage;
+
+	/**
+	 * @return the number of records in this page, read from the page header,
+	 * including the records with tombstones
+	 */
+	abstract int getNumRecords();
+
+	public boolean isEmpty() {
+		return getNumRecords() == getNumTombstones();
 	}
-	
-	public void setNextFreePage(int pageNum) {
-		header.nextFreePage = pageNum;
+
+	/**
+	 * @return whether no more records can be inserted into this page
+	 */
+	public abstract boolean isFull();
+
+	/**
+	 * @return the number of bytes available for new records, which is
+	 * recorded in the free space map of record file
+	 */
+	abstract int getFreeSpace();
+
+	/**
+	 * Find the next occupied slot.
+	 * @param fromSlotNum the slot number to start from (inclusive)
+	 * @return the first occupied slot number not less than
+	 * <tt>fromSlotNum</tt>, or -1 if no such slot
+	 */
+	abstract int nextSlot(int fromSlotNum);
+
+	/**
+	 * Point <tt>view</tt> to the record in an occupied slot, without copying
+	 * the record.
+	 * @param slotNum slot number of an occupied slot
+	 * @param view the view to set
+	 */
+	abstract void viewRecord(int slotNum, RecordView view);
+
+	/**
+	 * Point <tt>view</tt> to the projected record in an occupied slot, which
+	 * is copied to <tt>buffer</tt>.
+	 * @param slotNum slot number of an occupied slot
+	 * @param projection the byte ranges to copy
+	 * @param buffer the array to hold the projected record, at least as long
+	 *               as the projected record
+	 * @param view the view to set
+	 */
+	void viewProjection(int slotNum, Projection projection, byte[] buffer, RecordView view) {
+		viewRecord(slotNum, view);
+		projection.project(view.array(), view.arrayOffset(), view.getLength(), buffer, 0);
+		view.set(pageNum, slotNum, buffer, 0, projection.getLength());
 	}
 
+	Scan<byte[]> scan(Predicate<byte[]> predicate) {
+		return new RecordScan(predicate);
+	}
+
+	public abstract String dump();
+
 	Page getPage() {
 		return page;
 	}
-	
+
 	public int getPageNum() {
-		return page.getNum();
+		return pageNum;
 	}
 
-    Scan<byte[]> scan(Predicate<byte[]> predicate) {
-	    return new RecordScan(predicate);
-    }
-
-    private class RecordScan implements Scan<byte[]> {
-
-	    private final Predicate<byte[]> predicate;
-	    private int currentSlotNum;
-	    private boolean closed = false;
-
-        public RecordScan(Predicate<byte[]> predicate) {
-            this.predicate = predicate;
-            currentSlotNum = 0;
-        }
-
-        @Override
-        public Optional<byte[]> next() {
-            if (closed) {
-                throw new IllegalStateException("Scan is closed");
-            }
-            // TODO This will examine every bits in bit-set. Try to improve efficiency.
-            while (true) {
-                if (currentSlotNum >= header.capacity) {
-                    return Optional.empty();
-                }
-                if (!bitset.get(currentSlotNum)) {
-                    // The current record is deleted.
-                    currentSlotNum++;
-                    continue;
-                }
-                byte[] record = get(currentSlotNum);
-                currentSlotNum++;
-                // TODO predicate can no longer be null
-                if (predicate == null || predicate.test(record)) {
-                    return Optional.of(record);
-                }
-            }
-        }
-
-        @Override
-        public void close() {
-            closed = true;
-        }
-    }
+	private class RecordScan implements Scan<byte[]> {
 
+		private final Predicate<byte[]> predicate;
+		private int currentSlotNum;
+		private boolean closed = false;
+
+		RecordScan(Predicate<byte[]> predicate) {
+			this.predicate = predicate;
+			currentSlotNum = 0;
+		}
+
+		@Override
+		public Optional<byte[]> next() {
+			if (closed) {
+				throw new IllegalStateException("Scan is closed");
+			}
+			while (currentSlotNum >= 0) {
+				int slotNum = nextSlot(currentSlotNum);
+				if (slotNum < 0) {
+					currentSlotNum = -1;
+					break;
+				}
+				currentSlotNum = slotNum + 1;
+				byte[] record = get(slotNum);
+				if (predicate == null || predicate.test(record)) {
+					return Optional.of(record);
+				}
+			}
+			return Optional.empty();
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
 }
@@ -0,0 +1,150 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.RID;
+import me.nettee.pancake.core.model.Record;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static me.nettee.pancake.core.record.ByteArrays.readInt;
+
+/**
+ * A read-only view of a record, directly on the bytes of the page holding
+ * it, or on a buffer when the record is not contiguous in the page (as in a
+ * {@link PaxRecordPage}), is projected, or is stored in overflow pages. A
+ * view is reused by {@link RecordCursor}: it is only valid until the cursor
+ * advances or is closed. Use {@link #toRecord()} to keep a copy of the
+ * record.
+ * <p>
+ * Multi-byte values are read in big-endian byte order, the same as
+ * {@link java.nio.ByteBuffer} and {@link me.nettee.pancake.core.model.Attr}.
+ */
+public final class RecordView {
+
+	private int pageNum;
+	private int slotNum;
+	private byte[] data;
+	private int offset;
+	private int length;
+	// A buffer owned by the view, for the records read out of the pages,
+	// such as overflow records.
+	private byte[] buffer;
+
+	RecordView() {
+	}
+
+	void set(int pageNum, int slotNum, byte[] data, int offset, int length) {
+		this.pageNum = pageNum;
+		this.slotNum = slotNum;
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * @return the buffer of this view, of at least <tt>length</tt> bytes
+	 */
+	byte[] buffer(int length) {
+		if (buffer == null || buffer.length < length) {
+			buffer = new byte[length];
+		}
+		return buffer;
+	}
+
+	// The array and offset of the record, for reading it without copying.
+	byte[] array() {
+		return data;
+	}
+
+	int arrayOffset() {
+		return offset;
+	}
+
+	public int getPageNum() {
+		return pageNum;
+	}
+
+	public int getSlotNum() {
+		return slotNum;
+	}
+
+	public RID getRID() {
+		return new RID(pageNum, slotNum);
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public byte getByte(int pos) {
+		checkElementIndex(pos, length);
+		return data[offset + pos];
+	}
+
+	public int getInt(int pos) {
+		checkPositionIndexes(pos, pos + 4, length);
+		return readInt(data, offset + pos);
+	}
+
+	public float getFloat(int pos) {
+		return Float.intBitsToFloat(getInt(pos));
+	}
+
+	/**
+	 * Compare the bytes of the record starting at <tt>pos</tt> with
+	 * <tt>bytes</tt> lexicographically, as unsigned bytes.
+	 * @return a negative integer, zero, or a positive integer as the bytes of
+	 * the record are less than, equal to, or greater than <tt>bytes</tt>
+	 */
+	public int compareBytes(int pos, byte[] bytes) {
+		checkPositionIndexes(pos, pos + bytes.length, length);
+		int p = offset + pos;
+		for (int i = 0; i < bytes.length; i++) {
+			int c = Integer.compare(data[p + i] & 0xff, bytes[i] & 0xff);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Copy the record to <tt>dest</tt>, starting at <tt>destPos</tt>.
+	 */
+	public void copyTo(byte[] dest, int destPos) {
+		System.arraycopy(data, offset, dest, destPos, length);
+	}
+
+	/**
+	 * @return whether the record has the same bytes as <tt>bytes</tt>
+	 */
+	public boolean contentEquals(byte[] bytes) {
+		if (bytes.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (data[offset + i] != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public byte[] toBytes() {
+		return Arrays.copyOfRange(data, offset, offset + length);
+	}
+
+	/**
+	 * @return a copy of the record, which is still valid after the view
+	 * changes
+	 */
+	public Record toRecord() {
+		return new Record(toBytes());
+	}
+
+	@Override
+	public String toString() {
+		return toRecord().toString();
+	}
+}
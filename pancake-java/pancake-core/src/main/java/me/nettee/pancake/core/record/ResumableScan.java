@@ -0,0 +1,39 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.RID;
+import me.nettee.pancake.core.model.Record;
+import me.nettee.pancake.core.model.Scan;
+
+import java.util.Optional;
+
+/**
+ * A scan over the records of a record file which starts at a position and
+ * returns at most a limited number of records, started by
+ * {@link RecordFile#scan(RID, int, int, Condition)}. When it stops, its
+ * position can be passed to a new scan to continue with the following
+ * records, without reading the records before it again.
+ * <p>
+ * Code example:
+ *
+ * <pre>
+RID position = null;
+do {
+    ResumableScan scan = recordFile.scan(position, 0, 100, condition);
+    for (Optional&lt;Record&gt; record = scan.next(); record.isPresent(); record = scan.next()) {
+        // Deal with the record ...
+    }
+    scan.close();
+    position = scan.getResumePosition().orElse(null);
+} while (position != null);
+ * </pre>
+ */
+public interface ResumableScan extends Scan<Record> {
+
+	/**
+	 * @return the position right after the last record read by this scan,
+	 * from which a new scan continues, or empty if this scan has reached the
+	 * end of the file. A scan stopped by its limit has a position even if
+	 * no more records follow.
+	 */
+	Optional<RID> getResumePosition();
+}
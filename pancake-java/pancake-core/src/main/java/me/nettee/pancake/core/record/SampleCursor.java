@@ -0,0 +1,45 @@
+package me.nettee.pancake.core.record;
+
+/**
+ * A cursor over the records in a random sample of the data pages of a record
+ * file, started by {@link RecordFile#sample(double, long)} or
+ * {@link RecordFile#samplePages(int, long)}. All the records in a sampled
+ * page are returned, and the pages in page number order, so a sample reads
+ * only the sampled pages, each once.
+ * <p>
+ * The sampling fraction is the fraction of data pages in the sample. An
+ * estimate over the whole file, such as the number of records satisfying a
+ * condition, is the value over the sample divided by the sampling fraction.
+ * <p>
+ * Code example:
+ *
+ * <pre>
+SampleCursor cursor = recordFile.sample(0.01, seed);
+int n = 0;
+while (cursor.advance()) {
+    if (condition.test(cursor.getView())) {
+        n++;
+    }
+}
+cursor.close();
+double estimate = n / cursor.getSamplingFraction();
+ * </pre>
+ */
+public interface SampleCursor extends RecordCursor {
+
+	/**
+	 * @return the number of data pages in the sample
+	 */
+	int getNumOfSampledPages();
+
+	/**
+	 * @return the number of data pages in the file when the sample is taken
+	 */
+	int getNumOfPages();
+
+	/**
+	 * @return the fraction of data pages in the sample, or 0 if the file has
+	 * no data pages
+	 */
+	double getSamplingFraction();
+}
@@ -0,0 +1,371 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.page.Page;
+import me.nettee.pancake.core.page.Pages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * The layout of slotted record page, which stores variable-length records:
+ * <pre>
+ * +--------+-----------------+------------+---------------------------+
+ * | header | slot directory  | free space |          records          |
+ * +--------+-----------------+------------+---------------------------+
+ *                  --&gt;       ^             &lt;--
+ *                      free space offset
+ * </pre>
+ * The slot directory grows forwards from the header, and records grow
+ * backwards from the end of the page. Each slot stores the offset and length
+ * of a record. A free slot has offset zero. The highest bit of the length
+ * flags the record as the stub of an overflow record (see
+ * {@link OverflowFile}), as lengths never need it.
+ * <p>
+ * When a record is deleted or shrunk, its space becomes a hole among the
+ * records. The page is compacted when a record does not fit in the free
+ * space but fits in the free space plus the holes. Compaction moves records
+ * but never changes their slot numbers, so RIDs stay stable.
+ */
+public class SlottedRecordPage extends RecordPage {
+
+	private static Logger logger = LoggerFactory.getLogger(SlottedRecordPage.class);
+
+	/*
+	 * The header fields are read and written in place on the page data, at
+	 * the following offsets.
+	 */
+	private static final int NUM_RECORDS_POS = 0;
+	private static final int NUM_SLOTS_POS = 4;
+	private static final int FREE_SPACE_OFFSET_POS = 8;
+	private static final int USED_BYTES_POS = 12; // Total length of records
+	// Note: change the value when the structure of header changes.
+	static final int HEADER_SIZE = 16;
+	static final int SLOT_SIZE = 4;
+	private static final int FREE_SLOT = 0;
+	private static final int OVERFLOW_FLAG = 0x8000;
+	private static final int LENGTH_MASK = 0x7fff;
+
+	/**
+	 * The maximum length of a record stored in slotted record pages.
+	 */
+	static final int MAX_RECORD_SIZE = Page.DATA_SIZE - HEADER_SIZE - SLOT_SIZE;
+
+	// All the slots before this hint are occupied.
+	private int freeSlotHint = 0;
+
+	private SlottedRecordPage(Page page) {
+		super(page);
+	}
+
+	static SlottedRecordPage create(Page page) {
+		SlottedRecordPage recordPage = new SlottedRecordPage(page);
+		recordPage.init();
+		return recordPage;
+	}
+
+	static SlottedRecordPage open(Page page) {
+		return new SlottedRecordPage(page);
+	}
+
+	private void init() {
+		setNumRecords(0);
+		setNumSlots(0);
+		setFreeSpaceOffset(Page.DATA_SIZE);
+		setUsedBytes(0);
+	}
+
+	@Override
+	int getNumRecords() {
+		return view.getInt(NUM_RECORDS_POS);
+	}
+
+	private void setNumRecords(int numRecords) {
+		view.putInt(NUM_RECORDS_POS, numRecords);
+	}
+
+	private int getNumSlots() {
+		return view.getInt(NUM_SLOTS_POS);
+	}
+
+	private void setNumSlots(int numSlots) {
+		view.putInt(NUM_SLOTS_POS, numSlots);
+	}
+
+	private int getFreeSpaceOffset() {
+		return view.getInt(FREE_SPACE_OFFSET_POS);
+	}
+
+	private void setFreeSpaceOffset(int freeSpaceOffset) {
+		view.putInt(FREE_SPACE_OFFSET_POS, freeSpaceOffset);
+	}
+
+	private int getUsedBytes() {
+		return view.getInt(USED_BYTES_POS);
+	}
+
+	private void setUsedBytes(int usedBytes) {
+		view.putInt(USED_BYTES_POS, usedBytes);
+	}
+
+	private int slotPos(int slotNum) {
+		return HEADER_SIZE + slotNum * SLOT_SIZE;
+	}
+
+	private int slotOffset(int slotNum) {
+		return view.getShort(slotPos(slotNum));
+	}
+
+	private int slotLength(int slotNum) {
+		return view.getShort(slotPos(slotNum) + 2) & LENGTH_MASK;
+	}
+
+	// Clears the overflow flag.
+	private void setSlot(int slotNum, int offset, int length) {
+		view.putShort(slotPos(slotNum), (short) offset);
+		view.putShort(slotPos(slotNum) + 2, (short) length);
+	}
+
+	private void setSlotOffset(int slotNum, int offset) {
+		view.putShort(slotPos(slotNum), (short) offset);
+	}
+
+	private boolean isFreeSlot(int slotNum) {
+		return slotOffset(slotNum) == FREE_SLOT;
+	}
+
+	@Override
+	void checkRecordExistence(int slotNum) {
+		if (slotNum < 0 || slotNum >= getNumSlots() || isFreeSlot(slotNum) || isTombstone(slotNum)) {
+			String msg = String.format("record %d does not exist", slotNum);
+			throw new RecordNotExistException(msg);
+		}
+	}
+
+	// Bytes between the slot directory and the records.
+	private int getContiguousFreeSpace() {
+		return getFreeSpaceOffset() - slotPos(getNumSlots());
+	}
+
+	// Bytes not occupied by the header, the slot directory or the records.
+	@Override
+	int getFreeSpace() {
+		return Page.DATA_SIZE - slotPos(getNumSlots()) - getUsedBytes();
+	}
+
+	private boolean hasFreeSlot() {
+		return getNumRecords() < getNumSlots();
+	}
+
+	/**
+	 * Find the first free slot, starting from the hint.
+	 * @return the free slot number, or <tt>numSlots</tt> if no free slots
+	 */
+	private int findFreeSlot() {
+		if (!hasFreeSlot()) {
+			return getNumSlots();
+		}
+		int slotNum = freeSlotHint;
+		while (!isFreeSlot(slotNum)) {
+			slotNum++;
+		}
+		freeSlotHint = slotNum;
+		return slotNum;
+	}
+
+	@Override
+	boolean canInsert(int length) {
+		return insertedSpace(length) <= getFreeSpace();
+	}
+
+	// A new slot is needed only if no slot is free.
+	@Override
+	int insertedSpace(int length) {
+		return hasFreeSlot() ? length : length + SLOT_SIZE;
+	}
+
+	/**
+	 * Move all the records to the end of the page, so that the holes among
+	 * records are merged into the free space. Slot numbers are kept.
+	 */
+	private void compact() {
+		int numLive = 0;
+		int[] slots = new int[getNumSlots()];
+		for (int slotNum = 0; slotNum < getNumSlots(); slotNum++) {
+			if (!isFreeSlot(slotNum)) {
+				slots[numLive++] = slotNum;
+			}
+		}
+		// Sort live slots by offset in descending order, so that each record
+		// moves towards the end of the page without overwriting others.
+		Integer[] order = new Integer[numLive];
+		for (int i = 0; i < numLive; i++) {
+			order[i] = slots[i];
+		}
+		Arrays.sort(order, (a, b) -> Integer.compare(slotOffset(b), slotOffset(a)));
+		byte[] data = page.getData();
+		int end = Page.DATA_SIZE;
+		for (int slotNum : order) {
+			int offset = slotOffset(slotNum);
+			int length = slotLength(slotNum);
+			end -= length;
+			System.arraycopy(data, offset, data, end, length);
+			setSlotOffset(slotNum, end);
+		}
+		Pages.fillDefaultBytes(data, slotPos(getNumSlots()), end);
+		setFreeSpaceOffset(end);
+		logger.debug("Compacted record page[{}]", pageNum);
+	}
+
+	/**
+	 * Reserve <tt>length</tt> bytes of space for a record, compacting the
+	 * page if necessary.
+	 * @return the offset of reserved space
+	 */
+	private int allocateSpace(int length) {
+		if (getContiguousFreeSpace() < length) {
+			compact();
+		}
+		checkState(getContiguousFreeSpace() >= length);
+		setFreeSpaceOffset(getFreeSpaceOffset() - length);
+		setUsedBytes(getUsedBytes() + length);
+		// An empty record also occupies a non-zero offset, to be
+		// distinguished from free slots.
+		return getFreeSpaceOffset();
+	}
+
+	@Override
+	int insert(byte[] src, int srcOffset, int length) {
+		checkState(canInsert(length),
+				"No space left in record page");
+		int slotNum = findFreeSlot();
+		if (slotNum == getNumSlots()) {
+			setNumSlots(getNumSlots() + 1);
+			// Mark the new slot as free before compaction may happen.
+			setSlot(slotNum, FREE_SLOT, 0);
+		}
+		int offset = allocateSpace(length);
+		System.arraycopy(src, srcOffset, page.getData(), offset, length);
+		setSlot(slotNum, offset, length);
+		setNumRecords(getNumRecords() + 1);
+		freeSlotHint = slotNum + 1;
+		return slotNum;
+	}
+
+	@Override
+	byte[] get(int slotNum) {
+		checkRecordExistence(slotNum);
+		int offset = slotOffset(slotNum);
+		return Arrays.copyOfRange(page.getData(), offset, offset + slotLength(slotNum));
+	}
+
+	@Override
+	void update(int slotNum, byte[] data) {
+		checkRecordExistence(slotNum);
+		int offset = slotOffset(slotNum);
+		int length = slotLength(slotNum);
+		if (data.length <= length) {
+			// Update in place. The rest bytes become a hole.
+			System.arraycopy(data, 0, page.getData(), offset, data.length);
+			Pages.fillDefaultBytes(page.getData(), offset + data.length, offset + length);
+			setSlot(slotNum, offset, data.length);
+			setUsedBytes(getUsedBytes() - (length - data.length));
+			return;
+		}
+		if (data.length > getFreeSpace() + length) {
+			String msg = String.format("record %d of length %d does not fit in page[%d]",
+					slotNum, data.length, pageNum);
+			throw new RecordFileException(msg);
+		}
+		// Release the old space, and then allocate new space. The slot is
+		// marked as free during the allocation, so that compaction skips it.
+		Pages.fillDefaultBytes(page.getData(), offset, offset + length);
+		setSlot(slotNum, FREE_SLOT, 0);
+		setUsedBytes(getUsedBytes() - length);
+		int newOffset = allocateSpace(data.length);
+		System.arraycopy(data, 0, page.getData(), newOffset, data.length);
+		setSlot(slotNum, newOffset, data.length);
+	}
+
+	@Override
+	void delete(int slotNum) {
+		checkRecordExistence(slotNum);
+		int offset = slotOffset(slotNum);
+		int length = slotLength(slotNum);
+		// Fill the record space with default bytes for ease of debugging.
+		Pages.fillDefaultBytes(page.getData(), offset, offset + length);
+		setSlot(slotNum, FREE_SLOT, 0);
+		setUsedBytes(getUsedBytes() - length);
+		setNumRecords(getNumRecords() - 1);
+		// Trailing free slots are removed from the slot directory.
+		while (getNumSlots() > 0 && isFreeSlot(getNumSlots() - 1)) {
+			setNumSlots(getNumSlots() - 1);
+		}
+		freeSlotHint = Math.min(freeSlotHint, slotNum);
+	}
+
+	@Override
+	boolean isOverflow(int slotNum) {
+		// A free slot is never flagged.
+		return slotNum >= 0 && slotNum < getNumSlots()
+				&& (view.getShort(slotPos(slotNum) + 2) & OVERFLOW_FLAG) != 0;
+	}
+
+	@Override
+	void setOverflow(int slotNum, boolean overflow) {
+		checkRecordExistence(slotNum);
+		int length = slotLength(slotNum);
+		view.putShort(slotPos(slotNum) + 2, (short) (overflow ? length | OVERFLOW_FLAG : length));
+	}
+
+	@Override
+	public boolean isFull() {
+		return !canInsert(0);
+	}
+
+	@Override
+	public String dump() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("+----------------------------------------------------------------------------+\n");
+		sb.append(String.format("Page %d", pageNum));
+		sb.append("\n");
+		sb.append(String.format("number of records: %d", getNumRecords()));
+		sb.append("\n");
+		sb.append(String.format("number of slots: %d", getNumSlots()));
+		sb.append("\n");
+		sb.append(String.format("free space offset: %d", getFreeSpaceOffset()));
+		sb.append("\n");
+		sb.append(String.format("used bytes: %d", getUsedBytes()));
+		sb.append("\n");
+		sb.append("Slots:\n");
+		for (int slotNum = 0; slotNum < getNumSlots(); slotNum++) {
+			if (isFreeSlot(slotNum)) {
+				sb.append(String.format("%3d: free\n", slotNum));
+			} else {
+				sb.append(String.format("%3d: offset %d, length %d%s\n",
+						slotNum, slotOffset(slotNum), slotLength(slotNum),
+						isOverflow(slotNum) ? ", overflow" : ""));
+			}
+		}
+		sb.append("+----------------------------------------------------------------------------+\n");
+		return sb.toString();
+	}
+
+	@Override
+	int nextSlot(int fromSlotNum) {
+		int numSlots = getNumSlots();
+		for (int slotNum = fromSlotNum; slotNum < numSlots; slotNum++) {
+			if (!isFreeSlot(slotNum) && !isTombstone(slotNum)) {
+				return slotNum;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	void viewRecord(int slotNum, RecordView view) {
+		view.set(pageNum, slotNum, page.getData(), slotOffset(slotNum), slotLength(slotNum));
+	}
+}
@@ -0,0 +1,167 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.Magic;
+import me.nettee.pancake.core.page.Page;
+import me.nettee.pancake.core.page.PagedFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The tombstone file of a record file keeps the records deleted in the
+ * append-only mode, so that deleting a record never rewrites its data page,
+ * which may be sealed. A deleted record stays in its slot, and the tombstone
+ * of the slot is appended to the file.
+ * <p>
+ * The tombstones are stored in a separate paged file next to the record
+ * file, named with suffix <tt>.tombstones</tt>. The first page is the header
+ * page, which stores the number of tombstones. The rest pages store the
+ * tombstones in the order they are added, 8 bytes each:
+ * <ul>
+ * <li>the page number of the record (4 bytes)</li>
+ * <li>the slot number of the record (4 bytes)</li>
+ * </ul>
+ * Only the last page and the header page are written by an addition. The
+ * tombstones are also kept in memory, as a bitset of slots for each data
+ * page, which is shared with the record page of the data page.
+ */
+class TombstoneFile {
+
+	private static Logger logger = LoggerFactory.getLogger(TombstoneFile.class);
+
+	private static final Magic MAGIC = new Magic("TOMBSTON");
+	private static final String SUFFIX = ".tombstones";
+
+	private static final int NUM_ENTRIES_POS = 8;
+	private static final int ENTRY_SIZE = 8;
+	private static final int ENTRIES_PER_PAGE = Page.DATA_SIZE / ENTRY_SIZE;
+
+	private final PagedFile pagedFile;
+	private final Map<Integer, BitSet> tombstones = new HashMap<>();
+	private int numEntries;
+
+	private TombstoneFile(PagedFile pagedFile) {
+		this.pagedFile = pagedFile;
+	}
+
+	static Path pathOf(Path dataFile) {
+		return dataFile.resolveSibling(dataFile.getFileName().toString() + SUFFIX);
+	}
+
+	static boolean exists(Path dataFile) {
+		return Files.exists(pathOf(dataFile));
+	}
+
+	/**
+	 * Create the tombstone file of <tt>dataFile</tt>, with no tombstones.
+	 */
+	static TombstoneFile create(Path dataFile) {
+		Path path = pathOf(dataFile);
+		logger.info("Creating tombstone file {}", path.toString());
+		PagedFile pagedFile = PagedFile.create(path);
+		Page headerPage = pagedFile.allocatePage();
+		pagedFile.markDirty(headerPage);
+		ByteBuffer out = ByteBuffer.wrap(headerPage.getData());
+		out.put(MAGIC.getBytes());
+		out.putInt(0);
+		pagedFile.unpinPage(headerPage);
+		return new TombstoneFile(pagedFile);
+	}
+
+	static TombstoneFile open(Path dataFile) {
+		Path path = pathOf(dataFile);
+		logger.info("Opening tombstone file {}", path.toString());
+		PagedFile pagedFile = PagedFile.open(path);
+		TombstoneFile file = new TombstoneFile(pagedFile);
+		Page headerPage = pagedFile.getFirstPage();
+		try {
+			ByteBuffer in = ByteBuffer.wrap(headerPage.getData());
+			MAGIC.check(in);
+			file.numEntries = in.getInt();
+		} finally {
+			pagedFile.unpinPage(headerPage);
+		}
+		for (int i = 0; i * ENTRIES_PER_PAGE < file.numEntries; i++) {
+			Page page = pagedFile.getPage(1 + i);
+			ByteBuffer entries = ByteBuffer.wrap(page.getData());
+			int n = Math.min(ENTRIES_PER_PAGE, file.numEntries - i * ENTRIES_PER_PAGE);
+			for (int j = 0; j < n; j++) {
+				int pageNum = entries.getInt();
+				int slotNum = entries.getInt();
+				file.tombstones.computeIfAbsent(pageNum, k -> new BitSet()).set(slotNum);
+			}
+			pagedFile.unpinPage(page);
+		}
+		logger.info("Loaded {} tombstones", file.numEntries);
+		return file;
+	}
+
+	/**
+	 * Delete the tombstone file of <tt>dataFile</tt>, if any.
+	 */
+	static void destroy(Path dataFile) {
+		try {
+			if (Files.deleteIfExists(pathOf(dataFile))) {
+				logger.info("Deleted tombstone file of {}", dataFile.toString());
+			}
+		} catch (IOException e) {
+			throw new RecordFileException(e);
+		}
+	}
+
+	void close() {
+		pagedFile.forceAllPages();
+		pagedFile.close();
+	}
+
+	/**
+	 * @return the slots of the deleted records of the data page, or null if
+	 * none
+	 */
+	BitSet get(int pageNum) {
+		return tombstones.get(pageNum);
+	}
+
+	/**
+	 * @return the slots of the deleted records of each data page
+	 */
+	Map<Integer, BitSet> getAll() {
+		return Collections.unmodifiableMap(tombstones);
+	}
+
+	/**
+	 * Add the tombstone of a record, which must not have one yet.
+	 * @return the slots of the deleted records of the data page, including
+	 * the record
+	 */
+	BitSet add(int pageNum, int slotNum) {
+		Page page;
+		if (numEntries % ENTRIES_PER_PAGE == 0) {
+			page = pagedFile.allocatePage();
+		} else {
+			page = pagedFile.getPage(1 + numEntries / ENTRIES_PER_PAGE);
+		}
+		pagedFile.markDirty(page);
+		ByteBuffer out = ByteBuffer.wrap(page.getData());
+		out.position(numEntries % ENTRIES_PER_PAGE * ENTRY_SIZE);
+		out.putInt(pageNum);
+		out.putInt(slotNum);
+		pagedFile.unpinPage(page);
+		numEntries++;
+		Page headerPage = pagedFile.getFirstPage();
+		pagedFile.markDirty(headerPage);
+		ByteBuffer.wrap(headerPage.getData()).putInt(NUM_ENTRIES_POS, numEntries);
+		pagedFile.unpinPage(headerPage);
+		BitSet slots = tombstones.computeIfAbsent(pageNum, k -> new BitSet());
+		slots.set(slotNum);
+		return slots;
+	}
+}
@@ -0,0 +1,312 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.AttrType;
+import me.nettee.pancake.core.model.Magic;
+import me.nettee.pancake.core.page.Page;
+import me.nettee.pancake.core.page.PagedFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static me.nettee.pancake.core.record.ByteArrays.readInt;
+import static me.nettee.pancake.core.record.ByteArrays.writeInt;
+
+/**
+ * The zone map of a record file keeps a summary of each data page: the
+ * number of records in the page, and the minimum and maximum values of some
+ * declared attributes over these records. A scan with a {@link Condition} on
+ * a declared attribute skips the pages whose summaries show that no records
+ * can satisfy the condition, without reading them.
+ * <p>
+ * The summaries are stored in a separate paged file next to the record file,
+ * named with suffix <tt>.zonemap</tt>. The first page is the header page,
+ * which stores the declared attributes. Each of the rest pages stores the
+ * summaries of <tt>entriesPerPage</tt> consecutive data pages, as fixed-size
+ * entries. An entry consists of:
+ * <ul>
+ * <li>the number of records in the data page (4 bytes)</li>
+ * <li>for each declared attribute, a flag of whether any record has the
+ * attribute (1 byte), the minimum value and the maximum value, stored as
+ * in records</li>
+ * </ul>
+ * The summaries are conservative: deleting or updating a record does not
+ * narrow the minimum and maximum values, until the page becomes empty.
+ */
+class ZoneMap {
+
+	private static Logger logger = LoggerFactory.getLogger(ZoneMap.class);
+
+	private static final Magic MAGIC = new Magic("ZONE-MAP");
+	private static final String SUFFIX = ".zonemap";
+
+	private static final int NUM_RECORDS_POS = 0;
+
+	private final PagedFile pagedFile;
+	private final int[] attrOffsets;
+	private final AttrType[] attrTypes;
+	// The position of the flag of each attribute in an entry.
+	private final int[] attrPositions;
+	private final int entrySize;
+	private final int entriesPerPage;
+
+	private ZoneMap(PagedFile pagedFile, int[] attrOffsets, AttrType[] attrTypes) {
+		this.pagedFile = pagedFile;
+		this.attrOffsets = attrOffsets;
+		this.attrTypes = attrTypes;
+		attrPositions = new int[attrOffsets.length];
+		int size = 4;
+		for (int i = 0; i < attrOffsets.length; i++) {
+			attrPositions[i] = size;
+			size += 1 + 2 * attrTypes[i].getLength();
+		}
+		entrySize = size;
+		entriesPerPage = Page.DATA_SIZE / entrySize;
+		checkArgument(entriesPerPage > 0, "attributes too long for zone map");
+	}
+
+	static Path pathOf(Path dataFile) {
+		return dataFile.resolveSibling(dataFile.getFileName().toString() + SUFFIX);
+	}
+
+	static boolean exists(Path dataFile) {
+		return Files.exists(pathOf(dataFile));
+	}
+
+	/**
+	 * Create the zone map of <tt>dataFile</tt>, with no summaries.
+	 */
+	static ZoneMap create(Path dataFile, int[] attrOffsets, AttrType[] attrTypes) {
+		Path path = pathOf(dataFile);
+		logger.info("Creating zone map {}", path.toString());
+		PagedFile pagedFile = PagedFile.create(path);
+		ZoneMap zoneMap = new ZoneMap(pagedFile, attrOffsets, attrTypes);
+		Page headerPage = pagedFile.allocatePage();
+		pagedFile.markDirty(headerPage);
+		zoneMap.writeHeader(headerPage.getData());
+		pagedFile.unpinPage(headerPage);
+		return zoneMap;
+	}
+
+	static ZoneMap open(Path dataFile) {
+		Path path = pathOf(dataFile);
+		logger.info("Opening zone map {}", path.toString());
+		PagedFile pagedFile = PagedFile.open(path);
+		Page headerPage = pagedFile.getFirstPage();
+		try {
+			ByteBuffer in = ByteBuffer.wrap(headerPage.getData());
+			MAGIC.check(in);
+			int numAttrs = in.getInt();
+			int[] attrOffsets = new int[numAttrs];
+			AttrType[] attrTypes = new AttrType[numAttrs];
+			for (int i = 0; i < numAttrs; i++) {
+				attrOffsets[i] = in.getInt();
+				attrTypes[i] = AttrType.readObject(in);
+			}
+			return new ZoneMap(pagedFile, attrOffsets, attrTypes);
+		} finally {
+			pagedFile.unpinPage(headerPage);
+		}
+	}
+
+	/**
+	 * Delete the zone map of <tt>dataFile</tt>, if any.
+	 */
+	static void destroy(Path dataFile) {
+		try {
+			if (Files.deleteIfExists(pathOf(dataFile))) {
+				logger.info("Deleted zone map of {}", dataFile.toString());
+			}
+		} catch (IOException e) {
+			throw new RecordFileException(e);
+		}
+	}
+
+	private void writeHeader(byte[] dest) {
+		// The magic, the number of attributes, and the offset (4 bytes) and
+		// the type (8 bytes) of each attribute.
+		int size = MAGIC.getBytes().length + 4 + attrOffsets.length * (4 + 8);
+		checkArgument(size <= dest.length, "too many attributes for zone map");
+		ByteBuffer out = ByteBuffer.wrap(dest);
+		out.put(MAGIC.getBytes());
+		out.putInt(attrOffsets.length);
+		for (int i = 0; i < attrOffsets.length; i++) {
+			out.putInt(attrOffsets[i]);
+			attrTypes[i].writeObject(out);
+		}
+	}
+
+	void close() {
+		pagedFile.forceAllPages();
+		pagedFile.close();
+	}
+
+	int getNumOfAttrs() {
+		return attrOffsets.length;
+	}
+
+	int getAttrOffset(int i) {
+		return attrOffsets[i];
+	}
+
+	AttrType getAttrType(int i) {
+		return attrTypes[i];
+	}
+
+	/**
+	 * @return the index of the declared attribute which <tt>condition</tt>
+	 * is on, or -1 if not declared
+	 */
+	int indexOf(Condition condition) {
+		for (int i = 0; i < attrOffsets.length; i++) {
+			if (attrOffsets[i] == condition.getAttrOffset()
+					&& attrTypes[i].equals(condition.getAttrType())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int summaryPageNum(int dataPageNum) {
+		return 1 + dataPageNum / entriesPerPage;
+	}
+
+	private int entryPos(int dataPageNum) {
+		return dataPageNum % entriesPerPage * entrySize;
+	}
+
+	/**
+	 * Pin the summary page holding the entry of <tt>dataPageNum</tt> for
+	 * writing, allocating summary pages with empty entries if needed.
+	 */
+	private Page pinForWrite(int dataPageNum) {
+		int pageNum = summaryPageNum(dataPageNum);
+		while (pagedFile.getNumOfPages() <= pageNum) {
+			Page page = pagedFile.allocatePage();
+			pagedFile.markDirty(page);
+			Arrays.fill(page.getData(), (byte) 0);
+			pagedFile.unpinPage(page);
+		}
+		Page page = pagedFile.getPage(pageNum);
+		pagedFile.markDirty(page);
+		return page;
+	}
+
+	/**
+	 * Reset the entry of a data page to that of an empty page.
+	 */
+	void reset(int dataPageNum) {
+		Page page = pinForWrite(dataPageNum);
+		int pos = entryPos(dataPageNum);
+		Arrays.fill(page.getData(), pos, pos + entrySize, (byte) 0);
+		pagedFile.unpinPage(page);
+	}
+
+	/**
+	 * Update the entry of a data page after a record is inserted into it.
+	 */
+	void add(int dataPageNum, byte[] src, int offset, int length) {
+		Page page = pinForWrite(dataPageNum);
+		byte[] data = page.getData();
+		int pos = entryPos(dataPageNum);
+		writeInt(data, pos + NUM_RECORDS_POS, readInt(data, pos + NUM_RECORDS_POS) + 1);
+		widen(data, pos, src, offset, length);
+		pagedFile.unpinPage(page);
+	}
+
+	/**
+	 * Update the entry of a data page after a record in it is updated.
+	 */
+	void update(int dataPageNum, byte[] src, int offset, int length) {
+		Page page = pinForWrite(dataPageNum);
+		widen(page.getData(), entryPos(dataPageNum), src, offset, length);
+		pagedFile.unpinPage(page);
+	}
+
+	/**
+	 * Update the entry of a data page after a record is deleted from it.
+	 */
+	void remove(int dataPageNum) {
+		Page page = pinForWrite(dataPageNum);
+		byte[] data = page.getData();
+		int pos = entryPos(dataPageNum);
+		int numRecords = readInt(data, pos + NUM_RECORDS_POS) - 1;
+		if (numRecords <= 0) {
+			Arrays.fill(data, pos, pos + entrySize, (byte) 0);
+		} else {
+			writeInt(data, pos + NUM_RECORDS_POS, numRecords);
+		}
+		pagedFile.unpinPage(page);
+	}
+
+	private void widen(byte[] data, int pos, byte[] src, int offset, int length) {
+		for (int i = 0; i < attrOffsets.length; i++) {
+			AttrType attrType = attrTypes[i];
+			int len = attrType.getLength();
+			if (length < attrOffsets[i] + len) {
+				continue;
+			}
+			int valuePos = offset + attrOffsets[i];
+			int flagPos = pos + attrPositions[i];
+			int minPos = flagPos + 1;
+			int maxPos = minPos + len;
+			if (data[flagPos] == 0) {
+				data[flagPos] = 1;
+				System.arraycopy(src, valuePos, data, minPos, len);
+				System.arraycopy(src, valuePos, data, maxPos, len);
+				continue;
+			}
+			if (Condition.compare(attrType, src, valuePos, data, minPos) < 0) {
+				System.arraycopy(src, valuePos, data, minPos, len);
+			}
+			if (Condition.compare(attrType, src, valuePos, data, maxPos) > 0) {
+				System.arraycopy(src, valuePos, data, maxPos, len);
+			}
+		}
+	}
+
+	/**
+	 * Check whether any record in a data page may satisfy
+	 * <tt>condition</tt>, which is on the attribute <tt>attrIndex</tt>.
+	 *
+	 * @return false if no records in the data page can satisfy the condition
+	 */
+	boolean mayMatch(int dataPageNum, Condition condition, int attrIndex) {
+		int pageNum = summaryPageNum(dataPageNum);
+		if (pageNum >= pagedFile.getNumOfPages()) {
+			// No summary for the data page.
+			return true;
+		}
+		Page page = pagedFile.getPage(pageNum);
+		try {
+			byte[] data = page.getData();
+			int flagPos = entryPos(dataPageNum) + attrPositions[attrIndex];
+			if (data[flagPos] == 0) {
+				// No records have the attribute.
+				return false;
+			}
+			AttrType attrType = attrTypes[attrIndex];
+			int minPos = flagPos + 1;
+			int maxPos = minPos + attrType.getLength();
+			byte[] value = condition.getValueBytes();
+			int cMin = Condition.compare(attrType, data, minPos, value, 0);
+			int cMax = Condition.compare(attrType, data, maxPos, value, 0);
+			switch (condition.getOp()) {
+				case EQ: return cMin <= 0 && cMax >= 0;
+				case LT: return cMin < 0;
+				case GT: return cMax > 0;
+				case LE: return cMin <= 0;
+				case GE: return cMax >= 0;
+				case NE: return cMin != 0 || cMax != 0;
+				default: throw new AssertionError();
+			}
+		} finally {
+			pagedFile.unpinPage(page);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package me.nettee.pancake.core.page;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The buffer pool recycles frames, so getting pages allocates nothing once
+ * the buffer is warmed up, whether the page is in buffer or not.
+ */
+public class PagedFileAllocationTest {
+
+	private static final Path path = Paths.get("/tmp/h.db");
+	// More than 128, so that boxed page numbers would not be cached.
+	private static final int N = 5 * PageBuffer.BUFFER_SIZE;
+	private static final int ROUNDS = 20000;
+
+	private PagedFile pagedFile;
+	private com.sun.management.ThreadMXBean threadMXBean;
+
+	@Before
+	public void setUp() throws IOException {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		threadMXBean = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+		threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+		Files.deleteIfExists(path);
+		pagedFile = PagedFile.create(path);
+		for (int i = 0; i < N; i++) {
+			Page page = pagedFile.allocatePage();
+			pagedFile.unpinPage(page);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		if (pagedFile != null) {
+			pagedFile.close();
+		}
+	}
+
+	private long allocatedBytes() {
+		return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private void getAndUnpin(int pageNum, boolean dirty) {
+		Page page = pagedFile.getPage(pageNum);
+		if (dirty) {
+			pagedFile.markDirty(page);
+		}
+		pagedFile.unpinPage(page);
+	}
+
+	/**
+	 * Getting a page in buffer allocates nothing.
+	 */
+	@Test
+	public void testGetPage_hit() {
+		// Pages [N - BUFFER_SIZE, N) are in buffer.
+		int base = N - PageBuffer.BUFFER_SIZE;
+		for (int i = 0; i < ROUNDS; i++) {
+			getAndUnpin(base + i % PageBuffer.BUFFER_SIZE, false);
+		}
+		long before = allocatedBytes();
+		for (int i = 0; i < ROUNDS; i++) {
+			getAndUnpin(base + i % PageBuffer.BUFFER_SIZE, false);
+		}
+		long allocated = allocatedBytes() - before;
+		assertEquals(0, allocated / ROUNDS);
+	}
+
+	/**
+	 * Getting a page not in buffer allocates nothing, even if a dirty page
+	 * is written back to make room for it.
+	 */
+	@Test
+	public void testGetPage_miss() {
+		// Cycling through N pages in LRU order, every page is a miss.
+		for (int i = 0; i < ROUNDS; i++) {
+			getAndUnpin(i % N, i % 2 == 0);
+		}
+		long before = allocatedBytes();
+		for (int i = 0; i < ROUNDS; i++) {
+			getAndUnpin(i % N, i % 2 == 0);
+		}
+		long allocated = allocatedBytes() - before;
+		assertEquals(0, allocated / ROUNDS);
+	}
+}
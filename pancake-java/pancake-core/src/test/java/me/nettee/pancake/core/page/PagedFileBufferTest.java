@@ -9,8 +9,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import static me.nettee.pancake.core.page.PagedFileTestUtils.*;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.fail;
+import static org.junit.Assert.*;
 
 public class PagedFileBufferTest {
 
@@ -179,6 +178,41 @@ public class PagedFileBufferTest {
 		pagedFile.unpinPage(page);
 	}
 
+	/**
+	 * The attachment of a page is kept while the page stays in the buffer,
+	 * even after it is unpinned.
+	 */
+	@Test
+	public void testAttachment_keptInBuffer() {
+		Page page = pagedFile.allocatePage();
+		Object attachment = new Object();
+		page.setAttachment(attachment);
+		pagedFile.unpinPage(page);
+		Page page2 = pagedFile.getPage(page.num);
+		assertSame(attachment, page2.getAttachment());
+		pagedFile.unpinPage(page2);
+	}
+
+	/**
+	 * The attachment of a page is dropped when the page is removed from the
+	 * buffer, so the frame never carries it to another page.
+	 */
+	@Test
+	public void testAttachment_droppedOnRemoval() {
+		Page page = pagedFile.allocatePage();
+		int pageNum = page.num;
+		page.setAttachment(new Object());
+		pagedFile.unpinPage(page);
+		for (int i = 0; i < PageBuffer.BUFFER_SIZE; i++) {
+			Page other = pagedFile.allocatePage();
+			assertNull(other.getAttachment());
+			pagedFile.unpinPage(other);
+		}
+		page = pagedFile.getPage(pageNum);
+		assertNull(page.getAttachment());
+		pagedFile.unpinPage(page);
+	}
+
 	/**
 	 * All dirty (unpinned) pages are written back to disk when closing the
 	 * paged file.
@@ -11,8 +11,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Deque;
+import java.util.List;
 import java.util.stream.Collectors;
 
 import static me.nettee.pancake.core.page.PagedFileTestUtils.*;
@@ -250,6 +252,34 @@ public class PagedFilePageTest {
 		pagedFile.getLastPage();
 	}
 
+	/**
+	 * Iterating with <tt>nextPageNum</tt> visits all the pages in order,
+	 * omitting disposed pages.
+	 */
+	@Test
+	public void testNextPageNum() {
+		int N = allocatePages(pagedFile);
+		Deque<Integer> disposedPageNums = disposePages(pagedFile, N);
+		List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < N; i++) {
+			if (!disposedPageNums.contains(i)) {
+				expected.add(i);
+			}
+		}
+		List<Integer> actual = new ArrayList<>();
+		for (int i = pagedFile.nextPageNum(0); i >= 0; i = pagedFile.nextPageNum(i + 1)) {
+			actual.add(i);
+		}
+		assertEquals(expected, actual);
+		assertEquals(-1, pagedFile.nextPageNum(N));
+		unpinPages(pagedFile, N, disposedPageNums);
+	}
+
+	@Test
+	public void testNextPageNum_emptyPagedFile() {
+		assertEquals(-1, pagedFile.nextPageNum(0));
+	}
+
 	/**
 	 * The pageNum of the previous page must be one less than the current
 	 * pageNum.
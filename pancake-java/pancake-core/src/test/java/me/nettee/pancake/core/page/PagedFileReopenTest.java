@@ -109,6 +109,31 @@ public class PagedFileReopenTest {
 		}
 	}
 
+	/**
+	 * The disposed pages at the end are removed from the file. The rest
+	 * disposed pages are still reallocated in the LIFO order after re-open.
+	 */
+	@Test
+	public void testTruncateDisposedPages() throws IOException {
+		allocatePages(pagedFile, 5);
+		unpinPages(pagedFile, 5);
+		pagedFile.disposePage(3);
+		pagedFile.disposePage(4);
+		pagedFile.disposePage(1);
+		assertEquals(2, pagedFile.truncateDisposedPages());
+		assertEquals(0, pagedFile.truncateDisposedPages());
+		assertEquals(3, pagedFile.getNumOfPages());
+		pagedFile.disposePage(2);
+		reopen();
+		assertEquals(3 * Page.PAGE_SIZE, Files.size(path));
+		assertEquals(3, pagedFile.getNumOfPages());
+		for (int expectedPageNum : new int[]{2, 1, 3}) {
+			Page page = pagedFile.allocatePage();
+			assertEquals(expectedPageNum, page.num);
+			pagedFile.unpinPage(page);
+		}
+	}
+
 	// The pageNums are restored after re-open.
 	@Test
 	public void testGetPage() {
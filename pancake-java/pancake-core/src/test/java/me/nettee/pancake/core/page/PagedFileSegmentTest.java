@@ -0,0 +1,148 @@
+package me.nettee.pancake.core.page;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import static me.nettee.pancake.core.page.PagedFileTestUtils.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PagedFileSegmentTest {
+
+	private static final int PAGES_PER_SEGMENT = 4;
+
+	private static final List<Path> directories = Arrays.asList(
+			Paths.get("/tmp/pancake-seg0"), Paths.get("/tmp/pancake-seg1"));
+	private static final SegmentLayout layout =
+			SegmentLayout.of("f.db", directories, PAGES_PER_SEGMENT);
+
+	private PagedFile pagedFile;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setUp() throws IOException {
+		for (Path directory : directories) {
+			Files.createDirectories(directory);
+		}
+		for (int s = 0; s < 100; s++) {
+			Files.deleteIfExists(layout.segmentPath(s));
+		}
+		pagedFile = PagedFile.create(layout);
+	}
+
+	@After
+	public void tearDown() {
+		pagedFile.close();
+	}
+
+	private void reopen() {
+		pagedFile.close();
+		pagedFile = PagedFile.open(layout);
+	}
+
+	/**
+	 * Pages are stored in segment files striped across the directories. Each
+	 * segment holds at most <tt>pagesPerSegment</tt> pages.
+	 */
+	@Test
+	public void testSegmentFiles() throws IOException {
+		int N = 2 * PAGES_PER_SEGMENT + 1;
+		allocatePages(pagedFile, N);
+		unpinPages(pagedFile, N);
+		for (int s = 0; s < 3; s++) {
+			Path segmentPath = layout.segmentPath(s);
+			assertEquals(directories.get(s % 2), segmentPath.getParent());
+			assertTrue(Files.exists(segmentPath));
+		}
+		assertFalse(Files.exists(layout.segmentPath(3)));
+		assertEquals(PAGES_PER_SEGMENT * Page.PAGE_SIZE, Files.size(layout.segmentPath(0)));
+		assertEquals(Page.PAGE_SIZE, Files.size(layout.segmentPath(2)));
+	}
+
+	/**
+	 * The number of pages is restored after re-open.
+	 */
+	@Test
+	public void testReopen() {
+		int N = allocatePages(pagedFile);
+		unpinPages(pagedFile, N);
+		reopen();
+		assertEquals(N, pagedFile.getNumOfPages());
+	}
+
+	/**
+	 * The contents of pages across segments are restored after re-open.
+	 */
+	@Test
+	public void testGetPage() {
+		String str0 = randomString();
+		int N = allocatePages(pagedFile);
+		fillPages(pagedFile, str0, N);
+		unpinPages(pagedFile, N);
+		reopen();
+		for (int pageNum = 0; pageNum < N; pageNum++) {
+			Page page = pagedFile.getPage(pageNum);
+			String expected = str0 + pageNum;
+			assertEquals(expected, getStringData(page, expected.length()));
+		}
+		unpinPages(pagedFile, N);
+	}
+
+	/**
+	 * The disposed order of pages across segments are restored after re-open.
+	 */
+	@Test
+	public void testReallocateDisposedPage() {
+		int N = allocatePages(pagedFile);
+		Deque<Integer> disposedPageNums = disposePages(pagedFile, N);
+		unpinPages(pagedFile, N, disposedPageNums);
+		reopen();
+		while (!disposedPageNums.isEmpty()) {
+			Page page = pagedFile.allocatePage();
+			assertEquals((int) disposedPageNums.pop(), page.num);
+			pagedFile.unpinPage(page);
+		}
+	}
+
+	/**
+	 * Truncating the disposed pages at the end deletes the segments left
+	 * with no pages.
+	 */
+	@Test
+	public void testTruncateDisposedPages() throws IOException {
+		int N = 2 * PAGES_PER_SEGMENT + 1;
+		allocatePages(pagedFile, N);
+		unpinPages(pagedFile, N);
+		for (int pageNum = N - 1; pageNum > PAGES_PER_SEGMENT; pageNum--) {
+			pagedFile.disposePage(pageNum);
+		}
+		assertEquals(N - PAGES_PER_SEGMENT - 1, pagedFile.truncateDisposedPages());
+		assertFalse(Files.exists(layout.segmentPath(2)));
+		assertEquals(Page.PAGE_SIZE, Files.size(layout.segmentPath(1)));
+		reopen();
+		assertEquals(PAGES_PER_SEGMENT + 1, pagedFile.getNumOfPages());
+	}
+
+	/**
+	 * A segmented paged file cannot be created more than once.
+	 */
+	@Test
+	public void testCreate_createTwice() {
+		thrown.expect(IllegalArgumentException.class);
+		PagedFile.create(layout);
+	}
+}
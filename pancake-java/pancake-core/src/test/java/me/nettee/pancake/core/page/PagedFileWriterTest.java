@@ -0,0 +1,110 @@
+package me.nettee.pancake.core.page;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static me.nettee.pancake.core.page.PagedFileTestUtils.*;
+import static org.junit.Assert.assertEquals;
+
+public class PagedFileWriterTest {
+
+	private static final Path path = Paths.get("/tmp/w.db");
+	private PagedFile pagedFile;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	@After
+	public void tearDown() {
+		if (pagedFile != null) {
+			pagedFile.close();
+		}
+	}
+
+	private void writePages(int N) {
+		PagedFileWriter writer = PagedFileWriter.create(path);
+		for (int i = 0; i < N; i++) {
+			Page page = writer.appendPage();
+			assertEquals(i, page.num);
+			putStringData(page, "page-" + i);
+		}
+		assertEquals(N, writer.getNumOfPages());
+		writer.close();
+	}
+
+	private void checkPages(int N) {
+		pagedFile = PagedFile.open(path);
+		assertEquals(N, pagedFile.getNumOfPages());
+		for (int i = 0; i < N; i++) {
+			Page page = pagedFile.getPage(i);
+			String expected = "page-" + i;
+			assertEquals(expected, getStringData(page, expected.length()));
+			pagedFile.unpinPage(page);
+		}
+	}
+
+	/**
+	 * Pages written sequentially can be read by <tt>PagedFile</tt>, whether
+	 * or not the last chunk is full.
+	 */
+	@Test
+	public void testAppendPage() {
+		int N = 2 * PagedFileWriter.CHUNK_PAGES + 5;
+		writePages(N);
+		checkPages(N);
+	}
+
+	@Test
+	public void testAppendPage_fullChunks() {
+		int N = 2 * PagedFileWriter.CHUNK_PAGES;
+		writePages(N);
+		checkPages(N);
+	}
+
+	@Test
+	public void testAppendPage_noPages() {
+		writePages(0);
+		assertEquals(0, PagedFile.open(path).getNumOfPages());
+	}
+
+	/**
+	 * A file written sequentially can be modified as usual.
+	 */
+	@Test
+	public void testAllocateAfterWriting() {
+		int N = PagedFileWriter.CHUNK_PAGES + 1;
+		writePages(N);
+		pagedFile = PagedFile.open(path);
+		Page page = pagedFile.allocatePage();
+		assertEquals(N, page.num);
+		pagedFile.unpinPage(page);
+	}
+
+	@Test
+	public void testCreate_fileExists() throws IOException {
+		Files.createFile(path);
+		thrown.expect(IllegalArgumentException.class);
+		PagedFileWriter.create(path);
+	}
+
+	@Test
+	public void testAppendPage_closed() {
+		PagedFileWriter writer = PagedFileWriter.create(path);
+		writer.close();
+		thrown.expect(IllegalStateException.class);
+		writer.appendPage();
+	}
+}
@@ -0,0 +1,107 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConditionTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	/**
+	 * A view of a record holding an int, a float and a 4-byte string, placed
+	 * in the middle of a larger array as on a page.
+	 */
+	private static RecordView view(int i, float f, String s) {
+		byte[] page = new byte[32];
+		ByteBuffer.wrap(page, 5, 12).putInt(i).putFloat(f).put(s.getBytes(StandardCharsets.US_ASCII));
+		RecordView view = new RecordView();
+		view.set(1, 0, page, 5, 12);
+		return view;
+	}
+
+	private static boolean test(AttrType attrType, int offset, CompOp op, Attr value, RecordView view) {
+		return Condition.of(offset, attrType, op, value).test(view);
+	}
+
+	@Test
+	public void testCompOp() {
+		assertTrue(CompOp.EQ.test(0));
+		assertFalse(CompOp.EQ.test(1));
+		assertTrue(CompOp.LT.test(-1));
+		assertFalse(CompOp.LT.test(0));
+		assertTrue(CompOp.GT.test(1));
+		assertFalse(CompOp.GT.test(0));
+		assertTrue(CompOp.LE.test(0));
+		assertFalse(CompOp.LE.test(1));
+		assertTrue(CompOp.GE.test(0));
+		assertFalse(CompOp.GE.test(-1));
+		assertTrue(CompOp.NE.test(-1));
+		assertFalse(CompOp.NE.test(0));
+	}
+
+	@Test
+	public void testInt() {
+		RecordView view = view(-42, 0f, "abcd");
+		assertTrue(test(AttrType.INT, 0, CompOp.EQ, new IntAttr(-42), view));
+		assertTrue(test(AttrType.INT, 0, CompOp.LT, new IntAttr(1), view));
+		assertFalse(test(AttrType.INT, 0, CompOp.GT, new IntAttr(1), view));
+		assertTrue(test(AttrType.INT, 0, CompOp.GE, new IntAttr(Integer.MIN_VALUE), view));
+		assertTrue(test(AttrType.INT, 0, CompOp.NE, new IntAttr(42), view));
+	}
+
+	@Test
+	public void testFloat() {
+		RecordView view = view(0, -1.5f, "abcd");
+		assertTrue(test(AttrType.FLOAT, 4, CompOp.EQ, new FloatAttr(-1.5f), view));
+		assertTrue(test(AttrType.FLOAT, 4, CompOp.LT, new FloatAttr(0f), view));
+		assertTrue(test(AttrType.FLOAT, 4, CompOp.GT, new FloatAttr(-2f), view));
+		assertFalse(test(AttrType.FLOAT, 4, CompOp.LE, new FloatAttr(-3f), view));
+	}
+
+	@Test
+	public void testString() {
+		RecordView view = view(0, 0f, "abcd");
+		AttrType type = AttrType.string(4);
+		assertTrue(test(type, 8, CompOp.EQ, new StringAttr("abcd"), view));
+		assertTrue(test(type, 8, CompOp.LT, new StringAttr("abce"), view));
+		assertTrue(test(type, 8, CompOp.GT, new StringAttr("abcc"), view));
+		assertTrue(test(type, 8, CompOp.GT, new StringAttr("ABCD"), view));
+		assertFalse(test(type, 8, CompOp.NE, new StringAttr("abcd"), view));
+	}
+
+	/**
+	 * A record not long enough to hold the attribute does not satisfy any
+	 * condition.
+	 */
+	@Test
+	public void testShortRecord() {
+		RecordView view = view(0, 0f, "abcd");
+		assertFalse(test(AttrType.INT, 10, CompOp.NE, new IntAttr(1), view));
+		assertFalse(test(AttrType.string(4), 9, CompOp.NE, new StringAttr("abcd"), view));
+	}
+
+	@Test
+	public void testTypeMismatch() {
+		thrown.expect(IllegalArgumentException.class);
+		Condition.of(0, AttrType.INT, CompOp.EQ, new FloatAttr(1f));
+	}
+
+	@Test
+	public void testInspect() {
+		Condition condition = Condition.of(4, AttrType.FLOAT, CompOp.LE, new FloatAttr(2f));
+		assertEquals(4, condition.getAttrOffset());
+		assertTrue(condition.getAttrType().isFloat());
+		assertEquals(CompOp.LE, condition.getOp());
+		assertEquals(0, condition.getValue().compareTo(new FloatAttr(2f)));
+	}
+}
@@ -0,0 +1,187 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static me.nettee.pancake.core.record.RecordFileTestUtils.*;
+import static org.junit.Assert.*;
+
+public class RecordFileAggregateTest {
+
+	private static final Path path = Paths.get("/tmp/g.db");
+	// An int, a float and an 8-byte string.
+	private static final int RECORD_SIZE = 16;
+	private static final int N = 1000;
+
+	private RecordFile recordFile;
+	private List<RID> rids;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	// The keys are a permutation of [0, N).
+	private static int key(int i) {
+		return i * 7 % N;
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.create(path, RECORD_SIZE);
+		insertRecords();
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.close();
+	}
+
+	private void insertRecords() {
+		rids = ridsOf(RecordFileTestUtils.insertRecords(recordFile, N,
+				i -> typedRecord(key(i), RECORD_SIZE)));
+	}
+
+	private void recreateColumnar() throws IOException {
+		recordFile.close();
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.createColumnar(path, 4, 4, 8);
+		insertRecords();
+	}
+
+	private static void assertAttr(String expected, Optional<Attr> attr) {
+		assertTrue(attr.isPresent());
+		assertEquals(expected, attr.get().toString());
+	}
+
+	@Test
+	public void testAggregate() throws IOException {
+		for (int layout = 0; layout < 2; layout++) {
+			if (layout == 1) {
+				recreateColumnar();
+			}
+			Aggregate ints = recordFile.aggregate(0, AttrType.INT);
+			assertEquals(N, ints.getCount());
+			assertEquals((long) N * (N - 1) / 2, ints.getIntSum());
+			assertAttr("0", ints.getMin());
+			assertAttr(String.valueOf(N - 1), ints.getMax());
+
+			Aggregate floats = recordFile.aggregate(4, AttrType.FLOAT);
+			assertEquals(N * (N - 1) / 2 * 0.5, floats.getSum(), 1e-6);
+			assertAttr(String.valueOf((N - 1) * 0.5f), floats.getMax());
+
+			Aggregate strings = recordFile.aggregate(8, AttrType.string(8));
+			assertAttr(keyString(0, 8), strings.getMin());
+			assertAttr(keyString(N - 1, 8), strings.getMax());
+		}
+	}
+
+	@Test
+	public void testAggregate_condition() throws IOException {
+		Condition condition = Condition.of(8, AttrType.string(8), CompOp.LT,
+				new StringAttr(keyString(100, 8)));
+		for (int layout = 0; layout < 2; layout++) {
+			if (layout == 1) {
+				recreateColumnar();
+			}
+			recordFile.addZoneMap(8, AttrType.string(8));
+			Aggregate aggregate = recordFile.aggregate(0, AttrType.INT, condition);
+			assertEquals(100, aggregate.getCount());
+			assertEquals(99 * 100 / 2, aggregate.getIntSum());
+			assertAttr("99", aggregate.getMax());
+			assertEquals(100, recordFile.count(condition));
+		}
+	}
+
+	@Test
+	public void testAggregate_empty() {
+		Condition condition = Condition.of(0, AttrType.INT, CompOp.LT, new IntAttr(0));
+		Aggregate aggregate = recordFile.aggregate(4, AttrType.FLOAT, condition);
+		assertEquals(0, aggregate.getCount());
+		assertEquals(0.0, aggregate.getSum(), 0.0);
+		assertFalse(aggregate.getMin().isPresent());
+		assertFalse(aggregate.getMax().isPresent());
+	}
+
+	/**
+	 * The aggregates of the page ranges add up to the aggregate of the file.
+	 */
+	@Test
+	public void testAggregate_pageRanges() {
+		Condition condition = Condition.of(0, AttrType.INT, CompOp.GE, new IntAttr(300));
+		Aggregate expected = recordFile.aggregate(0, AttrType.INT, condition);
+		Aggregate merged = new Aggregate(0, AttrType.INT);
+		int count = 0;
+		for (PageRange range : recordFile.splitPages(3)) {
+			merged.merge(recordFile.aggregate(range, 0, AttrType.INT, condition));
+			count += recordFile.count(range);
+		}
+		assertEquals(expected.getCount(), merged.getCount());
+		assertEquals(expected.getIntSum(), merged.getIntSum());
+		assertEquals(expected.getMin().get().toString(), merged.getMin().get().toString());
+		assertEquals(expected.getMax().get().toString(), merged.getMax().get().toString());
+		assertEquals(N, count);
+	}
+
+	@Test
+	public void testGetNumOfRecords() {
+		assertEquals(N, recordFile.getNumOfRecords());
+		for (int i = 0; i < N; i += 2) {
+			recordFile.deleteRecord(rids.get(i));
+		}
+		assertEquals(N / 2, recordFile.getNumOfRecords());
+		int count = 0;
+		for (PageRange range : recordFile.splitPages(4)) {
+			count += recordFile.count(range);
+		}
+		assertEquals(N / 2, count);
+		assertEquals(N / 2, recordFile.aggregate(0, AttrType.INT).getCount());
+	}
+
+	/**
+	 * Variable-length records too short to hold the attribute are not
+	 * aggregated.
+	 */
+	@Test
+	public void testAggregate_variableLength() throws IOException {
+		recordFile.close();
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.createVariableLength(path);
+		for (int i = 0; i < 100; i++) {
+			byte[] data = typedRecord(i, RECORD_SIZE).getData();
+			recordFile.insertRecord(new Record(Arrays.copyOf(data, i % 2 == 0 ? 4 : 8)));
+		}
+		Aggregate aggregate = recordFile.aggregate(4, AttrType.FLOAT);
+		assertEquals(50, aggregate.getCount());
+		assertEquals(50 * 50 * 0.5, aggregate.getSum(), 1e-6);
+	}
+
+	@Test
+	public void testGetSum_string() {
+		Aggregate aggregate = recordFile.aggregate(8, AttrType.string(8));
+		thrown.expect(IllegalStateException.class);
+		aggregate.getSum();
+	}
+
+	@Test
+	public void testMerge_differentAttributes() {
+		Aggregate aggregate = recordFile.aggregate(0, AttrType.INT);
+		thrown.expect(IllegalArgumentException.class);
+		aggregate.merge(recordFile.aggregate(4, AttrType.FLOAT));
+	}
+
+	@Test
+	public void testAggregate_attributeOutOfRecord() {
+		thrown.expect(IllegalArgumentException.class);
+		recordFile.aggregate(14, AttrType.INT);
+	}
+}
@@ -0,0 +1,233 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.*;
+import me.nettee.pancake.core.page.Page;
+import me.nettee.pancake.core.page.PagedFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static me.nettee.pancake.core.record.RecordFileTestUtils.*;
+import static org.junit.Assert.*;
+
+public class RecordFileAppendOnlyTest {
+
+	private static final Path path = Paths.get("/tmp/o.db");
+	private static final int RECORD_SIZE = 16;
+	private static final int CAPACITY = FixedRecordPage.getPageRecordCapacity(RECORD_SIZE);
+
+	private RecordFile recordFile;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.create(path, RECORD_SIZE);
+		recordFile.setAppendOnly(true);
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.close();
+	}
+
+	private List<RID> insertRecords(int from, int to) {
+		return ridsOf(RecordFileTestUtils.insertRecords(recordFile, to - from,
+				i -> typedRecord(from + i, RECORD_SIZE)));
+	}
+
+	private static void assertIncreasing(List<RID> rids) {
+		for (int i = 1; i < rids.size(); i++) {
+			assertTrue(rids.get(i - 1).compareTo(rids.get(i)) < 0);
+		}
+	}
+
+	/**
+	 * Records are inserted at the tail, never into the space freed in the
+	 * pages before it, and the fill factor is ignored.
+	 */
+	@Test
+	public void testInsert_atTail() {
+		recordFile.setFillFactor(50);
+		List<RID> rids = insertRecords(0, 3 * CAPACITY);
+		assertEquals(3, new TreeSet<>(pageNums(rids)).size());
+		for (int i = 0; i < 2 * CAPACITY; i += 2) {
+			recordFile.deleteRecord(rids.get(i));
+		}
+		List<RID> newRids = insertRecords(3 * CAPACITY, 4 * CAPACITY);
+		List<RID> all = new ArrayList<>(rids);
+		all.addAll(newRids);
+		assertIncreasing(all);
+		assertEquals(3 * CAPACITY, recordFile.getNumOfRecords());
+	}
+
+	@Test
+	public void testInsertRecords_atTail() {
+		List<RID> rids = insertRecords(0, CAPACITY + 1);
+		recordFile.deleteRecord(rids.get(0));
+		List<RID> all = new ArrayList<>(rids);
+		all.addAll(recordFile.insertRecords(typedRecords(2 * CAPACITY, RECORD_SIZE)));
+		assertIncreasing(all);
+	}
+
+	private static List<Integer> pageNums(List<RID> rids) {
+		List<Integer> pageNums = new ArrayList<>();
+		for (RID rid : rids) {
+			pageNums.add(rid.pageNum);
+		}
+		return pageNums;
+	}
+
+	/**
+	 * A deleted record is a tombstone: its bytes are left in the page.
+	 */
+	@Test
+	public void testDelete_tombstone() {
+		List<RID> rids = insertRecords(0, 10);
+		recordFile.deleteRecord(rids.get(3));
+		recordFile.close();
+
+		PagedFile pagedFile = PagedFile.open(path);
+		try {
+			Page page = pagedFile.getPage(rids.get(3).pageNum);
+			ByteBuffer data = ByteBuffer.wrap(page.getData());
+			int bitsetSize = (CAPACITY + 63) / 64 * 8;
+			int pos = FixedRecordPage.HEADER_SIZE + bitsetSize + rids.get(3).slotNum * RECORD_SIZE;
+			assertEquals(3, data.getInt(pos));
+			pagedFile.unpinPage(page);
+		} finally {
+			pagedFile.close();
+			recordFile = RecordFile.open(path);
+		}
+		thrown.expect(RecordNotExistException.class);
+		recordFile.getRecord(rids.get(3));
+	}
+
+	/**
+	 * The slot of a record deleted from the tail page is not reused.
+	 */
+	@Test
+	public void testDelete_thenInsertAtTail() {
+		List<RID> rids = insertRecords(0, 10);
+		recordFile.deleteRecord(rids.get(3));
+		RID rid = recordFile.insertRecord(typedRecord(10, RECORD_SIZE));
+		assertEquals(rids.get(3).pageNum, rid.pageNum);
+		assertTrue(rids.get(9).compareTo(rid) < 0);
+		assertEquals(typedRecord(10, RECORD_SIZE), recordFile.getRecord(rid));
+		assertEquals(10, recordFile.getNumOfRecords());
+		thrown.expect(RecordNotExistException.class);
+		recordFile.getRecord(rids.get(3));
+	}
+
+	private byte[] readPage(int pageNum) {
+		PagedFile pagedFile = PagedFile.open(path);
+		try {
+			Page page = pagedFile.getPage(pageNum);
+			byte[] data = page.getData().clone();
+			pagedFile.unpinPage(page);
+			return data;
+		} finally {
+			pagedFile.close();
+		}
+	}
+
+	/**
+	 * Deleting a record of a sealed page does not write the page. The
+	 * tombstone is kept after reopening.
+	 */
+	@Test
+	public void testDelete_sealedPage() {
+		List<RID> rids = insertRecords(0, CAPACITY + 5);
+		RID rid = rids.get(7);
+		recordFile.close();
+		byte[] sealed = readPage(rid.pageNum);
+		recordFile = RecordFile.open(path);
+		recordFile.deleteRecord(rid);
+		recordFile.close();
+		assertArrayEquals(sealed, readPage(rid.pageNum));
+		recordFile = RecordFile.open(path);
+		assertEquals(CAPACITY + 4, recordFile.count(recordFile.splitPages(1).get(0)));
+		thrown.expect(RecordNotExistException.class);
+		recordFile.deleteRecord(rid);
+	}
+
+	/**
+	 * The mode is stored in the file, and the last data page is the tail
+	 * page after reopening.
+	 */
+	@Test
+	public void testReopen() {
+		List<RID> rids = insertRecords(0, CAPACITY + 5);
+		recordFile.deleteRecord(rids.get(0));
+		recordFile.close();
+		recordFile = RecordFile.open(path);
+		assertTrue(recordFile.isAppendOnly());
+		RID rid = recordFile.insertRecord(typedRecord(-1, RECORD_SIZE));
+		assertEquals(rids.get(rids.size() - 1).pageNum, rid.pageNum);
+		assertTrue(rids.get(rids.size() - 1).compareTo(rid) < 0);
+	}
+
+	@Test
+	public void testScan() throws IOException {
+		for (int layout = 0; layout < 2; layout++) {
+			if (layout == 1) {
+				recordFile.close();
+				Files.deleteIfExists(path);
+				recordFile = RecordFile.createVariableLength(path);
+				recordFile.setAppendOnly(true);
+			}
+			List<RID> rids = insertRecords(0, 3 * CAPACITY);
+			Set<Integer> expected = new TreeSet<>();
+			for (int i = 0; i < rids.size(); i++) {
+				if (i % 3 == 0) {
+					recordFile.deleteRecord(rids.get(i));
+				} else {
+					expected.add(i);
+				}
+			}
+			Set<Integer> actual = new TreeSet<>();
+			RecordCursor cursor = recordFile.cursor();
+			while (cursor.advance()) {
+				actual.add(cursor.getView().getInt(0));
+			}
+			cursor.close();
+			assertEquals(expected, actual);
+		}
+	}
+
+	/**
+	 * Out of the append-only mode, the freed space is reused again.
+	 */
+	@Test
+	public void testSetAppendOnly_off() {
+		List<RID> rids = insertRecords(0, 2 * CAPACITY);
+		recordFile.deleteRecord(rids.get(1));
+		recordFile.setAppendOnly(false);
+		assertFalse(recordFile.isAppendOnly());
+		assertEquals(rids.get(1), recordFile.insertRecord(typedRecord(-1, RECORD_SIZE)));
+	}
+
+	@Test
+	public void testUpdate() {
+		RID rid = recordFile.insertRecord(typedRecord(0, RECORD_SIZE));
+		thrown.expect(IllegalStateException.class);
+		recordFile.updateRecord(rid, typedRecord(1, RECORD_SIZE));
+	}
+
+	@Test
+	public void testStartCompaction() {
+		thrown.expect(IllegalStateException.class);
+		recordFile.startCompaction(50, (oldRid, newRid) -> {});
+	}
+}
@@ -0,0 +1,165 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.RID;
+import me.nettee.pancake.core.model.Record;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static me.nettee.pancake.core.record.RecordFileTestUtils.*;
+import static org.junit.Assert.assertEquals;
+
+public class RecordFileBatchInsertTest {
+
+	private static final Path path = Paths.get("/tmp/b.db");
+	private static final int RECORD_SIZE = 8;
+	private static final int CAPACITY = FixedRecordPage.getPageRecordCapacity(RECORD_SIZE);
+	private static final int N = 3 * CAPACITY + 7;
+
+	private RecordFile recordFile;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.create(path, RECORD_SIZE);
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.close();
+	}
+
+	private void checkRecords(List<Record> records, List<RID> rids) {
+		assertEquals(records.size(), rids.size());
+		assertEquals(rids.size(), new TreeSet<>(rids).size());
+		for (int i = 0; i < records.size(); i++) {
+			assertEquals(records.get(i), recordFile.getRecord(rids.get(i)));
+		}
+	}
+
+	private static Set<Integer> pagesOf(List<RID> rids) {
+		Set<Integer> pageNums = new TreeSet<>();
+		for (RID rid : rids) {
+			pageNums.add(rid.pageNum);
+		}
+		return pageNums;
+	}
+
+	/**
+	 * Records inserted in a batch are packed into full pages.
+	 */
+	@Test
+	public void testInsertRecords() {
+		List<Record> records = getRandomRecords(N, RECORD_SIZE);
+		List<RID> rids = recordFile.insertRecords(records);
+		checkRecords(records, rids);
+		assertEquals(N / CAPACITY + 1, pagesOf(rids).size());
+	}
+
+	/**
+	 * A batch insert fills the free slots of existing pages first.
+	 */
+	@Test
+	public void testInsertRecords_reuseFreeSlots() {
+		List<RID> oldRids = recordFile.insertRecords(getRandomRecords(N, RECORD_SIZE));
+		List<RID> deletedRids = new ArrayList<>();
+		for (int i = 0; i < oldRids.size(); i += 5) {
+			recordFile.deleteRecord(oldRids.get(i));
+			deletedRids.add(oldRids.get(i));
+		}
+		List<Record> records = getRandomRecords(deletedRids.size(), RECORD_SIZE);
+		List<RID> rids = recordFile.insertRecords(records);
+		checkRecords(records, rids);
+		Collections.sort(deletedRids);
+		List<RID> sortedRids = new ArrayList<>(rids);
+		Collections.sort(sortedRids);
+		assertEquals(deletedRids, sortedRids);
+	}
+
+	@Test
+	public void testInsertRecords_empty() {
+		assertEquals(Collections.emptyList(),
+				recordFile.insertRecords(Collections.emptyList()));
+	}
+
+	/**
+	 * When a record in the batch is invalid, the records before it are
+	 * inserted, and the file is still usable.
+	 */
+	@Test
+	public void testInsertRecords_invalidRecord() {
+		List<Record> records = getRandomRecords(10, RECORD_SIZE);
+		List<Record> batch = new ArrayList<>(records);
+		batch.add(getRandomRecord(RECORD_SIZE + 1));
+		try {
+			recordFile.insertRecords(batch);
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		assertEquals(records, collect(recordFile.scan()));
+		recordFile.insertRecord(getRandomRecord(RECORD_SIZE));
+	}
+
+	private void testInsertRecordsFromBuffer(ByteBuffer buffer) {
+		List<Record> records = getRandomRecords(N, RECORD_SIZE);
+		buffer.position(3);
+		for (Record record : records) {
+			buffer.put(record.getData());
+		}
+		buffer.position(3);
+		List<RID> rids = recordFile.insertRecords(buffer, N);
+		assertEquals(3 + N * RECORD_SIZE, buffer.position());
+		checkRecords(records, rids);
+	}
+
+	@Test
+	public void testInsertRecords_heapBuffer() {
+		testInsertRecordsFromBuffer(ByteBuffer.allocate(3 + N * RECORD_SIZE));
+	}
+
+	@Test
+	public void testInsertRecords_directBuffer() {
+		testInsertRecordsFromBuffer(ByteBuffer.allocateDirect(3 + N * RECORD_SIZE));
+	}
+
+	@Test
+	public void testInsertRecords_bufferTooSmall() {
+		ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 2);
+		thrown.expect(IllegalArgumentException.class);
+		recordFile.insertRecords(buffer, 3);
+	}
+
+	@Test
+	public void testInsertRecords_variableLength() throws IOException {
+		recordFile.close();
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.createVariableLength(path);
+		List<Record> records = new ArrayList<>();
+		for (int i = 0; i < N; i++) {
+			records.add(getRandomRecord(1 + i % 100));
+		}
+		List<RID> rids = recordFile.insertRecords(records);
+		checkRecords(records, rids);
+	}
+
+	@Test
+	public void testInsertRecords_variableLengthBuffer() throws IOException {
+		recordFile.close();
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.createVariableLength(path);
+		thrown.expect(IllegalStateException.class);
+		recordFile.insertRecords(ByteBuffer.allocate(16), 2);
+	}
+}
@@ -0,0 +1,239 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static me.nettee.pancake.core.record.RecordFileTestUtils.*;
+import static org.junit.Assert.*;
+
+public class RecordFileBatchScanTest {
+
+	private static final Path path = Paths.get("/tmp/v.db");
+	// An int, a float and an 8-byte string.
+	private static final int RECORD_SIZE = 16;
+	private static final int CAPACITY = FixedRecordPage.getPageRecordCapacity(RECORD_SIZE);
+	private static final int N = 3 * CAPACITY + 7;
+
+	private RecordFile recordFile;
+	private ColumnBatch batch;
+	private int keyColumn;
+	private int floatColumn;
+	private int stringColumn;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.create(path, RECORD_SIZE);
+		batch = ColumnBatch.create(100);
+		keyColumn = batch.addColumn(0, AttrType.INT);
+		floatColumn = batch.addColumn(4, AttrType.FLOAT);
+		stringColumn = batch.addColumn(8, AttrType.string(8));
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.close();
+	}
+
+	/**
+	 * Scan all the batches, checking the selected rows against the records
+	 * at their RIDs.
+	 * @return the keys of the selected rows
+	 */
+	private List<Integer> scanKeys(Condition... conditions) {
+		List<Integer> keys = new ArrayList<>();
+		BatchScan scan = recordFile.batchScan(batch, conditions);
+		while (scan.next()) {
+			assertTrue(batch.getSize() <= batch.getCapacity());
+			assertTrue(batch.getNumOfSelected() > 0);
+			int[] selection = batch.getSelection();
+			for (int i = 0; i < batch.getNumOfSelected(); i++) {
+				int row = selection[i];
+				int key = batch.getIntVector(keyColumn)[row];
+				assertEquals(typedRecord(key, RECORD_SIZE), recordFile.getRecord(batch.getRID(row)));
+				assertEquals(key * 0.5f, batch.getFloatVector(floatColumn)[row], 0.0f);
+				assertEquals(keyString(key, 8),
+						new String(batch.getBytesVector(stringColumn), row * 8, 8));
+				keys.add(key);
+			}
+		}
+		scan.close();
+		return keys;
+	}
+
+	private static List<Integer> range(int from, int to) {
+		List<Integer> keys = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			keys.add(i);
+		}
+		return keys;
+	}
+
+	@Test
+	public void testBatchScan() {
+		insertTypedRecords(recordFile, N, RECORD_SIZE);
+		assertEquals(range(0, N), scanKeys());
+	}
+
+	@Test
+	public void testBatchScan_empty() {
+		BatchScan scan = recordFile.batchScan(batch);
+		assertFalse(scan.next());
+		scan.close();
+	}
+
+	/**
+	 * A batch spans pages, and holds no deleted records.
+	 */
+	@Test
+	public void testBatchScan_fullBatches() {
+		List<RID> rids = insertTypedRecords(recordFile, N, RECORD_SIZE);
+		for (int i = 0; i < N; i += 3) {
+			recordFile.deleteRecord(rids.get(i));
+		}
+		List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < N; i++) {
+			if (i % 3 != 0) {
+				expected.add(i);
+			}
+		}
+		BatchScan scan = recordFile.batchScan(batch);
+		int n = 0;
+		while (scan.next()) {
+			int size = batch.getSize();
+			assertEquals(size, batch.getNumOfSelected());
+			if (n + size < expected.size()) {
+				assertEquals(batch.getCapacity(), size);
+			}
+			for (int row = 0; row < size; row++) {
+				assertEquals((int) expected.get(n + row), batch.getIntVector(keyColumn)[row]);
+			}
+			n += size;
+		}
+		scan.close();
+		assertEquals(expected.size(), n);
+	}
+
+	@Test
+	public void testBatchScan_conditions() {
+		insertTypedRecords(recordFile, N, RECORD_SIZE);
+		Condition ge = Condition.of(0, AttrType.INT, CompOp.GE, new IntAttr(100));
+		Condition lt = Condition.of(4, AttrType.FLOAT, CompOp.LT, new FloatAttr(150.0f));
+		Condition ne = Condition.of(8, AttrType.string(8), CompOp.NE, new StringAttr("00000123"));
+		List<Integer> expected = range(100, 300);
+		expected.remove(Integer.valueOf(123));
+		assertEquals(expected, scanKeys(ge, lt, ne));
+	}
+
+	/**
+	 * The batches with no selected rows are skipped.
+	 */
+	@Test
+	public void testBatchScan_sparseCondition() {
+		insertTypedRecords(recordFile, N, RECORD_SIZE);
+		Condition eq = Condition.of(0, AttrType.INT, CompOp.EQ, new IntAttr(N - 2));
+		assertEquals(Collections.singletonList(N - 2), scanKeys(eq));
+	}
+
+	@Test
+	public void testBatchScan_zoneMap() {
+		recordFile.addZoneMap(0, AttrType.INT);
+		insertTypedRecords(recordFile, N, RECORD_SIZE);
+		Condition condition = Condition.of(0, AttrType.INT, CompOp.LT, new IntAttr(10));
+		assertEquals(range(0, 10), scanKeys(condition));
+	}
+
+	@Test
+	public void testBatchScan_columnar() throws IOException {
+		recordFile.close();
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.createColumnar(path, 4, 4, 8);
+		insertTypedRecords(recordFile, N, RECORD_SIZE);
+		Condition condition = Condition.of(8, AttrType.string(8), CompOp.GE, new StringAttr("00000500"));
+		assertEquals(range(500, N), scanKeys(condition));
+	}
+
+	/**
+	 * As conditions on records, conditions on batches are never satisfied
+	 * by records too short to hold the attribute.
+	 */
+	@Test
+	public void testBatchScan_variableLength() throws IOException {
+		recordFile.close();
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.createVariableLength(path);
+		batch = ColumnBatch.create(16);
+		keyColumn = batch.addColumn(0, AttrType.INT);
+		stringColumn = batch.addColumn(8, AttrType.string(8));
+		for (int i = 0; i < 100; i++) {
+			byte[] data = typedRecord(i, RECORD_SIZE).getData();
+			recordFile.insertRecord(new Record(Arrays.copyOf(data, i % 2 == 0 ? 12 : 16)));
+		}
+		Condition condition = Condition.of(8, AttrType.string(8), CompOp.GE, new StringAttr("00000000"));
+		Map<RID, Record> expected = new TreeMap<>();
+		Map<RID, Record> actual = new TreeMap<>();
+		RecordCursor cursor = recordFile.cursor(condition);
+		while (cursor.advance()) {
+			expected.put(cursor.getView().getRID(), cursor.getView().toRecord());
+		}
+		cursor.close();
+		BatchScan scan = recordFile.batchScan(batch, condition);
+		while (scan.next()) {
+			for (int i = 0; i < batch.getNumOfSelected(); i++) {
+				int row = batch.getSelection()[i];
+				RID rid = batch.getRID(row);
+				actual.put(rid, recordFile.getRecord(rid));
+				assertEquals(keyString(batch.getIntVector(keyColumn)[row], 8),
+						new String(batch.getBytesVector(stringColumn), row * 8, 8));
+			}
+		}
+		scan.close();
+		assertEquals(50, expected.size());
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testBatchScan_conditionNotOnColumn() {
+		thrown.expect(IllegalArgumentException.class);
+		recordFile.batchScan(batch, Condition.of(4, AttrType.INT, CompOp.EQ, new IntAttr(0)));
+	}
+
+	@Test
+	public void testBatchScan_columnOutOfRecord() {
+		batch.addColumn(14, AttrType.INT);
+		thrown.expect(IllegalArgumentException.class);
+		recordFile.batchScan(batch);
+	}
+
+	@Test
+	public void testAddColumn_batchInUse() {
+		BatchScan scan = recordFile.batchScan(batch);
+		try {
+			thrown.expect(IllegalStateException.class);
+			batch.addColumn(0, AttrType.INT);
+		} finally {
+			scan.close();
+		}
+	}
+
+	@Test
+	public void testNext_closed() {
+		BatchScan scan = recordFile.batchScan(batch);
+		scan.close();
+		thrown.expect(IllegalStateException.class);
+		scan.next();
+	}
+}
@@ -0,0 +1,99 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.RID;
+import me.nettee.pancake.core.model.Record;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+import static me.nettee.pancake.core.record.RecordFileTestUtils.*;
+import static org.junit.Assert.assertEquals;
+
+public class RecordFileBulkLoadTest {
+
+	private static final Path path = Paths.get("/tmp/l.db");
+	private static final int RECORD_SIZE = 8;
+	private static final int CAPACITY = FixedRecordPage.getPageRecordCapacity(RECORD_SIZE);
+
+	private RecordFile recordFile;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	@After
+	public void tearDown() {
+		if (recordFile != null) {
+			recordFile.close();
+		}
+	}
+
+	/**
+	 * Loaded records are packed into full pages in order.
+	 */
+	@Test
+	public void testBulkLoad() {
+		List<Record> records = getRandomRecords(3 * CAPACITY + 7, RECORD_SIZE);
+		recordFile = RecordFile.bulkLoad(path, RECORD_SIZE, records.iterator());
+		assertEquals(records, collect(recordFile.scan()));
+		assertEquals(records.get(CAPACITY + 1), recordFile.getRecord(new RID(2, 1)));
+	}
+
+	/**
+	 * A bulk-loaded file is kept after reopening, and new records are
+	 * inserted into the free slots of the last page first.
+	 */
+	@Test
+	public void testBulkLoad_reopenAndInsert() {
+		List<Record> records = getRandomRecords(2 * CAPACITY + 7, RECORD_SIZE);
+		recordFile = RecordFile.bulkLoad(path, RECORD_SIZE, records.iterator());
+		recordFile.close();
+		recordFile = RecordFile.open(path);
+		assertEquals(records, collect(recordFile.scan()));
+
+		RID rid = recordFile.insertRecord(getRandomRecord(RECORD_SIZE));
+		assertEquals(new RID(3, 7), rid);
+	}
+
+	/**
+	 * When the last page is full, new records go to a new page.
+	 */
+	@Test
+	public void testBulkLoad_fullPages() {
+		List<Record> records = getRandomRecords(2 * CAPACITY, RECORD_SIZE);
+		recordFile = RecordFile.bulkLoad(path, RECORD_SIZE, records.iterator());
+		assertEquals(records, collect(recordFile.scan()));
+		RID rid = recordFile.insertRecord(getRandomRecord(RECORD_SIZE));
+		assertEquals(new RID(3, 0), rid);
+	}
+
+	@Test
+	public void testBulkLoad_noRecords() {
+		recordFile = RecordFile.bulkLoad(path, RECORD_SIZE,
+				Collections.<Record>emptyList().iterator());
+		assertEquals(Collections.emptyList(), collect(recordFile.scan()));
+		RID rid = recordFile.insertRecord(getRandomRecord(RECORD_SIZE));
+		assertEquals(new RID(1, 0), rid);
+	}
+
+	@Test
+	public void testBulkLoad_wrongRecordSize() {
+		List<Record> records = getRandomRecords(10, RECORD_SIZE);
+		records.add(getRandomRecord(RECORD_SIZE + 1));
+		thrown.expect(IllegalArgumentException.class);
+		RecordFile.bulkLoad(path, RECORD_SIZE, records.iterator());
+	}
+}
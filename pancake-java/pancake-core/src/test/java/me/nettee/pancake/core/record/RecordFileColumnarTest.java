@@ -0,0 +1,230 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.*;
+import me.nettee.pancake.core.page.Page;
+import me.nettee.pancake.core.page.PagedFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static me.nettee.pancake.core.record.RecordFileTestUtils.*;
+import static org.junit.Assert.*;
+
+public class RecordFileColumnarTest {
+
+	private static final Path path = Paths.get("/tmp/x.db");
+	// An int, a float and a 12-byte string.
+	private static final int[] ATTR_LENGTHS = {4, 4, 12};
+	private static final int RECORD_SIZE = 20;
+	private static final int CAPACITY = FixedRecordPage.getPageRecordCapacity(RECORD_SIZE);
+	private static final int N = 3 * CAPACITY + 5;
+
+	private RecordFile recordFile;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private static byte[] project(Record record, Projection projection) {
+		byte[] bytes = new byte[projection.getLength()];
+		int pos = 0;
+		for (int i = 0; i < projection.getNumOfRanges(); i++) {
+			int offset = projection.getOffset(i);
+			for (int j = 0; j < projection.getLength(i); j++) {
+				bytes[pos++] = offset + j < record.getLength() ? record.getData()[offset + j] : 0;
+			}
+		}
+		return bytes;
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.createColumnar(path, ATTR_LENGTHS);
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.close();
+	}
+
+	@Test
+	public void testCrud() {
+		List<RID> rids = insertTypedRecords(recordFile, N, RECORD_SIZE);
+		assertTrue(recordFile.isColumnar());
+		for (int i = 0; i < N; i++) {
+			assertEquals(typedRecord(i, RECORD_SIZE), recordFile.getRecord(rids.get(i)));
+		}
+		recordFile.updateRecord(rids.get(7), typedRecord(-7, RECORD_SIZE));
+		assertEquals(typedRecord(-7, RECORD_SIZE), recordFile.getRecord(rids.get(7)));
+		recordFile.deleteRecord(rids.get(8));
+		thrown.expect(RecordNotExistException.class);
+		recordFile.getRecord(rids.get(8));
+	}
+
+	/**
+	 * The values of an attribute are stored together in a page.
+	 */
+	@Test
+	public void testLayout() {
+		List<RID> rids = insertTypedRecords(recordFile, 2, RECORD_SIZE);
+		assertEquals(rids.get(0).pageNum, rids.get(1).pageNum);
+		recordFile.close();
+
+		PagedFile pagedFile = PagedFile.open(path);
+		try {
+			Page page = pagedFile.getPage(rids.get(0).pageNum);
+			ByteBuffer data = ByteBuffer.wrap(page.getData());
+			int bitsetSize = (CAPACITY + 63) / 64 * 8;
+			int keys = FixedRecordPage.HEADER_SIZE + bitsetSize;
+			assertEquals(0, data.getInt(keys));
+			assertEquals(1, data.getInt(keys + 4));
+			int floats = keys + 4 * CAPACITY;
+			assertEquals(0.5f, data.getFloat(floats + 4), 0.0f);
+			pagedFile.unpinPage(page);
+		} finally {
+			pagedFile.close();
+			recordFile = RecordFile.open(path);
+		}
+	}
+
+	@Test
+	public void testReopen() {
+		insertTypedRecords(recordFile, N, RECORD_SIZE);
+		recordFile.close();
+		recordFile = RecordFile.open(path);
+		assertTrue(recordFile.isColumnar());
+		assertEquals(typedRecords(N, RECORD_SIZE), collect(recordFile.scan()));
+	}
+
+	/**
+	 * A projected cursor sees only the projected bytes, which may span
+	 * attributes.
+	 */
+	@Test
+	public void testCursor_projection() {
+		List<RID> rids = insertTypedRecords(recordFile, N, RECORD_SIZE);
+		recordFile.deleteRecord(rids.get(3));
+		Projection projection = Projection.of(8, 6).and(0, 4).and(2, 4);
+		RecordCursor cursor = recordFile.cursor(projection);
+		int i = 0;
+		while (cursor.advance()) {
+			if (i == 3) {
+				i++;
+			}
+			RecordView view = cursor.getView();
+			assertEquals(rids.get(i), view.getRID());
+			assertArrayEquals(project(typedRecord(i, RECORD_SIZE), projection), view.toBytes());
+			i++;
+		}
+		cursor.close();
+		assertEquals(N, i);
+	}
+
+	/**
+	 * The predicate of a projected cursor is on the projected record.
+	 */
+	@Test
+	public void testCursor_projectionAndPredicate() {
+		insertTypedRecords(recordFile, N, RECORD_SIZE);
+		Projection projection = Projection.of(4, 4).and(0, 4);
+		RecordCursor cursor = recordFile.cursor(projection, view -> view.getInt(4) % 10 == 0);
+		int n = 0;
+		while (cursor.advance()) {
+			RecordView view = cursor.getView();
+			assertEquals(view.getInt(4) * 0.5f, view.getFloat(0), 0.0f);
+			n++;
+		}
+		cursor.close();
+		assertEquals((N + 9) / 10, n);
+	}
+
+	/**
+	 * Projected cursors work on the other layouts as well.
+	 */
+	@Test
+	public void testCursor_projectionOnOtherLayouts() throws IOException {
+		recordFile.close();
+		Projection projection = Projection.of(10, 6).and(0, 4);
+		for (int layout = 0; layout < 2; layout++) {
+			Files.deleteIfExists(path);
+			recordFile = layout == 0 ? RecordFile.create(path, RECORD_SIZE)
+					: RecordFile.createVariableLength(path);
+			Map<RID, Record> records = new TreeMap<>();
+			for (int i = 0; i < N; i++) {
+				Record record = layout == 0 ? typedRecord(i, RECORD_SIZE)
+						: new Record(Arrays.copyOf(typedRecord(i, RECORD_SIZE).getData(),
+								i % RECORD_SIZE + 1));
+				records.put(recordFile.insertRecord(record), record);
+			}
+			RecordCursor cursor = recordFile.cursor(projection);
+			int n = 0;
+			while (cursor.advance()) {
+				RecordView view = cursor.getView();
+				assertArrayEquals(project(records.get(view.getRID()), projection), view.toBytes());
+				n++;
+			}
+			cursor.close();
+			assertEquals(N, n);
+			recordFile.close();
+		}
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.createColumnar(path, ATTR_LENGTHS);
+	}
+
+	/**
+	 * Zone maps and compaction work on columnar files.
+	 */
+	@Test
+	public void testZoneMapAndCompaction() {
+		recordFile.addZoneMap(0, AttrType.INT);
+		List<RID> rids = insertTypedRecords(recordFile, N, RECORD_SIZE);
+		for (int i = 0; i < N; i++) {
+			if (i % 4 != 0) {
+				recordFile.deleteRecord(rids.get(i));
+			}
+		}
+		Compaction compaction = recordFile.startCompaction(50, (oldRid, newRid) -> {});
+		while (compaction.step(16)) {
+		}
+		assertTrue(compaction.getNumOfDisposedPages() > 0);
+
+		List<Record> expected = new ArrayList<>();
+		for (int i = 0; i < N; i += 4) {
+			expected.add(typedRecord(i, RECORD_SIZE));
+		}
+		List<Record> actual = collect(recordFile.scan());
+		actual.sort((a, b) -> Integer.compare(
+				ByteBuffer.wrap(a.getData()).getInt(), ByteBuffer.wrap(b.getData()).getInt()));
+		assertEquals(expected, actual);
+
+		Condition condition = Condition.of(0, AttrType.INT, CompOp.LT, new IntAttr(20));
+		assertEquals(5, collect(recordFile.scan(condition)).size());
+	}
+
+	@Test
+	public void testCursor_projectionOutOfRecord() {
+		thrown.expect(IllegalArgumentException.class);
+		recordFile.cursor(Projection.of(16, 8));
+	}
+
+	@Test
+	public void testCreateColumnar_nonPositiveLength() throws IOException {
+		recordFile.close();
+		Files.deleteIfExists(path);
+		try {
+			thrown.expect(IllegalArgumentException.class);
+			RecordFile.createColumnar(path, 4, 0, 4);
+		} finally {
+			recordFile = RecordFile.createColumnar(path, ATTR_LENGTHS);
+		}
+	}
+}
@@ -0,0 +1,269 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.*;
+import me.nettee.pancake.core.page.Page;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static me.nettee.pancake.core.record.RecordFileTestUtils.collect;
+import static me.nettee.pancake.core.record.RecordFileTestUtils.getRandomRecord;
+import static org.junit.Assert.*;
+
+public class RecordFileCompactionTest {
+
+	private static final Path path = Paths.get("/tmp/k.db");
+	private static final int RECORD_SIZE = 16;
+	private static final int CAPACITY = FixedRecordPage.getPageRecordCapacity(RECORD_SIZE);
+
+	private RecordFile recordFile;
+	// The live records, by RID.
+	private TreeMap<RID, Record> records;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.create(path, RECORD_SIZE);
+		records = new TreeMap<>();
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.close();
+	}
+
+	private void insertRecords(int n, int recordSize) {
+		for (int i = 0; i < n; i++) {
+			Record record = getRandomRecord(recordSize);
+			records.put(recordFile.insertRecord(record), record);
+		}
+	}
+
+	/**
+	 * Delete the records of the data pages in <tt>[fromPageNum, toPageNum)</tt>,
+	 * keeping one in every <tt>keep</tt> records of each page.
+	 */
+	private void deleteRecords(int fromPageNum, int toPageNum, int keep) {
+		List<RID> rids = new ArrayList<>(records.subMap(
+				new RID(fromPageNum, 0), new RID(toPageNum, 0)).keySet());
+		for (int i = 0; i < rids.size(); i++) {
+			if (i % keep != 0) {
+				recordFile.deleteRecord(rids.get(i));
+				records.remove(rids.get(i));
+			}
+		}
+	}
+
+	private Compaction compact(int sparseFillFactor) {
+		Compaction compaction = recordFile.startCompaction(sparseFillFactor, this::remap);
+		while (compaction.step(Integer.MAX_VALUE)) {
+		}
+		assertTrue(compaction.isFinished());
+		return compaction;
+	}
+
+	private void remap(RID oldRid, RID newRid) {
+		assertTrue(records.containsKey(oldRid));
+		assertFalse(records.containsKey(newRid));
+		records.put(newRid, records.remove(oldRid));
+	}
+
+	private Set<Integer> pageNums() {
+		Set<Integer> pageNums = new TreeSet<>();
+		for (RID rid : records.keySet()) {
+			pageNums.add(rid.pageNum);
+		}
+		return pageNums;
+	}
+
+	/**
+	 * The records in the file are exactly the live records, at their
+	 * remapped RIDs.
+	 */
+	private void checkRecords() {
+		Map<RID, Record> actual = new TreeMap<>();
+		RecordCursor cursor = recordFile.cursor();
+		while (cursor.advance()) {
+			RecordView view = cursor.getView();
+			actual.put(view.getRID(), view.toRecord());
+		}
+		cursor.close();
+		assertEquals(records, actual);
+		for (Map.Entry<RID, Record> entry : records.entrySet()) {
+			assertEquals(entry.getValue(), recordFile.getRecord(entry.getKey()));
+		}
+	}
+
+	/**
+	 * The records of sparse pages are moved into the pages before them, and
+	 * the emptied pages are disposed.
+	 */
+	@Test
+	public void testCompaction() {
+		insertRecords(10 * CAPACITY, RECORD_SIZE);
+		int firstPageNum = records.firstKey().pageNum;
+		deleteRecords(firstPageNum, firstPageNum + 10, 4);
+		assertEquals(10, pageNums().size());
+
+		Compaction compaction = compact(50);
+		assertTrue(compaction.getNumOfMovedRecords() > 0);
+		assertEquals(10 - pageNums().size(), compaction.getNumOfDisposedPages());
+		assertTrue(pageNums().size() <= 3);
+		checkRecords();
+	}
+
+	/**
+	 * The disposed pages at the end of the file are removed, so the file
+	 * shrinks.
+	 */
+	@Test
+	public void testCompaction_shrinkFile() throws IOException {
+		insertRecords(10 * CAPACITY, RECORD_SIZE);
+		int firstPageNum = records.firstKey().pageNum;
+		deleteRecords(firstPageNum, firstPageNum + 10, 4);
+		long size = Files.size(path);
+
+		compact(50);
+		int lastPageNum = Collections.max(pageNums());
+		assertEquals((lastPageNum + 1) * Page.PAGE_SIZE, Files.size(path));
+		assertTrue(Files.size(path) < size);
+		recordFile.close();
+
+		recordFile = RecordFile.open(path);
+		checkRecords();
+		insertRecords(CAPACITY, RECORD_SIZE);
+		checkRecords();
+	}
+
+	/**
+	 * Dense pages are left alone, while empty pages are disposed.
+	 */
+	@Test
+	public void testCompaction_denseAndEmptyPages() {
+		insertRecords(6 * CAPACITY, RECORD_SIZE);
+		int firstPageNum = records.firstKey().pageNum;
+		for (RID rid : new ArrayList<>(records.subMap(
+				new RID(firstPageNum + 2, 0), new RID(firstPageNum + 4, 0)).keySet())) {
+			recordFile.deleteRecord(rid);
+			records.remove(rid);
+		}
+
+		Compaction compaction = compact(0);
+		assertEquals(0, compaction.getNumOfMovedRecords());
+		assertEquals(2, compaction.getNumOfDisposedPages());
+		checkRecords();
+	}
+
+	/**
+	 * A step reads about as many pages as its budget, and other operations
+	 * can run between steps.
+	 */
+	@Test
+	public void testCompaction_steps() {
+		insertRecords(10 * CAPACITY, RECORD_SIZE);
+		int firstPageNum = records.firstKey().pageNum;
+		deleteRecords(firstPageNum, firstPageNum + 10, 5);
+
+		Compaction compaction = recordFile.startCompaction(50, this::remap);
+		int steps = 0;
+		while (compaction.step(2)) {
+			steps++;
+			insertRecords(1, RECORD_SIZE);
+		}
+		assertTrue(steps > 1);
+		checkRecords();
+	}
+
+	/**
+	 * The disposed pages are reused by insertions, also after reopening.
+	 */
+	@Test
+	public void testCompaction_reuseDisposedPages() {
+		insertRecords(5 * CAPACITY, RECORD_SIZE);
+		int firstPageNum = records.firstKey().pageNum;
+		int lastPageNum = records.lastKey().pageNum;
+		deleteRecords(firstPageNum, firstPageNum + 5, 10);
+		compact(50);
+		recordFile.close();
+
+		recordFile = RecordFile.open(path);
+		checkRecords();
+		insertRecords(4 * CAPACITY, RECORD_SIZE);
+		assertEquals(lastPageNum, records.lastKey().pageNum);
+		checkRecords();
+	}
+
+	/**
+	 * The records of a sparse page are not moved if they do not fit in the
+	 * pages before it.
+	 */
+	@Test
+	public void testCompaction_noSpaceBefore() {
+		insertRecords(3 * CAPACITY, RECORD_SIZE);
+		int firstPageNum = records.firstKey().pageNum;
+		deleteRecords(firstPageNum + 2, firstPageNum + 3, 2);
+
+		Compaction compaction = compact(50);
+		assertEquals(0, compaction.getNumOfMovedRecords());
+		assertEquals(0, compaction.getNumOfDisposedPages());
+		checkRecords();
+	}
+
+	@Test
+	public void testCompaction_variableLength() throws IOException {
+		recordFile.close();
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.createVariableLength(path);
+		for (int i = 0; i < 400; i++) {
+			Record record = getRandomRecord(1 + i * 7 % 300);
+			records.put(recordFile.insertRecord(record), record);
+		}
+		int firstPageNum = records.firstKey().pageNum;
+		int lastPageNum = records.lastKey().pageNum;
+		deleteRecords(firstPageNum, lastPageNum + 1, 3);
+		int numPages = pageNums().size();
+
+		Compaction compaction = compact(50);
+		assertTrue(compaction.getNumOfDisposedPages() > 0);
+		assertTrue(pageNums().size() < numPages);
+		checkRecords();
+	}
+
+	/**
+	 * The zone map follows the moved records.
+	 */
+	@Test
+	public void testCompaction_zoneMap() {
+		recordFile.addZoneMap(0, AttrType.string(4));
+		insertRecords(8 * CAPACITY, RECORD_SIZE);
+		int firstPageNum = records.firstKey().pageNum;
+		deleteRecords(firstPageNum, firstPageNum + 8, 6);
+		compact(50);
+
+		Condition condition = Condition.of(0, AttrType.string(4), CompOp.GE, new StringAttr("NNNN"));
+		List<Record> expected = new ArrayList<>();
+		for (Record record : records.values()) {
+			if (new String(record.getData(), 0, 4).compareTo("NNNN") >= 0) {
+				expected.add(record);
+			}
+		}
+		assertEquals(expected, collect(recordFile.scan(condition)));
+	}
+
+	@Test
+	public void testStartCompaction_invalidSparseFillFactor() {
+		thrown.expect(IllegalArgumentException.class);
+		recordFile.startCompaction(101, (oldRid, newRid) -> {});
+	}
+}
@@ -24,6 +24,7 @@ public class RecordFileCrudTest {
 
 	private static final int RECORD_SIZE = 8;
 
+	private Path path;
 	private RecordFile recordFile;
 	private final int rounds;
 
@@ -42,7 +43,7 @@ public class RecordFileCrudTest {
 
 	@Before
 	public void setUp() throws IOException {
-		Path path = Paths.get("/tmp/c.db");
+		path = Paths.get("/tmp/c.db");
 		Files.deleteIfExists(path);
 		recordFile = RecordFile.create(path, RECORD_SIZE);
 	}
@@ -82,6 +83,44 @@ public class RecordFileCrudTest {
 		}
 	}
 
+    /**
+     * The inserted records can be retrieved in a batch, in the order of the
+     * given RIDs.
+     */
+    @Test
+    public void testGetRecords() {
+        List<Pair<Record, RID>> insertedRecords =
+                insertRandomRecords(recordFile, rounds, RECORD_SIZE);
+        List<Pair<Record, RID>> pairs = new ArrayList<>(insertedRecords);
+        // Some records are retrieved twice.
+        pairs.addAll(pickSome(insertedRecords, rounds / 3));
+        Collections.shuffle(pairs);
+        List<RID> rids = pairs.stream()
+                .map(Pair::getRight)
+                .collect(Collectors.toList());
+        List<Record> expectedRecords = pairs.stream()
+                .map(Pair::getLeft)
+                .collect(Collectors.toList());
+        assertEquals(expectedRecords, recordFile.getRecords(rids));
+    }
+
+    /**
+     * If any of the RIDs does not exist, an exception will be thrown, and no
+     * pages are left pinned.
+     */
+    @Test
+    public void testGetRecords_deleted() {
+        List<Pair<Record, RID>> insertedRecords =
+                insertRandomRecords(recordFile, rounds, RECORD_SIZE);
+        List<RID> rids = insertedRecords.stream()
+                .map(Pair::getRight)
+                .collect(Collectors.toList());
+        recordFile.deleteRecord(pickOne(rids));
+        Collections.shuffle(rids);
+        thrown.expect(RecordNotExistException.class);
+        recordFile.getRecords(rids);
+    }
+
     /**
      * If we update a record and retrieve its content, we will get the updated
      * content.
@@ -124,6 +163,25 @@ public class RecordFileCrudTest {
 		}
 	}
 
+	/**
+	 * A RID whose slot number is out of the page is not of a record.
+	 */
+	@Test
+	public void testGetRecord_slotOutOfPage() {
+		RID rid = insertRandomRecords(recordFile, rounds, RECORD_SIZE).get(0).getRight();
+		int capacity = FixedRecordPage.getPageRecordCapacity(RECORD_SIZE);
+		for (int slotNum : new int[]{-1, capacity, Integer.MAX_VALUE}) {
+			try {
+				recordFile.getRecord(new RID(rid.pageNum, slotNum));
+				Assert.fail();
+			} catch (RecordNotExistException e) {
+				// Expected.
+			}
+		}
+		thrown.expect(RecordNotExistException.class);
+		recordFile.deleteRecord(new RID(rid.pageNum, capacity));
+	}
+
 	@Test
     public void testReInsert() {
 		List<Pair<Record, RID>> insertedRecords =
@@ -141,9 +199,6 @@ public class RecordFileCrudTest {
         assertEquals(oldRid, newRid);
     }
 
-    // TODO Hidden bug here. Test fails in some executions.
-	// Travis build failed one time on this test (501 rounds).
-    @Ignore
     @Test
     public void testReInsert2() {
         List<Pair<Record, RID>> insertedRecords =
@@ -170,5 +225,40 @@ public class RecordFileCrudTest {
         Collections.sort(newRids);
         assertEquals(oldRids, newRids);
     }
+
+    /**
+     * Page headers and bitsets are modified in place on the pages, so the
+     * records and the free slots are kept after the file is reopened.
+     */
+    @Test
+    public void testReopen() {
+        List<Pair<Record, RID>> insertedRecords =
+                insertRandomRecords(recordFile, rounds, RECORD_SIZE);
+
+        int m = insertedRecords.size() / 11 + 1;
+        List<Pair<Record, RID>> deletedRecords = pickSome(insertedRecords, m);
+        for (Pair<Record, RID> pair : deletedRecords) {
+            recordFile.deleteRecord(pair.getRight());
+        }
+
+        recordFile.close();
+        recordFile = RecordFile.open(path);
+
+        Set<RID> deletedRids = deletedRecords.stream()
+                .map(Pair::getRight)
+                .collect(Collectors.toCollection(TreeSet::new));
+        for (Pair<Record, RID> pair : insertedRecords) {
+            if (!deletedRids.contains(pair.getRight())) {
+                assertEquals(pair.getLeft(), recordFile.getRecord(pair.getRight()));
+            }
+        }
+
+        // The deleted slots are reused after reopening.
+        Set<RID> newRids = new TreeSet<>();
+        for (int i = 0; i < m; i++) {
+            newRids.add(recordFile.insertRecord(getRandomRecord(RECORD_SIZE)));
+        }
+        assertEquals(deletedRids, newRids);
+    }
 }
 
@@ -0,0 +1,258 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.*;
+import me.nettee.pancake.core.page.Page;
+import me.nettee.pancake.core.page.PagedFile;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static me.nettee.pancake.core.record.RecordFileTestUtils.*;
+import static org.junit.Assert.*;
+
+public class RecordFileCursorTest {
+
+	private static final Path path = Paths.get("/tmp/r.db");
+	private static final int RECORD_SIZE = 8;
+	private static final int N = 3 * FixedRecordPage.getPageRecordCapacity(RECORD_SIZE) + 7;
+
+	private RecordFile recordFile;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.create(path, RECORD_SIZE);
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.close();
+	}
+
+	private List<Pair<Record, RID>> insertSequenceRecords(RecordFile recordFile) {
+		return insertRecords(recordFile, N,
+				i -> Record.fromString(String.format("rec-%04d", i)));
+	}
+
+	private List<Pair<Record, RID>> collect(RecordCursor cursor) {
+		List<Pair<Record, RID>> result = new ArrayList<>();
+		while (cursor.advance()) {
+			RecordView view = cursor.getView();
+			result.add(Pair.of(view.toRecord(), view.getRID()));
+		}
+		cursor.close();
+		return result;
+	}
+
+	/**
+	 * The cursor visits all the records, with their RIDs.
+	 */
+	@Test
+	public void testCursor() {
+		List<Pair<Record, RID>> pairs = insertSequenceRecords(recordFile);
+		assertEquals(pairs, collect(recordFile.cursor()));
+	}
+
+	/**
+	 * The cursor skips deleted records.
+	 */
+	@Test
+	public void testCursor_deleteSome() {
+		List<Pair<Record, RID>> pairs = insertSequenceRecords(recordFile);
+		List<Pair<Record, RID>> expected = new ArrayList<>();
+		for (int i = 0; i < pairs.size(); i++) {
+			if (i % 3 == 0) {
+				recordFile.deleteRecord(pairs.get(i).getRight());
+			} else {
+				expected.add(pairs.get(i));
+			}
+		}
+		assertEquals(expected, collect(recordFile.cursor()));
+	}
+
+	private List<Pair<Record, RID>> deletePage(List<Pair<Record, RID>> pairs, int pageNum) {
+		List<Pair<Record, RID>> rest = new ArrayList<>();
+		for (Pair<Record, RID> pair : pairs) {
+			if (pair.getRight().pageNum == pageNum) {
+				recordFile.deleteRecord(pair.getRight());
+			} else {
+				rest.add(pair);
+			}
+		}
+		return rest;
+	}
+
+	/**
+	 * The cursor skips pages whose records are all deleted, and visits them
+	 * again once records are inserted into them.
+	 */
+	@Test
+	public void testCursor_emptyPage() {
+		List<Pair<Record, RID>> pairs = insertSequenceRecords(recordFile);
+		int pageNum = pairs.get(0).getRight().pageNum + 1;
+		List<Pair<Record, RID>> rest = deletePage(pairs, pageNum);
+		assertEquals(rest, collect(recordFile.cursor()));
+
+		Record record = Record.fromString("new-0000");
+		RID rid = recordFile.insertRecord(record);
+		assertEquals(pageNum, rid.pageNum);
+		List<Pair<Record, RID>> result = collect(recordFile.cursor());
+		assertEquals(rest.size() + 1, result.size());
+		assertTrue(result.contains(Pair.of(record, rid)));
+	}
+
+	/**
+	 * After reopening, empty pages are skipped as well.
+	 */
+	@Test
+	public void testCursor_emptyPageReopened() {
+		List<Pair<Record, RID>> pairs = insertSequenceRecords(recordFile);
+		int pageNum = pairs.get(0).getRight().pageNum + 1;
+		List<Pair<Record, RID>> rest = deletePage(pairs, pageNum);
+		recordFile.close();
+		recordFile = RecordFile.open(path);
+		assertEquals(rest, collect(recordFile.cursor()));
+		assertEquals(rest, collect(recordFile.cursor()));
+	}
+
+	/**
+	 * The pages which are empty in the free space map are skipped without
+	 * being read, also right after reopening.
+	 */
+	@Test
+	public void testCursor_emptyPageNotRead() {
+		List<Pair<Record, RID>> pairs = insertSequenceRecords(recordFile);
+		int pageNum = pairs.get(0).getRight().pageNum + 1;
+		List<Pair<Record, RID>> rest = deletePage(pairs, pageNum);
+		recordFile.close();
+
+		// A record written behind the record file is not seen.
+		PagedFile pagedFile = PagedFile.open(path);
+		Page page = pagedFile.getPage(pageNum);
+		pagedFile.markDirty(page);
+		FixedRecordPage.create(page, RECORD_SIZE).insert(Record.fromString("new-0000").getData());
+		pagedFile.unpinPage(page);
+		pagedFile.close();
+
+		recordFile = RecordFile.open(path);
+		assertEquals(rest, collect(recordFile.cursor()));
+	}
+
+	/**
+	 * The predicate is tested on the views of records.
+	 */
+	@Test
+	public void testCursor_predicate() {
+		List<Pair<Record, RID>> pairs = insertSequenceRecords(recordFile);
+		// The last digit of "rec-dddd" is even.
+		List<Pair<Record, RID>> expected = pairs.stream()
+				.filter(pair -> pair.getLeft().getData()[7] % 2 == 0)
+				.collect(Collectors.toList());
+		RecordCursor cursor = recordFile.cursor(view -> view.getByte(7) % 2 == 0);
+		assertEquals(expected, collect(cursor));
+	}
+
+	@Test
+	public void testCursor_contentEquals() {
+		insertSequenceRecords(recordFile);
+		Record target = Record.fromString("rec-0042");
+		RecordCursor cursor = recordFile.cursor(view -> view.contentEquals(target.getData()));
+		List<Pair<Record, RID>> result = collect(cursor);
+		assertEquals(1, result.size());
+		assertEquals(target, result.get(0).getLeft());
+	}
+
+	@Test
+	public void testScan_condition() {
+		List<Pair<Record, RID>> pairs = insertSequenceRecords(recordFile);
+		List<Record> expected = pairs.stream()
+				.map(Pair::getLeft)
+				.filter(record -> record.toString().compareTo("rec-0100") < 0)
+				.collect(Collectors.toList());
+		// The digits "dddd" of "rec-dddd" are less than "0100".
+		Condition condition = Condition.of(4, AttrType.string(4), CompOp.LT, new StringAttr("0100"));
+		List<Record> result = RecordFileTestUtils.collect(recordFile.scan(condition));
+		assertEquals(100, result.size());
+		assertEquals(expected, result);
+	}
+
+	@Test
+	public void testCursor_variableLength() throws IOException {
+		recordFile.close();
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.createVariableLength(path);
+		List<Pair<Record, RID>> pairs = insertRecords(recordFile, N,
+				i -> Record.fromString(String.format("rec-%d", i)));
+		recordFile.deleteRecord(pairs.remove(N / 2).getRight());
+		assertEquals(pairs, collect(recordFile.cursor()));
+	}
+
+	@Test
+	public void testGetView_beforeAdvance() {
+		insertSequenceRecords(recordFile);
+		RecordCursor cursor = recordFile.cursor();
+		thrown.expect(IllegalStateException.class);
+		cursor.getView();
+	}
+
+	@Test
+	public void testAdvance_closed() {
+		insertSequenceRecords(recordFile);
+		RecordCursor cursor = recordFile.cursor();
+		cursor.advance();
+		cursor.close();
+		thrown.expect(IllegalStateException.class);
+		cursor.advance();
+	}
+
+	/**
+	 * A filtering cursor allocates nothing for the records it skips.
+	 */
+	@Test
+	public void testCursor_noAllocationPerRecord() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+		threadMXBean.setThreadAllocatedMemoryEnabled(true);
+		long threadId = Thread.currentThread().getId();
+
+		insertSequenceRecords(recordFile);
+		int rounds = 20;
+		for (int i = 0; i < rounds; i++) {
+			countNegativeFirstBytes();
+		}
+		long before = threadMXBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < rounds; i++) {
+			assertEquals(0, countNegativeFirstBytes());
+		}
+		long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+		assertEquals(0, allocated / ((long) rounds * N));
+	}
+
+	private int countNegativeFirstBytes() {
+		RecordCursor cursor = recordFile.cursor(view -> view.getByte(0) < 0);
+		int n = 0;
+		while (cursor.advance()) {
+			n++;
+		}
+		cursor.close();
+		return n;
+	}
+}
@@ -0,0 +1,167 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.RID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static me.nettee.pancake.core.record.RecordFileTestUtils.*;
+import static org.junit.Assert.*;
+
+public class RecordFileFreeSpaceMapTest {
+
+	private static final Path path = Paths.get("/tmp/f.db");
+	private static final int RECORD_SIZE = 20;
+	private static final int CAPACITY = FixedRecordPage.getPageRecordCapacity(RECORD_SIZE);
+
+	private RecordFile recordFile;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.create(path, RECORD_SIZE);
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.close();
+	}
+
+	private List<RID> insertRecords(int n) {
+		return ridsOf(insertRandomRecords(recordFile, n, RECORD_SIZE));
+	}
+
+	private static long countInPage(List<RID> rids, int pageNum) {
+		return rids.stream().filter(rid -> rid.pageNum == pageNum).count();
+	}
+
+	/**
+	 * The slots freed by deletes in any page are reused before new pages are
+	 * created.
+	 */
+	@Test
+	public void testReuseFreedSlots() {
+		List<RID> rids = insertRecords(3 * CAPACITY);
+		List<RID> deletedRids = new ArrayList<>();
+		for (int i = 0; i < rids.size(); i += 7) {
+			recordFile.deleteRecord(rids.get(i));
+			deletedRids.add(rids.get(i));
+		}
+		List<RID> newRids = insertRecords(deletedRids.size());
+		Collections.sort(newRids);
+		assertEquals(deletedRids, newRids);
+	}
+
+	/**
+	 * With a fill factor, insertions leave the rest of each page free.
+	 */
+	@Test
+	public void testFillFactor() {
+		recordFile.setFillFactor(50);
+		assertEquals(50, recordFile.getFillFactor());
+		List<RID> rids = insertRecords(2 * CAPACITY);
+		long n = countInPage(rids, rids.get(0).pageNum);
+		assertTrue(n <= CAPACITY / 2);
+		assertTrue(n >= CAPACITY / 2 - 1);
+
+		// The fill factor is stored in the file.
+		recordFile.close();
+		recordFile = RecordFile.open(path);
+		assertEquals(50, recordFile.getFillFactor());
+	}
+
+	/**
+	 * The free space map is kept after reopening, so the pages with free
+	 * space are still found.
+	 */
+	@Test
+	public void testReopen() {
+		List<RID> rids = insertRecords(2 * CAPACITY + 1);
+		RID rid = rids.get(CAPACITY / 2);
+		recordFile.deleteRecord(rid);
+		recordFile.close();
+		assertTrue(Files.exists(FreeSpaceMap.pathOf(path)));
+
+		recordFile = RecordFile.open(path);
+		assertEquals(rid, recordFile.insertRecord(getRandomRecord(RECORD_SIZE)));
+	}
+
+	/**
+	 * A lost free space map is rebuilt from the data pages.
+	 */
+	@Test
+	public void testRebuild() throws IOException {
+		List<RID> rids = insertRecords(2 * CAPACITY + 1);
+		RID rid = rids.get(3);
+		recordFile.deleteRecord(rid);
+		recordFile.close();
+		Files.delete(FreeSpaceMap.pathOf(path));
+
+		recordFile = RecordFile.open(path);
+		assertEquals(rid, recordFile.insertRecord(getRandomRecord(RECORD_SIZE)));
+	}
+
+	/**
+	 * The free space map is deleted once loaded, so a file which is not
+	 * closed after deletes has its map rebuilt from the data pages, and the
+	 * freed slots are still found.
+	 */
+	@Test
+	public void testReopen_notClosed() {
+		List<RID> rids = insertRecords(50 * CAPACITY);
+		recordFile.close();
+		recordFile = RecordFile.open(path);
+		assertFalse(Files.exists(FreeSpaceMap.pathOf(path)));
+
+		RID rid = rids.get(CAPACITY / 2);
+		recordFile.deleteRecord(rid);
+		// Reading the other pages evicts the changed page from the buffer,
+		// which writes it to the file.
+		recordFile.count(recordFile.splitPages(1).get(0));
+
+		// The record file is dropped without being closed.
+		recordFile = RecordFile.open(path);
+		assertEquals(rid, recordFile.insertRecord(getRandomRecord(RECORD_SIZE)));
+	}
+
+	/**
+	 * A variable-length record goes to the first page with enough space for
+	 * it, skipping the pages with less.
+	 */
+	@Test
+	public void testVariableLength() throws IOException {
+		recordFile.close();
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.createVariableLength(path);
+		List<RID> rids = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			rids.add(recordFile.insertRecord(getRandomRecord(500)));
+		}
+		int firstPageNum = rids.get(0).pageNum;
+		int lastPageNum = rids.get(rids.size() - 1).pageNum;
+		assertTrue(lastPageNum > firstPageNum + 1);
+
+		// The pages before the last have a little space left.
+		assertEquals(firstPageNum, recordFile.insertRecord(getRandomRecord(1)).pageNum);
+		assertEquals(lastPageNum, recordFile.insertRecord(getRandomRecord(500)).pageNum);
+	}
+
+	@Test
+	public void testSetFillFactor_outOfRange() {
+		thrown.expect(IllegalArgumentException.class);
+		recordFile.setFillFactor(5);
+	}
+}
@@ -0,0 +1,306 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static me.nettee.pancake.core.record.RecordFileTestUtils.*;
+import static org.junit.Assert.*;
+
+public class RecordFileOverflowTest {
+
+	private static final Path path = Paths.get("/tmp/n.db");
+	private static final int[] LENGTHS = {4, 100, 1100, 4096, 20000, 100000};
+
+	private RecordFile recordFile;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	// A record starting with its key as an int.
+	private static Record record(int key, int length) {
+		byte[] data = new byte[length];
+		for (int i = 4; i < length; i++) {
+			data[i] = (byte) (i * 31 + key);
+		}
+		ByteBuffer.wrap(data).putInt(key);
+		return new Record(data);
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.createVariableLength(path);
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.close();
+	}
+
+	private void reopen() {
+		recordFile.close();
+		recordFile = RecordFile.open(path);
+	}
+
+	private Map<RID, Record> insertRecords(int n) {
+		Map<RID, Record> records = new TreeMap<>();
+		for (int i = 0; i < n; i++) {
+			Record record = record(i, LENGTHS[i % LENGTHS.length]);
+			records.put(recordFile.insertRecord(record), record);
+		}
+		return records;
+	}
+
+	private void checkRecords(Map<RID, Record> records) {
+		for (Map.Entry<RID, Record> entry : records.entrySet()) {
+			assertEquals(entry.getValue(), recordFile.getRecord(entry.getKey()));
+		}
+		List<RID> rids = new ArrayList<>(records.keySet());
+		assertEquals(new ArrayList<>(records.values()), recordFile.getRecords(rids));
+	}
+
+	private Map<RID, Record> scanAll() {
+		Map<RID, Record> records = new TreeMap<>();
+		RecordCursor cursor = recordFile.cursor();
+		while (cursor.advance()) {
+			records.put(cursor.getView().getRID(), cursor.getView().toRecord());
+		}
+		cursor.close();
+		return records;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1000];
+		for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+			out.write(buffer, 0, n);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+	private static long overflowFileSize() throws IOException {
+		return Files.size(OverflowFile.pathOf(path));
+	}
+
+	@Test
+	public void testInsert() {
+		Map<RID, Record> records = insertRecords(60);
+		checkRecords(records);
+		assertEquals(records, scanAll());
+		reopen();
+		checkRecords(records);
+		assertEquals(records, scanAll());
+	}
+
+	/**
+	 * Long records leave only stubs in the data pages, so the short records
+	 * stay packed in a few data pages.
+	 */
+	@Test
+	public void testDataPagesOfShortRecords() {
+		Set<Integer> pageNums = new HashSet<>();
+		for (int i = 0; i < 200; i++) {
+			pageNums.add(recordFile.insertRecord(record(i, i % 2 == 0 ? 8 : 10000)).pageNum);
+		}
+		assertEquals(1, pageNums.size());
+		Condition condition = Condition.of(0, AttrType.INT, CompOp.LT, new IntAttr(10));
+		Set<Integer> keys = new TreeSet<>();
+		recordFile.stream(condition).forEach(record -> keys.add(ByteBuffer.wrap(record.getData()).getInt()));
+		assertEquals(10, keys.size());
+	}
+
+	@Test
+	public void testInsertRecords() {
+		List<Record> records = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			records.add(record(i, LENGTHS[i % LENGTHS.length]));
+		}
+		List<RID> rids = recordFile.insertRecords(records);
+		assertEquals(records, recordFile.getRecords(rids));
+	}
+
+	@Test
+	public void testStream() throws IOException {
+		for (int length : LENGTHS) {
+			Record record = record(length, length);
+			RID rid = recordFile.insertRecord(new ByteArrayInputStream(record.getData()));
+			assertEquals(record, recordFile.getRecord(rid));
+			assertArrayEquals(record.getData(), readAll(recordFile.openRecordStream(rid)));
+		}
+		RID rid = recordFile.insertRecord(new ByteArrayInputStream(new byte[0]));
+		assertEquals(0, recordFile.getRecord(rid).getLength());
+	}
+
+	/**
+	 * A record is streamed into overflow pages as it is read, and the
+	 * stream is read from overflow pages as it is consumed.
+	 */
+	@Test
+	public void testStream_byteByByte() throws IOException {
+		Record record = record(7, 3 * OverflowFile.PAGE_CAPACITY);
+		InputStream in = new FilterInputStream(new ByteArrayInputStream(record.getData())) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return super.read(b, off, Math.min(len, 1));
+			}
+		};
+		RID rid = recordFile.insertRecord(in);
+		InputStream stream = recordFile.openRecordStream(rid);
+		byte[] data = new byte[record.getLength()];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) stream.read();
+		}
+		assertEquals(-1, stream.read());
+		stream.close();
+		assertArrayEquals(record.getData(), data);
+	}
+
+	@Test
+	public void testUpdate() {
+		Map<RID, Record> records = insertRecords(30);
+		int i = 0;
+		for (Map.Entry<RID, Record> entry : records.entrySet()) {
+			Record record = record(-i, LENGTHS[(i + 3) % LENGTHS.length]);
+			recordFile.updateRecord(entry.getKey(), record);
+			entry.setValue(record);
+			i++;
+		}
+		checkRecords(records);
+		assertEquals(records, scanAll());
+	}
+
+	/**
+	 * A short record which no longer fits in its page is moved to overflow
+	 * pages, keeping its RID.
+	 */
+	@Test
+	public void testUpdate_notFitInPage() {
+		List<RID> rids = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			rids.add(recordFile.insertRecord(record(i, 1000)));
+		}
+		assertEquals(rids.get(0).pageNum, rids.get(3).pageNum);
+		Record record = record(0, 1010);
+		recordFile.updateRecord(rids.get(0), record);
+		assertEquals(record, recordFile.getRecord(rids.get(0)));
+	}
+
+	/**
+	 * The overflow pages of deleted or updated records are reused.
+	 */
+	@Test
+	public void testDelete_reuseOverflowPages() throws IOException {
+		RID rid = recordFile.insertRecord(record(1, 50000));
+		long size = overflowFileSize();
+		recordFile.deleteRecord(rid);
+		rid = recordFile.insertRecord(record(2, 50000));
+		assertEquals(size, overflowFileSize());
+		// The new record is written before the old one is freed.
+		recordFile.updateRecord(rid, record(3, 50000));
+		size = overflowFileSize();
+		recordFile.updateRecord(rid, record(4, 50000));
+		assertEquals(size, overflowFileSize());
+		assertEquals(record(4, 50000), recordFile.getRecord(rid));
+		recordFile.deleteRecord(rid);
+		thrown.expect(RecordNotExistException.class);
+		recordFile.getRecord(rid);
+	}
+
+	@Test
+	public void testCompaction() {
+		List<RID> rids = new ArrayList<>();
+		Map<RID, Record> remaining = new TreeMap<>();
+		for (int i = 0; i < 600; i++) {
+			Record record = record(i, i % 4 == 0 ? 5000 : 100);
+			rids.add(recordFile.insertRecord(record));
+			if (i % 3 == 0) {
+				remaining.put(rids.get(i), record);
+			}
+		}
+		for (int i = 0; i < 600; i++) {
+			if (i % 3 != 0) {
+				recordFile.deleteRecord(rids.get(i));
+			}
+		}
+		recordFile.addZoneMap(0, AttrType.INT);
+		Compaction compaction = recordFile.startCompaction(50, (oldRid, newRid) ->
+				remaining.put(newRid, remaining.remove(oldRid)));
+		while (compaction.step(Integer.MAX_VALUE)) {
+			// Run to the end.
+		}
+		assertTrue(compaction.getNumOfMovedRecords() > 0);
+		checkRecords(remaining);
+		assertEquals(remaining, scanAll());
+		Condition condition = Condition.of(0, AttrType.INT, CompOp.EQ, new IntAttr(3));
+		assertEquals(1, recordFile.count(condition));
+	}
+
+	@Test
+	public void testZoneMap() {
+		recordFile.addZoneMap(0, AttrType.INT);
+		for (int i = 0; i < 50; i++) {
+			Record record = record(i, 5000);
+			if (i % 2 == 0) {
+				recordFile.insertRecord(record);
+			} else {
+				recordFile.insertRecord(new ByteArrayInputStream(record.getData()));
+			}
+		}
+		Condition condition = Condition.of(0, AttrType.INT, CompOp.GE, new IntAttr(40));
+		assertEquals(10, recordFile.count(condition));
+		Aggregate aggregate = recordFile.aggregate(0, AttrType.INT);
+		assertEquals(49 * 50 / 2, aggregate.getIntSum());
+	}
+
+	/**
+	 * An attribute in the zone map beyond the prefix read first from the
+	 * stream is read back from the overflow pages.
+	 */
+	@Test
+	public void testZoneMap_streamAttrBeyondPrefix() {
+		recordFile.addZoneMap(3000, AttrType.INT);
+		for (int i = 0; i < 50; i++) {
+			Record record = record(i, 5000);
+			ByteBuffer.wrap(record.getData()).putInt(3000, i);
+			recordFile.insertRecord(new ByteArrayInputStream(record.getData()));
+		}
+		Condition condition = Condition.of(3000, AttrType.INT, CompOp.GE, new IntAttr(40));
+		assertEquals(10, recordFile.count(condition));
+		assertEquals(49 * 50 / 2, recordFile.aggregate(3000, AttrType.INT).getIntSum());
+	}
+
+	@Test
+	public void testProjection() {
+		Map<RID, Record> records = insertRecords(30);
+		Projection projection = Projection.of(0, 4).and(2000, 8);
+		List<Record> actual = collect(recordFile.scan(projection));
+		List<Record> expected = new ArrayList<>();
+		for (Record record : records.values()) {
+			byte[] bytes = new byte[projection.getLength()];
+			projection.project(record.getData(), 0, record.getLength(), bytes, 0);
+			expected.add(new Record(bytes));
+		}
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testStream_fixedLength() throws IOException {
+		recordFile.close();
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.create(path, 8);
+		thrown.expect(IllegalStateException.class);
+		recordFile.insertRecord(new ByteArrayInputStream(new byte[8]));
+	}
+}
@@ -0,0 +1,213 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.RID;
+import me.nettee.pancake.core.model.Record;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RecordFileParallelScanTest {
+
+	private static final Path path = Paths.get("/tmp/p.db");
+	private static final int RECORD_SIZE = 8;
+	private static final int NUM_PAGES = 16;
+	private static final int N = NUM_PAGES * FixedRecordPage.getPageRecordCapacity(RECORD_SIZE) - 3;
+
+	private RecordFile recordFile;
+	private List<Record> records;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private static Record record(int i) {
+		return new Record(ByteBuffer.allocate(RECORD_SIZE).putInt(i).putInt(~i).array());
+	}
+
+	private static int keyOf(RecordView view) {
+		return view.getInt(0);
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+		records = IntStream.range(0, N)
+				.mapToObj(RecordFileParallelScanTest::record)
+				.collect(Collectors.toList());
+		recordFile = RecordFile.bulkLoad(path, RECORD_SIZE, records.iterator());
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.close();
+	}
+
+	@Test
+	public void testSplitPages() {
+		List<PageRange> ranges = recordFile.splitPages(5);
+		assertEquals(5, ranges.size());
+		assertEquals(1, ranges.get(0).fromPageNum);
+		assertEquals(NUM_PAGES + 1, ranges.get(4).toPageNum);
+		for (int i = 1; i < ranges.size(); i++) {
+			assertEquals(ranges.get(i - 1).toPageNum, ranges.get(i).fromPageNum);
+			assertTrue(Math.abs(ranges.get(i).size() - ranges.get(0).size()) <= 1);
+		}
+	}
+
+	@Test
+	public void testSplitPages_moreSplitsThanPages() {
+		List<PageRange> ranges = recordFile.splitPages(NUM_PAGES * 2);
+		assertEquals(NUM_PAGES, ranges.size());
+		for (PageRange range : ranges) {
+			assertEquals(1, range.size());
+		}
+	}
+
+	@Test
+	public void testSplitPages_emptyFile() throws IOException {
+		recordFile.close();
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.create(path, RECORD_SIZE);
+		assertEquals(Collections.emptyList(), recordFile.splitPages(4));
+		assertEquals(0, recordFile.parallelStream().count());
+	}
+
+	/**
+	 * Cursors over the split ranges, each used by its own thread, visit all
+	 * the records together.
+	 */
+	@Test
+	public void testCursor_rangesInThreads() throws Exception {
+		List<PageRange> ranges = recordFile.splitPages(4);
+		ExecutorService executor = Executors.newFixedThreadPool(ranges.size());
+		try {
+			List<Future<List<Record>>> futures = new ArrayList<>();
+			for (PageRange range : ranges) {
+				futures.add(executor.submit(() -> {
+					List<Record> result = new ArrayList<>();
+					RecordCursor cursor = recordFile.cursor(range);
+					while (cursor.advance()) {
+						result.add(cursor.getView().toRecord());
+					}
+					cursor.close();
+					return result;
+				}));
+			}
+			List<Record> result = new ArrayList<>();
+			for (Future<List<Record>> future : futures) {
+				result.addAll(future.get());
+			}
+			assertEquals(records, result);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testCursor_rangeWithPredicate() {
+		PageRange range = recordFile.splitPages(4).get(1);
+		RecordCursor cursor = recordFile.cursor(range, view -> keyOf(view) % 10 == 0);
+		int n = 0;
+		while (cursor.advance()) {
+			RecordView view = cursor.getView();
+			assertTrue(range.fromPageNum <= view.getPageNum() && view.getPageNum() < range.toPageNum);
+			assertEquals(0, keyOf(view) % 10);
+			n++;
+		}
+		cursor.close();
+		assertTrue(n > 0);
+	}
+
+	@Test
+	public void testCursor_rangeIncludesHeaderPage() {
+		thrown.expect(IllegalArgumentException.class);
+		recordFile.cursor(new PageRange(0, 2));
+	}
+
+	@Test
+	public void testStream() {
+		assertEquals(records, recordFile.stream().collect(Collectors.toList()));
+	}
+
+	/**
+	 * A parallel stream keeps the order of records.
+	 */
+	@Test
+	public void testParallelStream() {
+		assertEquals(records, recordFile.parallelStream().collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testParallelStream_predicate() {
+		List<Record> expected = records.stream()
+				.filter(record -> record.getData()[3] % 3 == 0)
+				.collect(Collectors.toList());
+		List<Record> result = recordFile.parallelStream(view -> view.getByte(3) % 3 == 0)
+				.collect(Collectors.toList());
+		assertEquals(expected, result);
+	}
+
+	/**
+	 * Deleted records and empty pages are skipped.
+	 */
+	@Test
+	public void testParallelStream_deleteSome() {
+		List<Record> expected = new ArrayList<>();
+		RecordCursor cursor = recordFile.cursor();
+		List<RID> toDelete = new ArrayList<>();
+		while (cursor.advance()) {
+			RecordView view = cursor.getView();
+			if (keyOf(view) % 7 == 0 || view.getPageNum() == 3) {
+				toDelete.add(view.getRID());
+			} else {
+				expected.add(view.toRecord());
+			}
+		}
+		cursor.close();
+		for (RID rid : toDelete) {
+			recordFile.deleteRecord(rid);
+		}
+		assertEquals(expected, recordFile.parallelStream().collect(Collectors.toList()));
+		assertEquals(expected.size(), recordFile.parallelStream().count());
+	}
+
+	/**
+	 * A stream not consumed to the end leaves no pages pinned, so that the
+	 * file can be closed.
+	 */
+	@Test
+	public void testParallelStream_shortCircuit() {
+		Record target = record(N / 2);
+		assertTrue(recordFile.parallelStream().anyMatch(target::equals));
+		assertEquals(record(0), recordFile.parallelStream().findFirst().get());
+	}
+
+	@Test
+	public void testSpliterator_split() {
+		Spliterator<Record> spliterator = recordFile.spliterator();
+		Spliterator<Record> prefix = spliterator.trySplit();
+		List<Record> result = new ArrayList<>();
+		prefix.forEachRemaining(result::add);
+		spliterator.forEachRemaining(result::add);
+		assertEquals(records, result);
+	}
+}
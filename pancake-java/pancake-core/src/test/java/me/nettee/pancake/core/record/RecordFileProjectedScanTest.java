@@ -0,0 +1,164 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static me.nettee.pancake.core.record.RecordFileTestUtils.*;
+import static org.junit.Assert.*;
+
+public class RecordFileProjectedScanTest {
+
+	private static final Path path = Paths.get("/tmp/j.db");
+	// An int, a float and a 12-byte string.
+	private static final int[] ATTR_LENGTHS = {4, 4, 12};
+	private static final int RECORD_SIZE = 20;
+	private static final int N = 500;
+
+	private RecordFile recordFile;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private static Record project(Record record, Projection projection) {
+		byte[] bytes = new byte[projection.getLength()];
+		projection.project(record.getData(), 0, record.getLength(), bytes, 0);
+		return new Record(bytes);
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.create(path, RECORD_SIZE);
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.close();
+	}
+
+	private void recreate(boolean columnar) throws IOException {
+		recordFile.close();
+		Files.deleteIfExists(path);
+		recordFile = columnar ? RecordFile.createColumnar(path, ATTR_LENGTHS)
+				: RecordFile.create(path, RECORD_SIZE);
+	}
+
+	private static List<Record> expected(Projection projection, int from, int to) {
+		List<Record> records = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			records.add(project(typedRecord(i, RECORD_SIZE), projection));
+		}
+		return records;
+	}
+
+	@Test
+	public void testScan() throws IOException {
+		Projection projection = Projection.of(8, 6).and(0, 4);
+		for (boolean columnar : new boolean[]{false, true}) {
+			recreate(columnar);
+			insertTypedRecords(recordFile, N, RECORD_SIZE);
+			assertEquals(expected(projection, 0, N), collect(recordFile.scan(projection)));
+		}
+	}
+
+	/**
+	 * The condition is on whole records, whether its attribute is in the
+	 * projection or not.
+	 */
+	@Test
+	public void testScan_condition() throws IOException {
+		Condition condition = Condition.of(0, AttrType.INT, CompOp.LT, new IntAttr(100));
+		Projection withAttr = Projection.of(4, 4).and(0, 4);
+		Projection withoutAttr = Projection.of(8, 12);
+		for (boolean columnar : new boolean[]{false, true}) {
+			recreate(columnar);
+			recordFile.addZoneMap(0, AttrType.INT);
+			insertTypedRecords(recordFile, N, RECORD_SIZE);
+			assertEquals(expected(withAttr, 0, 100), collect(recordFile.scan(withAttr, condition)));
+			assertEquals(expected(withoutAttr, 0, 100), collect(recordFile.scan(withoutAttr, condition)));
+		}
+	}
+
+	/**
+	 * Projected records are copied back to back into the buffer, as many
+	 * as fit.
+	 */
+	@Test
+	public void testNext_buffer() throws IOException {
+		Projection projection = Projection.of(0, 4).and(12, 8);
+		for (boolean columnar : new boolean[]{false, true}) {
+			recreate(columnar);
+			insertTypedRecords(recordFile, N, RECORD_SIZE);
+			for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(250),
+					ByteBuffer.allocateDirect(250)}) {
+				List<Record> actual = new ArrayList<>();
+				ProjectedScan scan = recordFile.scan(projection);
+				for (int n = scan.next(buffer); n > 0; n = scan.next(buffer)) {
+					assertEquals(buffer.position(), n * projection.getLength());
+					assertTrue(n == 20 || actual.size() + n == N);
+					buffer.flip();
+					for (int i = 0; i < n; i++) {
+						byte[] bytes = new byte[projection.getLength()];
+						buffer.get(bytes);
+						actual.add(new Record(bytes));
+					}
+					buffer.clear();
+				}
+				scan.close();
+				assertEquals(expected(projection, 0, N), actual);
+			}
+		}
+	}
+
+	@Test
+	public void testScan_variableLength() throws IOException {
+		recordFile.close();
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.createVariableLength(path);
+		List<Record> records = new ArrayList<>();
+		for (int i = 0; i < N; i++) {
+			byte[] data = typedRecord(i, RECORD_SIZE).getData();
+			Record record = new Record(Arrays.copyOf(data, i % RECORD_SIZE + 1));
+			recordFile.insertRecord(record);
+			records.add(record);
+		}
+		Projection projection = Projection.of(10, 6).and(0, 4);
+		Set<String> expected = new TreeSet<>();
+		for (Record record : records) {
+			expected.add(Arrays.toString(project(record, projection).getData()));
+		}
+		Set<String> actual = new TreeSet<>();
+		for (Record record : collect(recordFile.scan(projection))) {
+			actual.add(Arrays.toString(record.getData()));
+		}
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testNext_bufferTooSmall() {
+		ProjectedScan scan = recordFile.scan(Projection.of(0, 8));
+		try {
+			thrown.expect(IllegalArgumentException.class);
+			scan.next(ByteBuffer.allocate(7));
+		} finally {
+			scan.close();
+		}
+	}
+
+	@Test
+	public void testScan_projectionOutOfRecord() {
+		thrown.expect(IllegalArgumentException.class);
+		recordFile.scan(Projection.of(16, 8));
+	}
+}
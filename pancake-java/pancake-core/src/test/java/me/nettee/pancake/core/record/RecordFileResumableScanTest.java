@@ -0,0 +1,166 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static me.nettee.pancake.core.record.RecordFileTestUtils.*;
+import static org.junit.Assert.*;
+
+public class RecordFileResumableScanTest {
+
+	private static final Path path = Paths.get("/tmp/q.db");
+	private static final int RECORD_SIZE = 8;
+	private static final int CAPACITY = FixedRecordPage.getPageRecordCapacity(RECORD_SIZE);
+	private static final int N = 3 * CAPACITY + 11;
+
+	private RecordFile recordFile;
+	private List<RID> rids;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private static int key(Record record) {
+		return ByteBuffer.wrap(record.getData()).getInt();
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.create(path, RECORD_SIZE);
+		rids = insertTypedRecords(recordFile, N, RECORD_SIZE);
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.close();
+	}
+
+	private static List<Integer> keys(Scan<Record> scan) {
+		return collect(scan).stream()
+				.map(RecordFileResumableScanTest::key)
+				.collect(Collectors.toList());
+	}
+
+	private static List<Integer> range(int from, int to) {
+		List<Integer> keys = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			keys.add(i);
+		}
+		return keys;
+	}
+
+	@Test
+	public void testScan_limit() {
+		ResumableScan scan = recordFile.scan(null, 0, 10, null);
+		assertEquals(range(0, 10), keys(scan));
+		assertEquals(new RID(rids.get(9).pageNum, rids.get(9).slotNum + 1),
+				scan.getResumePosition().get());
+	}
+
+	@Test
+	public void testScan_offset() {
+		assertEquals(range(CAPACITY + 5, CAPACITY + 25), keys(recordFile.scan(null, CAPACITY + 5, 20, null)));
+		assertEquals(Collections.emptyList(), keys(recordFile.scan(null, N, 20, null)));
+	}
+
+	/**
+	 * Paging through the records by resume positions returns every record
+	 * once, across pages and deleted records.
+	 */
+	@Test
+	public void testScan_resume() {
+		for (int i = 0; i < N; i += 5) {
+			recordFile.deleteRecord(rids.get(i));
+		}
+		List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < N; i++) {
+			if (i % 5 != 0) {
+				expected.add(i);
+			}
+		}
+		List<Integer> actual = new ArrayList<>();
+		RID position = null;
+		int numScans = 0;
+		do {
+			ResumableScan scan = recordFile.scan(position, 0, 37, null);
+			List<Integer> keys = keys(scan);
+			assertTrue(keys.size() <= 37);
+			actual.addAll(keys);
+			position = scan.getResumePosition().orElse(null);
+			numScans++;
+		} while (position != null);
+		assertEquals(expected, actual);
+		assertEquals(expected.size() / 37 + 1, numScans);
+	}
+
+	@Test
+	public void testScan_resumeWithCondition() {
+		Condition condition = Condition.of(0, AttrType.INT, CompOp.GE, new IntAttr(N - 30));
+		ResumableScan scan = recordFile.scan(null, 0, 20, condition);
+		assertEquals(range(N - 30, N - 10), keys(scan));
+		RID position = scan.getResumePosition().get();
+		scan = recordFile.scan(position, 0, 20, condition);
+		assertEquals(range(N - 10, N), keys(scan));
+		assertFalse(scan.getResumePosition().isPresent());
+	}
+
+	@Test
+	public void testCursor_from() {
+		RID from = rids.get(CAPACITY + 3);
+		RecordCursor cursor = recordFile.cursor(from, null);
+		int i = CAPACITY + 3;
+		while (cursor.advance()) {
+			assertEquals(rids.get(i), cursor.getView().getRID());
+			i++;
+		}
+		cursor.close();
+		assertEquals(N, i);
+	}
+
+	/**
+	 * A cursor may start from a RID which is not of a record, such as one
+	 * of a deleted record or one before the data pages.
+	 */
+	@Test
+	public void testCursor_fromNonRecord() {
+		recordFile.deleteRecord(rids.get(7));
+		RecordCursor cursor = recordFile.cursor(rids.get(7), null);
+		assertTrue(cursor.advance());
+		assertEquals(rids.get(8), cursor.getView().getRID());
+		cursor.close();
+
+		cursor = recordFile.cursor(new RID(0, 0), null);
+		assertTrue(cursor.advance());
+		assertEquals(rids.get(0), cursor.getView().getRID());
+		cursor.close();
+	}
+
+	@Test
+	public void testGetResumePosition_notOnRecord() {
+		RecordCursor cursor = recordFile.cursor();
+		try {
+			thrown.expect(IllegalStateException.class);
+			cursor.getResumePosition();
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Test
+	public void testScan_negativeLimit() {
+		thrown.expect(IllegalArgumentException.class);
+		recordFile.scan(null, 0, -1, null);
+	}
+}
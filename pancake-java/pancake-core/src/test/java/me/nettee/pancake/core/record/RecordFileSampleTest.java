@@ -0,0 +1,125 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class RecordFileSampleTest {
+
+	private static final Path path = Paths.get("/tmp/s.db");
+	private static final int RECORD_SIZE = 64;
+	private static final int CAPACITY = FixedRecordPage.getPageRecordCapacity(RECORD_SIZE);
+	private static final int NUM_PAGES = 100;
+	private static final int N = NUM_PAGES * CAPACITY;
+
+	private RecordFile recordFile;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.create(path, RECORD_SIZE);
+		for (int i = 0; i < N; i++) {
+			recordFile.insertRecord(new Record(ByteBuffer.allocate(RECORD_SIZE).putInt(i).array()));
+		}
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.close();
+	}
+
+	/**
+	 * @return the RIDs of the sampled records, which are all the records of
+	 * the sampled pages
+	 */
+	private List<RID> scan(SampleCursor cursor) {
+		List<RID> rids = new ArrayList<>();
+		Set<Integer> pageNums = new TreeSet<>();
+		while (cursor.advance()) {
+			RID rid = cursor.getView().getRID();
+			if (!rids.isEmpty()) {
+				assertTrue(rids.get(rids.size() - 1).compareTo(rid) < 0);
+			}
+			rids.add(rid);
+			pageNums.add(rid.pageNum);
+		}
+		cursor.close();
+		assertEquals(cursor.getNumOfSampledPages(), pageNums.size());
+		assertEquals(cursor.getNumOfSampledPages() * CAPACITY, rids.size());
+		return rids;
+	}
+
+	@Test
+	public void testSample() {
+		SampleCursor cursor = recordFile.sample(0.2, 42);
+		List<RID> rids = scan(cursor);
+		assertEquals(NUM_PAGES, cursor.getNumOfPages());
+		assertEquals((double) cursor.getNumOfSampledPages() / NUM_PAGES,
+				cursor.getSamplingFraction(), 1e-9);
+		assertTrue(cursor.getNumOfSampledPages() > 5 && cursor.getNumOfSampledPages() < 40);
+		double estimate = rids.size() / cursor.getSamplingFraction();
+		assertEquals(N, estimate, 1e-6);
+	}
+
+	@Test
+	public void testSample_seeded() {
+		assertEquals(scan(recordFile.sample(0.3, 7)), scan(recordFile.sample(0.3, 7)));
+		assertNotEquals(scan(recordFile.sample(0.3, 7)), scan(recordFile.sample(0.3, 8)));
+	}
+
+	@Test
+	public void testSample_allOrNone() {
+		assertEquals(N, scan(recordFile.sample(1.0, 1)).size());
+		SampleCursor cursor = recordFile.sample(0.0, 1);
+		assertTrue(scan(cursor).isEmpty());
+		assertEquals(0.0, cursor.getSamplingFraction(), 0.0);
+	}
+
+	/**
+	 * An estimate from the sample is close to the value over the file.
+	 */
+	@Test
+	public void testSample_estimate() {
+		Condition condition = Condition.of(0, AttrType.INT, CompOp.LT, new IntAttr(N / 4));
+		SampleCursor cursor = recordFile.samplePages(50, 3);
+		int n = 0;
+		while (cursor.advance()) {
+			if (condition.test(cursor.getView())) {
+				n++;
+			}
+		}
+		cursor.close();
+		assertEquals(0.5, cursor.getSamplingFraction(), 0.0);
+		assertEquals(N / 4, n / cursor.getSamplingFraction(), N / 10);
+	}
+
+	@Test
+	public void testSamplePages() {
+		for (int numPages : new int[]{0, 1, 17, NUM_PAGES, NUM_PAGES + 5}) {
+			SampleCursor cursor = recordFile.samplePages(numPages, numPages);
+			scan(cursor);
+			assertEquals(Math.min(numPages, NUM_PAGES), cursor.getNumOfSampledPages());
+		}
+	}
+
+	@Test
+	public void testSample_invalidFraction() {
+		thrown.expect(IllegalArgumentException.class);
+		recordFile.sample(1.5, 0);
+	}
+}
@@ -16,6 +16,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -161,6 +162,24 @@ public class RecordFileScanTest {
 
     }
 
+    /**
+     * We will get all records with {@code scan()} from sparse pages, where
+     * most of the records are deleted.
+     */
+    @Test
+    public void testScan_deleteMost() {
+        List<Pair<Record, RID>> pairs = insertSequenceRecords(recordFile);
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < pairs.size(); i++) {
+            if (i % 97 == 0) {
+                records.add(pairs.get(i).getLeft());
+            } else {
+                recordFile.deleteRecord(pairs.get(i).getRight());
+            }
+        }
+        checkScanAll(records, recordFile.scan());
+    }
+
     /**
      * We will get all records using {@code scan()} with {@code true} predicate.
      */
@@ -2,6 +2,7 @@ package me.nettee.pancake.core.record;
 
 import me.nettee.pancake.core.model.RID;
 import me.nettee.pancake.core.model.Record;
+import me.nettee.pancake.core.model.Scan;
 import me.nettee.pancake.core.page.Pages;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.RandomUtils;
@@ -10,9 +11,11 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.function.IntFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 class RecordFileTestUtils {
 
@@ -20,7 +23,7 @@ class RecordFileTestUtils {
 
     // Return as JUnit parameterized test params.
     static List<Object[]> randomRecordNumbers(int recordSize) {
-        int capacity = RecordPage.getPageRecordCapacity(recordSize);
+        int capacity = FixedRecordPage.getPageRecordCapacity(recordSize);
         Object[][] data = {
                 {1},
                 {RandomUtils.nextInt(2, capacity)},
@@ -66,11 +69,78 @@ class RecordFileTestUtils {
         return insertRecords(recordFile, N, i -> getRandomRecord(recordSize));
     }
 
+    /**
+     * Insert the typed records of keys <tt>[0, N)</tt> in order.
+     * @return the RIDs of the records, in the order of their keys
+     */
+    static List<RID> insertTypedRecords(RecordFile recordFile,
+                                        int N,
+                                        int recordSize) {
+        return ridsOf(insertRecords(recordFile, N, i -> typedRecord(i, recordSize)));
+    }
+
+    static List<RID> ridsOf(List<Pair<Record, RID>> insertedRecords) {
+        return insertedRecords.stream()
+                .map(Pair::getRight)
+                .collect(Collectors.toList());
+    }
+
     static Record getRandomRecord(int recordSize) {
         String str = RandomStringUtils.randomAlphabetic(recordSize);
         return Record.fromString(str);
     }
 
+    static List<Record> getRandomRecords(int n, int recordSize) {
+        List<Record> records = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            records.add(getRandomRecord(recordSize));
+        }
+        return records;
+    }
+
+    /**
+     * A record of <tt>recordSize</tt> (at least 8) bytes, whose attributes
+     * are derived from <tt>key</tt>: the key as an int at offset 0, half of
+     * the key as a float at offset 4, and the key as a string at offset 8
+     * (see {@link #keyString(int, int)}) filling the rest of the record.
+     */
+    static Record typedRecord(int key, int recordSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(recordSize);
+        buffer.putInt(key).putFloat(key * 0.5f).put(keyString(key, recordSize - 8).getBytes());
+        return new Record(buffer.array());
+    }
+
+    static List<Record> typedRecords(int n, int recordSize) {
+        return IntStream.range(0, n)
+                .mapToObj(key -> typedRecord(key, recordSize))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the last <tt>length</tt> digits of the key in decimal, padded
+     * with zeros, so that the strings of non-negative keys below
+     * 10<sup>length</sup> are in the order of the keys
+     */
+    static String keyString(int key, int length) {
+        if (length == 0) {
+            return "";
+        }
+        String str = String.format("%0" + length + "d", key);
+        return str.substring(str.length() - length);
+    }
+
+    /**
+     * Read all the records of <tt>scan</tt>, and close it.
+     */
+    static List<Record> collect(Scan<Record> scan) {
+        List<Record> records = new ArrayList<>();
+        for (Optional<Record> record = scan.next(); record.isPresent(); record = scan.next()) {
+            records.add(record.get());
+        }
+        scan.close();
+        return records;
+    }
+
     static <E> E pickOne(List<E> list) {
         int i = RandomUtils.nextInt(0, list.size());
         return list.get(i);
@@ -0,0 +1,237 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.RID;
+import me.nettee.pancake.core.model.Record;
+import me.nettee.pancake.core.page.Page;
+import org.apache.commons.lang3.RandomUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static me.nettee.pancake.core.record.RecordFileTestUtils.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RecordFileVariableLengthTest {
+
+	private static final int MAX_LENGTH = 200;
+	private static final int ROUNDS = 2000;
+
+	private static final Path path = Paths.get("/tmp/v.db");
+	private RecordFile recordFile;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.createVariableLength(path);
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.close();
+	}
+
+	private void reopen() {
+		recordFile.close();
+		recordFile = RecordFile.open(path);
+	}
+
+	private static Record getRandomVariableRecord() {
+		return getRandomRecord(RandomUtils.nextInt(0, MAX_LENGTH + 1));
+	}
+
+	private List<Pair<Record, RID>> insertRandomVariableRecords(int n) {
+		return insertRecords(recordFile, n, i -> getRandomVariableRecord());
+	}
+
+	private void checkRecords(List<Pair<Record, RID>> pairs) {
+		for (Pair<Record, RID> pair : pairs) {
+			assertEquals(pair.getLeft(), recordFile.getRecord(pair.getRight()));
+		}
+	}
+
+	private static Set<String> toStrings(Collection<Record> records) {
+		return records.stream().map(Record::toString).collect(Collectors.toSet());
+	}
+
+	/**
+	 * Records of different lengths can be inserted and retrieved.
+	 */
+	@Test
+	public void testInsertAndGet() {
+		List<Pair<Record, RID>> pairs = insertRandomVariableRecords(ROUNDS);
+		Set<RID> rids = pairs.stream().map(Pair::getRight).collect(Collectors.toSet());
+		assertEquals(ROUNDS, rids.size());
+		checkRecords(pairs);
+	}
+
+	/**
+	 * Short records are not padded, so a page holds many more of them than
+	 * a fixed-length page with the maximum record length.
+	 */
+	@Test
+	public void testDensity() {
+		List<Pair<Record, RID>> pairs = insertRecords(recordFile, ROUNDS,
+				i -> getRandomRecord(8));
+		long numPages = pairs.stream().map(p -> p.getRight().pageNum).distinct().count();
+		int fixedPages = ROUNDS / FixedRecordPage.getPageRecordCapacity(MAX_LENGTH) + 1;
+		assertTrue(numPages * 10 < fixedPages);
+	}
+
+	/**
+	 * A record can be updated to a shorter or longer one, without changing
+	 * its RID.
+	 */
+	@Test
+	public void testUpdate() {
+		List<Pair<Record, RID>> pairs = insertRandomVariableRecords(ROUNDS);
+		List<Pair<Record, RID>> updated = new ArrayList<>();
+		for (Pair<Record, RID> pair : pairs) {
+			Record newRecord = getRandomRecord(pair.getLeft().getLength() / 2);
+			recordFile.updateRecord(pair.getRight(), newRecord);
+			updated.add(Pair.of(newRecord, pair.getRight()));
+		}
+		checkRecords(updated);
+		for (Pair<Record, RID> pair : updated) {
+			Record newRecord = getRandomRecord(pair.getLeft().getLength() * 2);
+			recordFile.updateRecord(pair.getRight(), newRecord);
+			assertEquals(newRecord, recordFile.getRecord(pair.getRight()));
+		}
+	}
+
+	/**
+	 * A deleted record cannot be retrieved, and its slot is reused.
+	 */
+	@Test
+	public void testDeleteAndReInsert() {
+		List<Pair<Record, RID>> pairs = insertRandomVariableRecords(ROUNDS);
+		RID rid = pickOne(pairs).getRight();
+		recordFile.deleteRecord(rid);
+		assertEquals(rid, recordFile.insertRecord(getRandomRecord(1)));
+		recordFile.deleteRecord(rid);
+		thrown.expect(RecordNotExistException.class);
+		recordFile.getRecord(rid);
+	}
+
+	/**
+	 * A record deleted from a full page leaves a free slot, so a record
+	 * taking exactly the freed bytes fits in the page without a new slot.
+	 */
+	@Test
+	public void testDeleteAndReInsert_freeSlot() {
+		List<RID> rids = new ArrayList<>();
+		int firstPage = -1;
+		while (true) {
+			RID rid = recordFile.insertRecord(getRandomRecord(100));
+			if (firstPage < 0) {
+				firstPage = rid.pageNum;
+			}
+			if (rid.pageNum != firstPage) {
+				break;
+			}
+			rids.add(rid);
+		}
+		int pageSpace = Page.DATA_SIZE - SlottedRecordPage.HEADER_SIZE;
+		int leftSpace = pageSpace - rids.size() * (100 + SlottedRecordPage.SLOT_SIZE);
+		RID rid = rids.get(rids.size() / 2);
+		recordFile.deleteRecord(rid);
+		Record record = getRandomRecord(100 + leftSpace);
+		assertEquals(rid, recordFile.insertRecord(record));
+		assertEquals(record, recordFile.getRecord(rid));
+	}
+
+	/**
+	 * Holes left by deleted records are reclaimed by compaction. Records
+	 * that stay in the page keep their RIDs and contents.
+	 */
+	@Test
+	public void testCompaction() {
+		List<Pair<Record, RID>> pairs = new ArrayList<>();
+		int firstPage = -1;
+		while (true) {
+			Record record = getRandomRecord(100);
+			RID rid = recordFile.insertRecord(record);
+			if (firstPage < 0) {
+				firstPage = rid.pageNum;
+			}
+			if (rid.pageNum != firstPage) {
+				break;
+			}
+			pairs.add(Pair.of(record, rid));
+		}
+		List<Pair<Record, RID>> remaining = new ArrayList<>();
+		for (int i = 0; i < pairs.size(); i++) {
+			if (i % 2 == 0) {
+				recordFile.deleteRecord(pairs.get(i).getRight());
+			} else {
+				remaining.add(pairs.get(i));
+			}
+		}
+		// Each record is longer than any hole, so it fits only after
+		// compaction.
+		int n = pairs.size() / 2 * 100 / 160 - 1;
+		for (int i = 0; i < n; i++) {
+			Record record = getRandomRecord(150);
+			RID rid = recordFile.insertRecord(record);
+			assertEquals(firstPage, rid.pageNum);
+			remaining.add(Pair.of(record, rid));
+		}
+		checkRecords(remaining);
+	}
+
+	/**
+	 * Scan returns all the records that are not deleted.
+	 */
+	@Test
+	public void testScan() {
+		List<Pair<Record, RID>> pairs = insertRandomVariableRecords(ROUNDS);
+		List<Record> records = new ArrayList<>();
+		for (Pair<Record, RID> pair : pairs) {
+			if (RandomUtils.nextInt(0, 3) == 0) {
+				recordFile.deleteRecord(pair.getRight());
+			} else {
+				records.add(pair.getLeft());
+			}
+		}
+		List<Record> scanned = collect(recordFile.scan());
+		assertEquals(records.size(), scanned.size());
+		assertEquals(toStrings(records), toStrings(scanned));
+	}
+
+	/**
+	 * Records are restored after re-open.
+	 */
+	@Test
+	public void testReopen() {
+		List<Pair<Record, RID>> pairs = insertRandomVariableRecords(ROUNDS);
+		reopen();
+		assertTrue(recordFile.isVariableLength());
+		checkRecords(pairs);
+		// Inserting after re-open does not overwrite existing records.
+		List<Pair<Record, RID>> morePairs = insertRandomVariableRecords(ROUNDS);
+		checkRecords(pairs);
+		checkRecords(morePairs);
+	}
+
+	/**
+	 * A record longer than the maximum record size cannot be inserted.
+	 */
+	@Test
+	public void testInsert_tooLong() {
+		thrown.expect(IllegalArgumentException.class);
+		recordFile.insertRecord(getRandomRecord(recordFile.getMaxRecordSize() + 1));
+	}
+}
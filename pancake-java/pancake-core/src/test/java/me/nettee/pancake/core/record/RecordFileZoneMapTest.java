@@ -0,0 +1,212 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static me.nettee.pancake.core.record.RecordFileTestUtils.*;
+import static org.junit.Assert.*;
+
+public class RecordFileZoneMapTest {
+
+	private static final Path path = Paths.get("/tmp/z.db");
+	private static final int RECORD_SIZE = 12;
+	private static final int CAPACITY = FixedRecordPage.getPageRecordCapacity(RECORD_SIZE);
+	private static final int N = 5 * CAPACITY + 3;
+
+	private RecordFile recordFile;
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private static Condition keyCondition(CompOp op, int key) {
+		return Condition.of(0, AttrType.INT, op, new IntAttr(key));
+	}
+
+	private static List<Record> filter(List<Record> records, Condition condition) {
+		List<Record> result = new ArrayList<>();
+		RecordView view = new RecordView();
+		for (Record record : records) {
+			view.set(0, 0, record.getData(), 0, record.getLength());
+			if (condition.test(view)) {
+				result.add(record);
+			}
+		}
+		return result;
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.create(path, RECORD_SIZE);
+	}
+
+	@After
+	public void tearDown() {
+		recordFile.close();
+	}
+
+	private void checkScans(List<Record> records) {
+		for (CompOp op : CompOp.values()) {
+			for (int key : new int[]{-1, 0, CAPACITY - 1, CAPACITY, N / 2, N - 1, N}) {
+				Condition condition = keyCondition(op, key);
+				assertEquals(condition.toString(), filter(records, condition),
+						collect(recordFile.scan(condition)));
+			}
+		}
+		Condition floatCondition = Condition.of(4, AttrType.FLOAT, CompOp.GE, new FloatAttr(N / 4.0f));
+		assertEquals(filter(records, floatCondition), collect(recordFile.scan(floatCondition)));
+		Condition stringCondition = Condition.of(8, AttrType.string(4), CompOp.LT, new StringAttr("0100"));
+		assertEquals(filter(records, stringCondition), collect(recordFile.scan(stringCondition)));
+	}
+
+	/**
+	 * The zone map built from the existing records gives the same scan
+	 * results.
+	 */
+	@Test
+	public void testAddZoneMap_existingRecords() {
+		List<Record> records = typedRecords(N, RECORD_SIZE);
+		recordFile.insertRecords(records);
+		recordFile.addZoneMap(0, AttrType.INT);
+		recordFile.addZoneMap(4, AttrType.FLOAT);
+		recordFile.addZoneMap(8, AttrType.string(4));
+		checkScans(records);
+	}
+
+	/**
+	 * The zone map is maintained on insertion, and kept after reopening.
+	 */
+	@Test
+	public void testAddZoneMap_beforeInsert() {
+		recordFile.addZoneMap(0, AttrType.INT);
+		recordFile.addZoneMap(4, AttrType.FLOAT);
+		recordFile.addZoneMap(8, AttrType.string(4));
+		List<Record> records = typedRecords(N, RECORD_SIZE);
+		for (Record record : records.subList(0, CAPACITY + 1)) {
+			recordFile.insertRecord(record);
+		}
+		recordFile.insertRecords(records.subList(CAPACITY + 1, N));
+		checkScans(records);
+		recordFile.close();
+		recordFile = RecordFile.open(path);
+		checkScans(records);
+	}
+
+	/**
+	 * The pages where no records can satisfy a condition are skipped.
+	 */
+	@Test
+	public void testZoneMap_skipPages() {
+		List<RID> rids = recordFile.insertRecords(typedRecords(N, RECORD_SIZE));
+		recordFile.addZoneMap(0, AttrType.INT);
+		recordFile.close();
+
+		ZoneMap zoneMap = ZoneMap.open(path);
+		try {
+			Condition condition = keyCondition(CompOp.LT, CAPACITY);
+			int firstPageNum = rids.get(0).pageNum;
+			int lastPageNum = rids.get(N - 1).pageNum;
+			assertTrue(zoneMap.mayMatch(firstPageNum, condition, 0));
+			for (int pageNum = firstPageNum + 1; pageNum <= lastPageNum; pageNum++) {
+				assertFalse(zoneMap.mayMatch(pageNum, condition, 0));
+			}
+			condition = keyCondition(CompOp.EQ, N - 1);
+			assertFalse(zoneMap.mayMatch(firstPageNum, condition, 0));
+			assertTrue(zoneMap.mayMatch(lastPageNum, condition, 0));
+		} finally {
+			zoneMap.close();
+			recordFile = RecordFile.open(path);
+		}
+	}
+
+	/**
+	 * Updates widen the summaries, and deletes keep them correct.
+	 */
+	@Test
+	public void testZoneMap_updateAndDelete() {
+		List<Record> records = typedRecords(N, RECORD_SIZE);
+		List<RID> rids = recordFile.insertRecords(records);
+		recordFile.addZoneMap(0, AttrType.INT);
+
+		int i = 2 * CAPACITY + 5;
+		Record updated = typedRecord(-100, RECORD_SIZE);
+		recordFile.updateRecord(rids.get(i), updated);
+		records.set(i, updated);
+		for (int j = 0; j < CAPACITY; j++) {
+			recordFile.deleteRecord(rids.get(j));
+		}
+		records = new ArrayList<>(records.subList(CAPACITY, N));
+		checkScans(records);
+
+		// The emptied page holds new records after reinsertion.
+		Record inserted = typedRecord(7, RECORD_SIZE);
+		recordFile.insertRecord(inserted);
+		records.add(inserted);
+		Condition condition = keyCondition(CompOp.EQ, 7);
+		assertEquals(filter(records, condition), collect(recordFile.scan(condition)));
+		assertEquals(2, collect(recordFile.scan(keyCondition(CompOp.LE, 7))).size());
+	}
+
+	/**
+	 * Records too short to hold the attribute are not in the summaries.
+	 */
+	@Test
+	public void testZoneMap_variableLength() throws IOException {
+		recordFile.close();
+		Files.deleteIfExists(path);
+		recordFile = RecordFile.createVariableLength(path);
+		recordFile.addZoneMap(0, AttrType.INT);
+		List<Record> records = new ArrayList<>();
+		for (int i = 0; i < N; i++) {
+			Record record = i % 2 == 0 ? typedRecord(i, RECORD_SIZE) : Record.fromString("ab");
+			records.add(record);
+		}
+		recordFile.insertRecords(records);
+		for (CompOp op : CompOp.values()) {
+			Condition condition = keyCondition(op, N / 3);
+			assertEquals(filter(records, condition), collect(recordFile.scan(condition)));
+		}
+	}
+
+	@Test
+	public void testDropZoneMap() {
+		recordFile.addZoneMap(0, AttrType.INT);
+		assertTrue(Files.exists(ZoneMap.pathOf(path)));
+		recordFile.dropZoneMap();
+		assertFalse(Files.exists(ZoneMap.pathOf(path)));
+		List<Record> records = typedRecords(N, RECORD_SIZE);
+		recordFile.insertRecords(records);
+		checkScans(records);
+	}
+
+	/**
+	 * A zone map left by a deleted record file is not used by a new file
+	 * with the same name.
+	 */
+	@Test
+	public void testCreate_staleZoneMap() throws IOException {
+		recordFile.insertRecords(typedRecords(N, RECORD_SIZE));
+		recordFile.addZoneMap(0, AttrType.INT);
+		recordFile.close();
+		Files.delete(path);
+		recordFile = RecordFile.create(path, RECORD_SIZE);
+		assertFalse(Files.exists(ZoneMap.pathOf(path)));
+	}
+
+	@Test
+	public void testAddZoneMap_outOfRecord() {
+		thrown.expect(IllegalArgumentException.class);
+		recordFile.addZoneMap(10, AttrType.INT);
+	}
+}
@@ -0,0 +1,114 @@
+package me.nettee.pancake.core.record;
+
+import me.nettee.pancake.core.model.Scan;
+import me.nettee.pancake.core.page.Page;
+import me.nettee.pancake.core.page.PagedFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Micro benchmarks on a single record page. Run the <tt>main</tt> method
+ * manually; they are not part of the unit tests.
+ */
+public class RecordPageBenchmark {
+
+	private static final Path path = Paths.get("/tmp/bench.db");
+	private static final int RECORD_SIZE = 4;
+	private static final int WARMUP_ROUNDS = 200000;
+	private static final int ROUNDS = 2000000;
+
+	private static final double[] FILL_LEVELS = {0.0, 0.25, 0.5, 0.75, 0.99};
+
+	private static final int SCAN_ROUNDS = 200000;
+	// One record is kept for every DENSITY_STRIDES[i] slots.
+	private static final int[] DENSITY_STRIDES = {1, 10, 100, 1000};
+
+	public static void main(String[] args) throws IOException {
+		Files.deleteIfExists(path);
+		PagedFile pagedFile = PagedFile.create(path);
+		try {
+			benchmarkInsert(pagedFile);
+			benchmarkSparseScan(pagedFile);
+		} finally {
+			pagedFile.close();
+		}
+	}
+
+	/**
+	 * The cost of inserting a record into a page should not depend on how
+	 * full the page is. At each fill level, a record is repeatedly inserted
+	 * into and deleted from the first free slot, keeping the fill level.
+	 */
+	private static void benchmarkInsert(PagedFile pagedFile) {
+		int capacity = FixedRecordPage.getPageRecordCapacity(RECORD_SIZE);
+		byte[] data = new byte[RECORD_SIZE];
+		System.out.printf("Insert into fixed-length record page (capacity %d)%n", capacity);
+		for (double fillLevel : FILL_LEVELS) {
+			Page page = pagedFile.allocatePage();
+			FixedRecordPage recordPage = FixedRecordPage.create(page, RECORD_SIZE);
+			int n = (int) (capacity * fillLevel);
+			for (int i = 0; i < n; i++) {
+				recordPage.insert(data);
+			}
+			for (int i = 0; i < WARMUP_ROUNDS; i++) {
+				recordPage.delete(recordPage.insert(data));
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < ROUNDS; i++) {
+				recordPage.delete(recordPage.insert(data));
+			}
+			long elapsed = System.nanoTime() - start;
+			System.out.printf("  fill level %3.0f%%: %6.1f ns per insert+delete%n",
+					fillLevel * 100, (double) elapsed / ROUNDS);
+			pagedFile.unpinPage(page);
+		}
+	}
+
+	/**
+	 * Scanning a sparse page should cost little more than the records it
+	 * returns. At each density, a page is filled up and then all but one of
+	 * every <tt>stride</tt> records are deleted before the page is scanned.
+	 */
+	private static void benchmarkSparseScan(PagedFile pagedFile) {
+		int capacity = FixedRecordPage.getPageRecordCapacity(RECORD_SIZE);
+		byte[] data = new byte[RECORD_SIZE];
+		System.out.printf("Scan fixed-length record page (capacity %d)%n", capacity);
+		for (int stride : DENSITY_STRIDES) {
+			Page page = pagedFile.allocatePage();
+			FixedRecordPage recordPage = FixedRecordPage.create(page, RECORD_SIZE);
+			for (int i = 0; i < capacity; i++) {
+				recordPage.insert(data);
+			}
+			for (int i = 0; i < capacity; i++) {
+				if (i % stride != 0) {
+					recordPage.delete(i);
+				}
+			}
+			long count = 0;
+			for (int i = 0; i < SCAN_ROUNDS / 10; i++) {
+				count += scanAll(recordPage);
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < SCAN_ROUNDS; i++) {
+				count += scanAll(recordPage);
+			}
+			long elapsed = System.nanoTime() - start;
+			System.out.printf("  1 in %4d slots occupied: %8.1f ns per page scan (%d)%n",
+					stride, (double) elapsed / SCAN_ROUNDS, count);
+			pagedFile.unpinPage(page);
+		}
+	}
+
+	private static int scanAll(RecordPage recordPage) {
+		Scan<byte[]> scan = recordPage.scan(null);
+		int n = 0;
+		while (scan.next().isPresent()) {
+			n++;
+		}
+		scan.close();
+		return n;
+	}
+}